@@ -0,0 +1,114 @@
+package Benchmark;
+
+import Flight.ConnectionSearch;
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Flight.Itinerary;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 大规模机场网络测试：生成随机分布的机场数据文件，以它启动航班模块，报告加载耗时、堆内存占用、
+ * 机场查询和飞行时间估算的耗时，再按生成的网络登记航班并做中转查询。
+ * <p>
+ * 本类在写完数据文件之后才第一次访问航班类，所以可以在同一个进程中设置 flightapp.airports。
+ * <p>
+ * 用法：java Benchmark.AirportScale [机场数] [航班数] [数据文件]
+ */
+public class AirportScale {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int airportCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int flightCount = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        Path path = args.length > 2 ? Paths.get(args[2]) : Files.createTempFile("airports", ".csv");
+        if (airportCount < 2) {
+            throw new IllegalArgumentException("机场数至少为2");
+        }
+
+        writeAirports(path, airportCount, 42);
+        System.out.printf("机场数据: %s (%d 个机场, %d KB)%n", path, airportCount, Files.size(path) / 1024);
+
+        long start = System.nanoTime();
+        System.setProperty("flightapp.airports", path.toString());
+        String[] airports = FlightInformation.getAllowedAirports();
+        long loadNanos = System.nanoTime() - start;
+        System.out.printf(Locale.ROOT, "加载: %.1f ms, 堆内存共约 %d KB%n", loadNanos / 1e6, usedHeap() / 1024);
+        if (airports.length != airportCount) {
+            throw new IllegalStateException("加载的机场数不符: " + airports.length);
+        }
+
+        // 按名称查询两个机场之间的飞行时间，包括两次名称查找和一次估算
+        FlightInformation probe = new FlightInformation("000000", airports[0], airports[1], "2026-01-01 08:00", "波音737", 100);
+        Random random = new Random(7);
+        int lookups = 5_000_000;
+        double checksum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            int from = random.nextInt(airportCount);
+            int to = (from + 1 + random.nextInt(airportCount - 1)) % airportCount;
+            checksum += probe.getFlightTime(airports[from], airports[to]);
+        }
+        System.out.printf(Locale.ROOT, "按名称查询飞行时间: %.0f ns/次 (平均 %.2f 小时)%n",
+                (System.nanoTime() - start) / (double) lookups, checksum / lookups);
+
+        FlightManager flightManager = new FlightManager();
+        start = System.nanoTime();
+        SyntheticSchedule.populateNetwork(flightManager, flightCount, 30, 1);
+        System.out.printf(Locale.ROOT, "登记 %d 个航班: %.0f ms, 堆内存共约 %d MB%n",
+                flightCount, (System.nanoTime() - start) / 1e6, usedHeap() / (1024 * 1024));
+
+        ConnectionSearch search = new ConnectionSearch(flightManager);
+        LocalDateTime day = LocalDateTime.of(2026, 1, 1, 0, 0);
+        int queries = 200;
+        int found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            // 枢纽机场排在前面，航班多，中转组合也多
+            int from = random.nextInt(Math.min(airportCount, 50));
+            int to = (from + 1 + random.nextInt(airportCount - 1)) % airportCount;
+            List<Itinerary> itineraries = search.search(airports[from], airports[to], day, day.plusDays(3),
+                    1, ConnectionSearch.MAX_STOPS, ConnectionSearch.SortBy.FASTEST, 5);
+            found += itineraries.isEmpty() ? 0 : 1;
+        }
+        System.out.printf(Locale.ROOT, "中转查询: %.2f ms/次, %d/%d 次找到行程%n",
+                (System.nanoTime() - start) / 1e6 / queries, found, queries);
+    }
+
+    /**
+     * 生成随机分布在中国境内经纬度范围中的机场数据文件，格式见 Flight.AirportNetwork
+     *
+     * @param path 文件路径
+     * @param count 机场数
+     * @param seed 随机种子
+     */
+    public static void writeAirports(Path path, int count, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("# 机场名称,纬度,经度");
+            writer.newLine();
+            for (int i = 0; i < count; i++) {
+                double latitude = 18 + random.nextDouble() * 35;
+                double longitude = 75 + random.nextDouble() * 60;
+                writer.write(String.format(Locale.ROOT, "airport,测试机场%05d,%.4f,%.4f", i, latitude, longitude));
+                writer.newLine();
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,192 @@
+package Benchmark;
+
+import Flight.ColumnarFlightStore;
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 航班查询、计价和购票热点路径的基准测试。
+ * <p>
+ * 用法：java Benchmark.FlightBenchmark [航班规模列表] [线程数列表] [object|columnar]，
+ * 例如 java Benchmark.FlightBenchmark 1000,100000,1000000 1,8 columnar。
+ * 每个场景先预热再计时，输出每次操作的平均延迟、吞吐量和内存分配量，
+ * 并输出航班计划在堆上平均每个航班占用的字节数。
+ */
+public class FlightBenchmark {
+    private static final long WARMUP_OPERATIONS = 200_000;
+    private static final long MEASURED_OPERATIONS = 1_000_000;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile long sink; // 防止JIT消除被测代码
+
+    // 被测操作，返回值会累加到 sink 中
+    private interface Operation {
+        long run(SplittableRandom random);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = parseIntList(args.length > 0 ? args[0] : "1000,100000,1000000");
+        int[] threadCounts = parseIntList(args.length > 1 ? args[1] : "1," + Runtime.getRuntime().availableProcessors());
+        boolean columnar = args.length > 2 && args[2].equals("columnar");
+
+        System.out.printf("%-16s %9s %7s %12s %14s %10s%n", "benchmark", "flights", "threads", "ns/op", "ops/s", "B/op");
+        for (int size : sizes) {
+            long heapBefore = usedHeap();
+            FlightManager flightManager = columnar ? new FlightManager(new ColumnarFlightStore()) : new FlightManager();
+            SyntheticSchedule.populate(flightManager, size, 42L);
+            long heapAfter = usedHeap();
+            System.out.printf("# %d flights (%s): %.1f bytes/flight on heap%n",
+                    size, columnar ? "columnar" : "object", (double) (heapAfter - heapBefore) / Math.max(1, size));
+
+            String[] airports = FlightInformation.getAllowedAirports();
+            List<FlightInformation> schedule = new ArrayList<>(size);
+            for (String from : airports) {
+                for (String to : airports) {
+                    schedule.addAll(flightManager.searchFlights(from, to));
+                }
+            }
+            FlightInformation[] flights = schedule.toArray(new FlightInformation[0]);
+            // 购票测试前把座位数设为机型布局的上限，航班较多时保证测的是购票成功路径；
+            // 已有乘客占座的航班不能修改座位数，所以在各线程数的测试之前只设置一次
+            for (FlightInformation flight : flights) {
+                flight.setAvailableSeats(flight.getSeatLayout().getMaxSeats());
+            }
+
+            for (int threads : threadCounts) {
+                report("searchFlights", size, threads, MEASURED_OPERATIONS, random -> {
+                    int from = random.nextInt(airports.length);
+                    int to = random.nextInt(airports.length - 1);
+                    if (to >= from) {
+                        to++;
+                    }
+                    return flightManager.searchFlights(airports[from], airports[to]).size();
+                });
+
+                report("calculatePrice", size, threads, MEASURED_OPERATIONS, random -> {
+                    FlightInformation flight = flights[random.nextInt(flights.length)];
+                    return (long) flight.calculatePrice(flight.getDeparture(), flight.getDestination());
+                });
+
+                report("calculatePrice()", size, threads, MEASURED_OPERATIONS, random -> {
+                    FlightInformation flight = flights[random.nextInt(flights.length)];
+                    return (long) flight.calculatePrice();
+                });
+
+                report("getFlightTime", size, threads, MEASURED_OPERATIONS, random -> {
+                    FlightInformation flight = flights[random.nextInt(flights.length)];
+                    return (long) flight.getFlightTime(flight.getDeparture(), flight.getDestination());
+                });
+
+                PassengerManager passengerManager = new PassengerManager(flightManager);
+                report("bookFlight", size, threads, MEASURED_OPERATIONS, random -> {
+                    FlightInformation flight = flights[random.nextInt(flights.length)];
+                    PassengerInformation passenger = new PassengerInformation("测试乘客", "男", 20, "13800000000");
+                    return passengerManager.bookFlight(passenger, flight) ? 1 : 0;
+                });
+            }
+        }
+    }
+
+    /**
+     * 运行一个场景并输出结果
+     *
+     * @param name 场景名称
+     * @param size 航班规模
+     * @param threads 线程数
+     * @param totalOperations 计时阶段所有线程的总操作数
+     * @param operation 被测操作
+     */
+    private static void report(String name, int size, int threads, long totalOperations, Operation operation)
+            throws InterruptedException {
+        execute(threads, Math.max(1, WARMUP_OPERATIONS / threads), operation);
+
+        long perThread = Math.max(1, totalOperations / threads);
+        long[] measured = execute(threads, perThread, operation);
+        long elapsedNanos = measured[0];
+        long allocatedBytes = measured[1];
+        long operations = perThread * threads;
+
+        double nanosPerOperation = (double) elapsedNanos * threads / operations;
+        double operationsPerSecond = operations * 1_000_000_000.0 / elapsedNanos;
+        double bytesPerOperation = allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;
+        System.out.printf("%-16s %9d %7d %12.1f %14.0f %10.1f%n",
+                name, size, threads, nanosPerOperation, operationsPerSecond, bytesPerOperation);
+    }
+
+    /**
+     * 多线程执行被测操作
+     *
+     * @return 长度为2的数组：总耗时（纳秒）和所有线程分配的字节数（不支持时为-1）
+     */
+    private static long[] execute(int threads, long operationsPerThread, Operation operation)
+            throws InterruptedException {
+        boolean allocationSupported = THREAD_MX_BEAN.isThreadAllocatedMemorySupported()
+                && THREAD_MX_BEAN.isThreadAllocatedMemoryEnabled();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong allocatedBytes = new AtomicLong();
+
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t * 31L + 7);
+            Thread worker = new Thread(() -> {
+                long threadId = Thread.currentThread().threadId();
+                long result = 0;
+                ready.countDown();
+                try {
+                    start.await();
+                    long allocatedBefore = allocationSupported ? THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) : 0;
+                    for (long i = 0; i < operationsPerThread; i++) {
+                        result += operation.run(random);
+                    }
+                    if (allocationSupported) {
+                        allocatedBytes.addAndGet(THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - allocatedBefore);
+                    }
+                    sink += result;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "benchmark-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        ready.await();
+        long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return new long[]{elapsedNanos, allocationSupported ? allocatedBytes.get() : -1};
+    }
+
+    // 多次GC后统计已使用的堆内存
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int[] parseIntList(String text) {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
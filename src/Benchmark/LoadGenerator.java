@@ -0,0 +1,503 @@
+package Benchmark;
+
+import Flight.ColumnarFlightStore;
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Flight.FlightPage;
+import Flight.FlightValidator;
+import Metrics.LatencyHistogram;
+import Passenger.Booking;
+import Passenger.OffHeapPassengerStore;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 负载模拟器：生成航班计划后由多个线程按给定比例持续执行查询、购票、退票和航班修改，
+ * 统计吞吐量、各操作的延迟分位数和GC开销，结束后检查座位守恒（没有超售），全程不依赖网络和外部服务。
+ * <p>
+ * 用法：java Benchmark.LoadGenerator [线程数] [持续秒数] [航班数] [操作比例] [object|columnar]，
+ * 例如 java Benchmark.LoadGenerator 16 60 200000 search=60,searchWindow=15,book=15,cancel=7,update=3。
+ * 操作：
+ * <ul>
+ * <li>search：分页浏览一条航线，三成概率继续翻到第二页</li>
+ * <li>searchWindow：查询一条航线某一天的航班</li>
+ * <li>book：查询某一天的航班后任选一个购票，航班满座时记为售罄</li>
+ * <li>cancel：退掉本线程之前买的一张票</li>
+ * <li>update：修改一个没有售票的航班的起飞时间和机型</li>
+ * </ul>
+ * 航线按航班量加权选取，热门航线的查询和购票更多。可用系统属性调整：
+ * load.warmupSeconds（预热秒数，默认5）、load.days（航班计划覆盖天数，默认30）、load.seed（随机种子，默认42）、
+ * load.offHeapPassengers（为true时购票记录保存在堆外乘客存储中）。
+ * 作为回归门禁时可设置 load.minOpsPerSecond、load.maxP99Micros（每种操作的p99上限）、load.maxGcPercent（GC耗时占比上限），
+ * 任一条件不满足、出现超售或操作异常时以状态码1退出。
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "search=60,searchWindow=15,book=15,cancel=7,update=3";
+    private static final int UPDATABLE_EVERY = 16; // 每16个航班留出一个不售票的航班用于修改
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final LocalDateTime SEASON_START = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private enum Operation {
+        SEARCH("search"), SEARCH_WINDOW("searchWindow"), BOOK("book"), CANCEL("cancel"), UPDATE("update");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final FlightManager flightManager;
+    private final PassengerManager passengerManager;
+    private final List<FlightInformation> flights;
+    private final int[] capacity; // 按航班序号记录的座位总数
+    private final String[][] routes; // 有航班的航线：{出发地, 目的地}
+    private final double[] routeWeights; // 航线按航班量加权的累积和
+    private final int[] mixThresholds; // 各操作比例的累积和
+    private final int days;
+    private final int threads;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final Worker[] workers;
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    // 每个线程的状态，计数只由本线程写入，结束后由主线程汇总
+    private final class Worker extends Thread {
+        private final int index;
+        private final SplittableRandom random;
+        private final List<Booking> bookings = new ArrayList<>();
+        private final List<FlightInformation> updatable = new ArrayList<>(); // 只由本线程修改的航班，避免并发修改同一航班
+        private final long[] completed = new long[OPERATIONS.length];
+        private long soldOut;
+        private long errors;
+        private RuntimeException firstError;
+        private long passengerCount;
+
+        Worker(int index, long seed) {
+            super("load-" + index);
+            this.index = index;
+            this.random = new SplittableRandom(seed);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                Operation operation = pickOperation(random.nextInt(100));
+                long start = System.nanoTime();
+                try {
+                    execute(operation);
+                } catch (RuntimeException e) {
+                    // 任何异常都记录下来继续运行，否则线程会静默退出，测得的吞吐量和检查结果都不可信
+                    errors++;
+                    if (firstError == null) {
+                        firstError = e;
+                    }
+                }
+                if (measuring) {
+                    latencies[operation.ordinal()].record(System.nanoTime() - start);
+                    completed[operation.ordinal()]++;
+                }
+            }
+        }
+
+        private void execute(Operation operation) {
+            switch (operation) {
+                case SEARCH:
+                    browse();
+                    break;
+                case SEARCH_WINDOW:
+                    searchDay(pickRoute(random));
+                    break;
+                case BOOK:
+                    book();
+                    break;
+                case CANCEL:
+                    cancel();
+                    break;
+                case UPDATE:
+                    update();
+                    break;
+                default:
+                    throw new IllegalStateException("未知操作: " + operation);
+            }
+        }
+
+        private void browse() {
+            String[] route = pickRoute(random);
+            FlightPage page = flightManager.searchFlightsPage(route[0], route[1], null, FlightManager.PAGE_SIZE);
+            if (page.hasMore() && random.nextInt(10) < 3) {
+                flightManager.searchFlightsPage(route[0], route[1], page.getNextCursor(), FlightManager.PAGE_SIZE);
+            }
+        }
+
+        private List<FlightInformation> searchDay(String[] route) {
+            LocalDateTime from = SEASON_START.plusDays(random.nextInt(days));
+            return flightManager.searchFlights(route[0], route[1], from, from.plusDays(1).minusMinutes(1));
+        }
+
+        private void book() {
+            List<FlightInformation> results = searchDay(pickRoute(random));
+            if (results.isEmpty()) {
+                return;
+            }
+            int first = random.nextInt(results.size());
+            for (int i = 0; i < results.size(); i++) {
+                FlightInformation flight = results.get((first + i) % results.size());
+                if (isUpdatable(flight)) {
+                    continue;
+                }
+                long id = passengerCount++ * threads + index;
+                PassengerInformation passenger = new PassengerInformation("乘客" + id, id % 2 == 0 ? "男" : "女",
+                        random.nextInt(31), String.format("1%010d", id));
+                Booking booking = passengerManager.book(passenger, flight);
+                if (booking != null) {
+                    bookings.add(booking);
+                } else if (measuring) {
+                    soldOut++;
+                }
+                return;
+            }
+        }
+
+        private void cancel() {
+            if (bookings.isEmpty()) {
+                return;
+            }
+            int i = random.nextInt(bookings.size());
+            Booking booking = bookings.get(i);
+            bookings.set(i, bookings.get(bookings.size() - 1));
+            bookings.remove(bookings.size() - 1);
+            passengerManager.cancelBooking(booking);
+        }
+
+        private void update() {
+            if (updatable.isEmpty()) {
+                return;
+            }
+            int i = random.nextInt(updatable.size());
+            FlightInformation flight = updatable.get(i);
+            LocalDateTime departure = FlightValidator.parseDepartureTime(flight.getDepartureTime())
+                    .plusMinutes(random.nextInt(121) - 60);
+            if (departure.isBefore(SEASON_START)) {
+                departure = SEASON_START;
+            }
+            String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+            // 修改后得到航班的新版本，之后修改新版本
+            updatable.set(i, flightManager.applyFlightUpdate(flight, flight.getFlightNumber(), flight.getDeparture(),
+                    flight.getDestination(), departure.format(DATE_TIME_FORMAT),
+                    aircraftTypes[random.nextInt(aircraftTypes.length)], capacity[flightIndex(flight)]));
+        }
+    }
+
+    private LoadGenerator(FlightManager flightManager, List<FlightInformation> flights, int[] mixThresholds,
+                          int days, int threads, long seed) {
+        this.flightManager = flightManager;
+        this.passengerManager = Boolean.getBoolean("load.offHeapPassengers")
+                ? new PassengerManager(flightManager, new OffHeapPassengerStore()) : new PassengerManager(flightManager);
+        this.flights = flights;
+        this.mixThresholds = mixThresholds;
+        this.days = days;
+        this.threads = threads;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+
+        capacity = new int[flights.size()];
+        Map<String, Integer> routeCounts = new HashMap<>();
+        for (FlightInformation flight : flights) {
+            capacity[flightIndex(flight)] = flight.getAvailableSeats();
+            routeCounts.merge(flight.getDeparture() + "\n" + flight.getDestination(), 1, Integer::sum);
+        }
+        routes = new String[routeCounts.size()][];
+        routeWeights = new double[routeCounts.size()];
+        double total = 0;
+        int r = 0;
+        for (Map.Entry<String, Integer> entry : routeCounts.entrySet()) {
+            routes[r] = entry.getKey().split("\n");
+            total += entry.getValue();
+            routeWeights[r++] = total;
+        }
+
+        workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(t, seed * 31 + t);
+        }
+        int updatableCount = 0;
+        for (FlightInformation flight : flights) {
+            if (isUpdatable(flight)) {
+                workers[updatableCount++ % threads].updatable.add(flight);
+            }
+        }
+    }
+
+    // 航班号就是生成时的序号
+    private static int flightIndex(FlightInformation flight) {
+        return Integer.parseInt(flight.getFlightNumber());
+    }
+
+    private static boolean isUpdatable(FlightInformation flight) {
+        return flightIndex(flight) % UPDATABLE_EVERY == 0;
+    }
+
+    private Operation pickOperation(int roll) {
+        for (int i = 0; i < mixThresholds.length; i++) {
+            if (roll < mixThresholds[i]) {
+                return OPERATIONS[i];
+            }
+        }
+        return OPERATIONS[OPERATIONS.length - 1];
+    }
+
+    private String[] pickRoute(SplittableRandom random) {
+        double target = random.nextDouble() * routeWeights[routeWeights.length - 1];
+        int low = 0;
+        int high = routeWeights.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (routeWeights[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return routes[low];
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int flightCount = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        int[] mixThresholds = parseMix(args.length > 3 ? args[3] : DEFAULT_MIX);
+        boolean columnar = args.length > 4 && args[4].equals("columnar");
+        int warmupSeconds = Integer.getInteger("load.warmupSeconds", 5);
+        int days = Integer.getInteger("load.days", 30);
+        long seed = Long.getLong("load.seed", 42L);
+        if (threads <= 0 || seconds <= 0 || flightCount < UPDATABLE_EVERY) {
+            throw new IllegalArgumentException("线程数和持续秒数必须为正整数，航班数不能少于" + UPDATABLE_EVERY);
+        }
+
+        FlightManager flightManager = columnar ? new FlightManager(new ColumnarFlightStore()) : new FlightManager();
+        long generateStart = System.nanoTime();
+        List<FlightInformation> flights = SyntheticSchedule.populateNetwork(flightManager, flightCount, days, seed);
+        System.out.printf("# %d flights over %d days (%s%s), generated in %.1f s; %d threads, %d s warmup + %d s measured%n",
+                flightCount, days, columnar ? "columnar" : "object",
+                Boolean.getBoolean("load.offHeapPassengers") ? ", off-heap passengers" : "", (System.nanoTime() - generateStart) / 1e9,
+                threads, warmupSeconds, seconds);
+
+        LoadGenerator generator = new LoadGenerator(flightManager, flights, mixThresholds, days, threads, seed);
+        List<String> failures = generator.run(warmupSeconds, seconds);
+        failures.addAll(generator.checkInventory());
+
+        if (failures.isEmpty()) {
+            System.out.println("OK: 座位守恒，没有超售，所有门禁条件满足");
+        } else {
+            failures.stream().limit(20).forEach(f -> System.out.println("FAILED: " + f));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 预热后计时运行并输出报告
+     *
+     * @return 不满足的门禁条件和操作异常
+     */
+    private List<String> run(int warmupSeconds, int seconds) throws InterruptedException {
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+
+        long[] threadIds = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            threadIds[t] = workers[t].threadId();
+        }
+        boolean allocationSupported = THREAD_MX_BEAN.isThreadAllocatedMemorySupported()
+                && THREAD_MX_BEAN.isThreadAllocatedMemoryEnabled();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] gcCountBefore = new long[collectors.size()];
+        long[] gcTimeBefore = new long[collectors.size()];
+        for (int i = 0; i < collectors.size(); i++) {
+            gcCountBefore[i] = collectors.get(i).getCollectionCount();
+            gcTimeBefore[i] = collectors.get(i).getCollectionTime();
+        }
+        long[] allocatedBefore = allocationSupported ? THREAD_MX_BEAN.getThreadAllocatedBytes(threadIds) : null;
+
+        measuring = true;
+        long startNanos = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long allocatedBytes = -1;
+        if (allocationSupported) {
+            long[] allocatedAfter = THREAD_MX_BEAN.getThreadAllocatedBytes(threadIds);
+            allocatedBytes = 0;
+            for (int t = 0; t < threads; t++) {
+                allocatedBytes += allocatedAfter[t] - allocatedBefore[t];
+            }
+        }
+        long gcCount = 0;
+        long gcMillis = 0;
+        StringBuilder gcDetail = new StringBuilder();
+        for (int i = 0; i < collectors.size(); i++) {
+            long count = collectors.get(i).getCollectionCount() - gcCountBefore[i];
+            long millis = collectors.get(i).getCollectionTime() - gcTimeBefore[i];
+            gcCount += count;
+            gcMillis += millis;
+            gcDetail.append(String.format("  %s: %d collections, %d ms%n", collectors.get(i).getName(), count, millis));
+        }
+
+        stopped = true;
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        return report(elapsedNanos, allocatedBytes, gcCount, gcMillis, gcDetail.toString());
+    }
+
+    private List<String> report(long elapsedNanos, long allocatedBytes, long gcCount, long gcMillis, String gcDetail) {
+        List<String> failures = new ArrayList<>();
+        long maxP99Micros = Long.getLong("load.maxP99Micros", -1);
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.printf("%-14s %10s %12s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "ops/s", "mean(us)", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+        long totalOperations = 0;
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram.Snapshot snapshot = latencies[operation.ordinal()].snapshot();
+            long count = 0;
+            for (Worker worker : workers) {
+                count += worker.completed[operation.ordinal()];
+            }
+            totalOperations += count;
+            long p99 = snapshot.getValueAtQuantile(0.99);
+            System.out.printf("%-14s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation.label, count,
+                    count / seconds, snapshot.getMeanNanos() / 1e3, snapshot.getValueAtQuantile(0.5) / 1e3,
+                    p99 / 1e3, snapshot.getValueAtQuantile(0.999) / 1e3, snapshot.getMaxNanos() / 1e3);
+            if (maxP99Micros >= 0 && count > 0 && p99 > maxP99Micros * 1000) {
+                failures.add(String.format("%s 的p99为 %.1f us，超过上限 %d us", operation.label, p99 / 1e3, maxP99Micros));
+            }
+        }
+        double throughput = totalOperations / seconds;
+        long soldOut = 0;
+        long errors = 0;
+        for (Worker worker : workers) {
+            soldOut += worker.soldOut;
+            errors += worker.errors;
+            if (worker.firstError != null) {
+                failures.add(worker.getName() + " 操作异常: " + worker.firstError);
+            }
+        }
+        System.out.printf("total: %d operations in %.1f s, %.0f ops/s; %d bookings sold out, %d errors%n",
+                totalOperations, seconds, throughput, soldOut, errors);
+
+        double gcPercent = gcMillis * 100.0 / (elapsedNanos / 1e6);
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("gc: %d collections, %d ms (%.1f%% of wall time); allocated %s; heap used %.0f MB of %.0f MB%n",
+                gcCount, gcMillis, gcPercent,
+                allocatedBytes < 0 ? "n/a" : String.format("%.0f MB/s, %.0f B/op", allocatedBytes / seconds / 1e6,
+                        (double) allocatedBytes / Math.max(1, totalOperations)),
+                (runtime.totalMemory() - runtime.freeMemory()) / 1e6, runtime.maxMemory() / 1e6);
+        System.out.print(gcDetail);
+
+        long minOpsPerSecond = Long.getLong("load.minOpsPerSecond", -1);
+        if (minOpsPerSecond >= 0 && throughput < minOpsPerSecond) {
+            failures.add(String.format("吞吐量 %.0f ops/s 低于下限 %d ops/s", throughput, minOpsPerSecond));
+        }
+        String maxGcPercent = System.getProperty("load.maxGcPercent");
+        if (maxGcPercent != null && gcPercent > Double.parseDouble(maxGcPercent)) {
+            failures.add(String.format("GC耗时占比 %.1f%% 超过上限 %s%%", gcPercent, maxGcPercent));
+        }
+        return failures;
+    }
+
+    /**
+     * 检查座位守恒：每个航班的乘客名单与剩余座位之和等于座位总数、剩余座位不为负，
+     * 各线程持有的购票记录都在乘客名单中且没有多余的记录
+     *
+     * @return 违反的条件
+     */
+    private List<String> checkInventory() {
+        List<String> violations = new ArrayList<>();
+        long onManifests = 0;
+        // 修改过的航班检查当前版本：座位数或机型改变后更早的版本座位图已停用，不再能购票
+        List<FlightInformation> current = new ArrayList<>(flights);
+        for (Worker worker : workers) {
+            for (FlightInformation flight : worker.updatable) {
+                current.set(flightIndex(flight), flight);
+            }
+        }
+        for (FlightInformation flight : current) {
+            int available = flight.getAvailableSeats();
+            int booked = passengerManager.getManifest(flight.getFlightNumber()).size();
+            onManifests += booked;
+            if (available < 0 || booked + available != capacity[flightIndex(flight)]) {
+                violations.add("航班 " + flight.getFlightNumber() + ": 乘客 " + booked + " + 余座 " + available
+                        + " != " + capacity[flightIndex(flight)]);
+            }
+        }
+        long held = 0;
+        for (Worker worker : workers) {
+            held += worker.bookings.size();
+            for (Booking booking : worker.bookings) {
+                List<Booking> found = passengerManager.findBookingsByPhone(booking.getPassenger().getTelephoneNumber());
+                if (found.size() != 1 || found.get(0).getId() != booking.getId()) {
+                    violations.add("购票记录 " + booking.getId() + " 不在乘客名单中或重复");
+                }
+            }
+        }
+        if (onManifests != held || passengerManager.getBookingCount() != held) {
+            violations.add("乘客名单共 " + onManifests + " 人、购票记录 " + passengerManager.getBookingCount()
+                    + " 条，应为 " + held);
+        }
+        System.out.printf("inventory: %d flights checked, %d bookings held%n", flights.size(), held);
+        return violations;
+    }
+
+    // 把 名称=百分比 列表转换为累积阈值，百分比之和必须为100
+    private static int[] parseMix(String text) {
+        int[] thresholds = new int[OPERATIONS.length];
+        int[] shares = new int[OPERATIONS.length];
+        for (String part : text.split(",")) {
+            String[] pair = part.trim().split("=");
+            Operation operation = null;
+            for (Operation candidate : OPERATIONS) {
+                if (pair.length == 2 && candidate.label.equals(pair[0].trim())) {
+                    operation = candidate;
+                }
+            }
+            if (operation == null) {
+                throw new IllegalArgumentException("操作比例格式应为 search=60,searchWindow=15,...: " + part);
+            }
+            shares[operation.ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        int sum = 0;
+        for (int i = 0; i < shares.length; i++) {
+            if (shares[i] < 0) {
+                throw new IllegalArgumentException("操作比例不能为负数");
+            }
+            sum += shares[i];
+            thresholds[i] = sum;
+        }
+        if (sum != 100) {
+            throw new IllegalArgumentException("操作比例之和必须为100，实际为 " + sum);
+        }
+        return thresholds;
+    }
+}
@@ -0,0 +1,59 @@
+package Benchmark;
+
+import Mail.LocalSmtpServer;
+import Mail.MailDispatcher;
+import Mail.MailMessage;
+import Mail.MailMetrics;
+import Mail.SmtpMailTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 邮件发送吞吐量测试：在本机启动简易SMTP服务器，通过邮件发送管道提交大量邮件，
+ * 等待全部发送完成后输出吞吐量、批次和重试统计。
+ * 指定拒收比例时服务器会随机拒收邮件，用于验证重试；结束后检查发送成功数与服务器收到的邮件数一致。
+ * <p>
+ * 用法：java Benchmark.MailThroughput [邮件数] [工作线程数] [每批邮件数] [拒收比例]
+ */
+public class MailThroughput {
+    private static final long TIMEOUT_SECONDS = 300;
+
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : MailDispatcher.DEFAULT_BATCH_SIZE;
+        double failureRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+
+        try (LocalSmtpServer server = new LocalSmtpServer(failureRate)) {
+            SmtpMailTransport transport = new SmtpMailTransport("127.0.0.1", server.getPort(), null, null,
+                    "flightapp@localhost");
+            MailDispatcher dispatcher = new MailDispatcher(transport, workers, 1024, batchSize);
+
+            // 队列容量小于邮件数，提交线程会因背压而等待
+            long maxSubmitNanos = 0;
+            for (int i = 0; i < messageCount; i++) {
+                MailMessage message = new MailMessage("passenger" + i + "@example.com", "航班信息 - " + i,
+                        "航班号: " + String.format("%06d", i % 1000) + "\n乘客人数: " + i % 200 + "\n");
+                long start = System.nanoTime();
+                if (!dispatcher.submit(message, TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("提交邮件超时");
+                }
+                maxSubmitNanos = Math.max(maxSubmitNanos, System.nanoTime() - start);
+            }
+            if (!dispatcher.awaitIdle(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("邮件未能在 " + TIMEOUT_SECONDS + " 秒内发送完成");
+            }
+            MailMetrics metrics = dispatcher.getMetrics();
+            dispatcher.close();
+
+            System.out.println(metrics);
+            System.out.printf("提交最长等待 %.1f 毫秒，服务器收到 %d 封，拒收 %d 次，连接 %d 个%n",
+                    maxSubmitNanos / 1e6, server.getReceivedCount(), server.getRefusedCount(), server.getSessionCount());
+            if (metrics.getSent() != server.getReceivedCount()
+                    || metrics.getSent() + metrics.getFailed() != messageCount) {
+                System.out.println("统计不一致");
+                System.exit(1);
+            }
+        }
+    }
+}
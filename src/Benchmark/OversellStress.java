@@ -0,0 +1,197 @@
+package Benchmark;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Flight.SeatLayout;
+import Passenger.Booking;
+import Passenger.OffHeapPassengerStore;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 超售压力测试：每一轮登记一个热门航班，所有线程同时开始抢票，座位售完后继续尝试，
+ * 其间混合系统分配座位、指定座位、团体购票、一次占用多个座位（FlightManager.tryReserve）和退票，
+ * 使座位在售完前后反复被争抢和释放。每轮结束后检查乘客名单、直接占用的座位与剩余座位之和等于座位总数、
+ * 剩余座位不为负、没有两张机票或占用是同一个座位，且各线程持有的购票记录正好是乘客名单；超时未结束视为死锁。
+ * <p>
+ * 用法：java Benchmark.OversellStress [轮数] [线程数] [每线程操作次数] [object|offheap]
+ */
+public class OversellStress {
+    private static final int CAPACITY = 180; // 航班的座位数，波音737每排6座，正好30排
+    private static final long TIMEOUT_SECONDS = 120;
+
+    // 一个线程在一轮结束时持有的购票记录和直接占用的座位
+    private static final class Held {
+        final List<Booking> bookings = new ArrayList<>();
+        final List<int[]> blocks = new ArrayList<>();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        boolean offHeap = args.length > 3 && args[3].equals("offheap");
+        if (rounds <= 0 || threads <= 0 || operations <= 0) {
+            throw new IllegalArgumentException("轮数、线程数和操作次数必须为正整数");
+        }
+
+        String[] airports = FlightInformation.getAllowedAirports();
+        AtomicLong sold = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong cancelled = new AtomicLong();
+        AtomicLong blocked = new AtomicLong(); // tryReserve 一次占用多个座位成功的次数
+        List<String> violations = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds && violations.isEmpty(); round++) {
+            FlightManager flightManager = new FlightManager();
+            PassengerManager passengerManager = new PassengerManager(flightManager, offHeap ? new OffHeapPassengerStore() : null);
+            FlightInformation flight = flightManager.registerFlight(new FlightInformation("000001",
+                    airports[0], airports[1], "2026-03-01 08:00", "波音737", CAPACITY));
+            SeatLayout layout = flight.getSeatLayout();
+            int rows = layout.rowsFor(CAPACITY);
+
+            CountDownLatch ready = new CountDownLatch(1);
+            List<Future<Held>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                long seed = (long) round * threads + t;
+                futures.add(executor.submit(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    Held held = new Held();
+                    int passengerCount = 0;
+                    ready.await();
+                    for (int n = 0; n < operations; n++) {
+                        int roll = random.nextInt(100);
+                        if (roll < 10 && !held.bookings.isEmpty()) {
+                            // 退票，释放的座位马上又会被其他线程抢走
+                            passengerManager.cancelBooking(held.bookings.remove(random.nextInt(held.bookings.size())));
+                            cancelled.incrementAndGet();
+                            continue;
+                        }
+                        if (roll < 15 && !held.blocks.isEmpty()) {
+                            for (int seat : held.blocks.remove(random.nextInt(held.blocks.size()))) {
+                                flight.releaseSeat(seat);
+                            }
+                            continue;
+                        }
+                        if (roll >= 90) {
+                            int[] seats = flightManager.tryReserve(flight, 2 + random.nextInt(4));
+                            if (seats == null) {
+                                rejected.incrementAndGet();
+                            } else {
+                                held.blocks.add(seats);
+                                blocked.incrementAndGet();
+                            }
+                            continue;
+                        }
+                        List<Booking> booked;
+                        if (roll < 50) {
+                            booked = single(passengerManager.book(passenger(thread, passengerCount++), flight));
+                        } else if (roll < 85) {
+                            int seat = layout.seatAt(1 + random.nextInt(rows), random.nextInt(layout.getSeatsPerRow()));
+                            booked = single(passengerManager.book(passenger(thread, passengerCount++), flight, seat));
+                        } else {
+                            List<PassengerInformation> group = new ArrayList<>();
+                            for (int k = 2 + random.nextInt(2); k > 0; k--) {
+                                group.add(passenger(thread, passengerCount++));
+                            }
+                            booked = passengerManager.bookGroup(group, flight);
+                        }
+                        if (booked == null) {
+                            rejected.incrementAndGet();
+                        } else {
+                            held.bookings.addAll(booked);
+                            sold.addAndGet(booked.size());
+                        }
+                    }
+                    return held;
+                }));
+            }
+            ready.countDown();
+
+            Held held = new Held();
+            for (Future<Held> future : futures) {
+                try {
+                    Held result = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    held.bookings.addAll(result.bookings);
+                    held.blocks.addAll(result.blocks);
+                } catch (TimeoutException e) {
+                    System.out.println("FAILED: 第" + round + "轮购票线程在 " + TIMEOUT_SECONDS + " 秒内未结束，可能发生死锁");
+                    System.exit(1);
+                }
+            }
+            check(round, flight, passengerManager, held, violations);
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdownNow();
+
+        System.out.printf("%d rounds, %d threads, %d seats: %d tickets sold, %d multi-seat reservations, %d rejected, "
+                        + "%d cancelled, %.0f ops/s%n",
+                rounds, threads, CAPACITY, sold.get(), blocked.get(), rejected.get(), cancelled.get(),
+                (sold.get() + blocked.get() + rejected.get() + cancelled.get()) * 1e9 / elapsed);
+        if (violations.isEmpty()) {
+            System.out.println("OK: 座位守恒，没有超售，没有重复的座位");
+        } else {
+            violations.stream().limit(20).forEach(v -> System.out.println("FAILED: " + v));
+            System.exit(1);
+        }
+    }
+
+    // 检查一轮结束后的座位和乘客名单
+    private static void check(int round, FlightInformation flight, PassengerManager passengerManager,
+                              Held held, List<String> violations) {
+        List<Booking> manifest = passengerManager.getManifest(flight.getFlightNumber());
+        int available = flight.getAvailableSeats();
+        int blockedSeats = held.blocks.stream().mapToInt(block -> block.length).sum();
+        if (available < 0 || manifest.size() + blockedSeats + available != CAPACITY) {
+            violations.add("第" + round + "轮: 乘客 " + manifest.size() + " + 占用 " + blockedSeats
+                    + " + 余座 " + available + " != " + CAPACITY);
+        }
+        Set<Integer> seats = new HashSet<>();
+        Set<Long> ids = new HashSet<>();
+        for (Booking booking : manifest) {
+            if (!seats.add(booking.getSeat())) {
+                violations.add("第" + round + "轮: 座位 " + flight.getSeatLabel(booking.getSeat()) + " 售出了两次");
+            }
+            ids.add(booking.getId());
+        }
+        for (int[] block : held.blocks) {
+            for (int seat : block) {
+                if (!seats.add(seat) || flight.isSeatAvailable(seat)) {
+                    violations.add("第" + round + "轮: 直接占用的座位 " + flight.getSeatLabel(seat) + " 重复或没有被占用");
+                }
+            }
+        }
+        for (Booking booking : held.bookings) {
+            if (!ids.remove(booking.getId())) {
+                violations.add("第" + round + "轮: 购票记录 " + booking.getId() + " 不在乘客名单中");
+            }
+        }
+        if (!ids.isEmpty()) {
+            violations.add("第" + round + "轮: 乘客名单中有 " + ids.size() + " 条记录不属于任何线程");
+        }
+    }
+
+    private static List<Booking> single(Booking booking) {
+        return booking != null ? List.of(booking) : null;
+    }
+
+    private static PassengerInformation passenger(int thread, int index) {
+        long id = (long) thread * 1_000_000 + index;
+        return new PassengerInformation("乘客" + id, id % 2 == 0 ? "男" : "女", 10, String.format("1%010d", id));
+    }
+}
@@ -0,0 +1,127 @@
+package Benchmark;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.Booking;
+import Passenger.OffHeapPassengerStore;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * 购票记录规模测试：持续购票直到给定数量，每售出一成报告一次购票速度、期间的GC耗时、
+ * 完整GC的停顿时间和之后的堆内存占用，以及堆外内存占用，用于比较对象索引和堆外乘客存储。
+ * 结束时随机按联系方式和航班查询购票记录，检查记录内容并报告查询耗时。
+ * <p>
+ * 用法：java Benchmark.PassengerScale [购票数] [object|offheap]，
+ * 千万级购票记录需要相应调大 -Xmx（对象模式）或 -XX:MaxDirectMemorySize（堆外模式）。
+ */
+public class PassengerScale {
+    private static final int CAPACITY = 200; // 每个航班的座位数
+    private static final int PASSENGERS_PER_PHONE = 2; // 每个联系方式购买的机票数
+    private static final int MAX_FLIGHTS = 1_000_000; // 6位航班号
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) {
+        long total = args.length > 0 ? Long.parseLong(args[0]) : 5_000_000;
+        boolean offHeap = args.length > 1 && args[1].equals("offheap");
+        if (total <= 0 || total > (long) MAX_FLIGHTS * CAPACITY) {
+            throw new IllegalArgumentException("购票数必须在1到" + (long) MAX_FLIGHTS * CAPACITY + "之间");
+        }
+
+        FlightManager flightManager = new FlightManager();
+        OffHeapPassengerStore store = offHeap ? new OffHeapPassengerStore() : null;
+        PassengerManager passengerManager = new PassengerManager(flightManager, store);
+        String[] airports = FlightInformation.getAllowedAirports();
+        int flightCount = (int) ((total + CAPACITY - 1) / CAPACITY);
+        List<FlightInformation> batch = new ArrayList<>(flightCount);
+        for (int i = 0; i < flightCount; i++) {
+            batch.add(new FlightInformation(String.format("%06d", i), airports[i % airports.length],
+                    airports[(i + 1) % airports.length], "2026-03-01 08:00", "波音737", CAPACITY));
+        }
+        List<FlightInformation> flights = flightManager.registerFlights(batch);
+        batch = null;
+        System.out.printf(Locale.ROOT, "# %d 张机票，%d 个航班，%s；航班登记后堆内存 %d MB%n",
+                total, flightCount, offHeap ? "堆外乘客存储" : "对象索引", usedHeapAfterGc()[0] / (1024 * 1024));
+        System.out.println("已售机票      购票速度(千张/秒)  期间GC(ms)  完整GC停顿(ms)  堆内存(MB)  堆外内存(MB)");
+
+        long step = Math.max(1, total / 10);
+        long sold = 0;
+        while (sold < total) {
+            long end = Math.min(total, sold + step);
+            long gcBefore = gcMillis();
+            long start = System.nanoTime();
+            for (; sold < end; sold++) {
+                FlightInformation flight = flights.get((int) (sold / CAPACITY));
+                if (passengerManager.book(passenger(sold), flight) == null) {
+                    throw new IllegalStateException("航班 " + flight.getFlightNumber() + " 座位不足");
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long gcDuring = gcMillis() - gcBefore;
+            long[] heap = usedHeapAfterGc();
+            System.out.printf(Locale.ROOT, "%-12d  %17.0f  %10d  %14d  %10d  %12d%n",
+                    sold, step / seconds / 1000, gcDuring, heap[1], heap[0] / (1024 * 1024),
+                    store != null ? store.offHeapBytes() / (1024 * 1024) : 0);
+        }
+
+        if (passengerManager.getBookingCount() != total) {
+            throw new IllegalStateException("购票记录数不符: " + passengerManager.getBookingCount());
+        }
+        SplittableRandom random = new SplittableRandom(7);
+        int queries = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            long index = random.nextLong(total);
+            String phone = phoneOf(index);
+            List<Booking> found = passengerManager.findBookingsByPhone(phone);
+            if (found.isEmpty() || !found.get(0).getPassenger().getTelephoneNumber().equals(phone)) {
+                throw new IllegalStateException("按联系方式查不到购票记录: " + phone);
+            }
+        }
+        System.out.printf(Locale.ROOT, "按联系方式查询: %.2f µs/次%n", (System.nanoTime() - start) / 1e3 / queries);
+        queries = 2_000;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            long index = random.nextLong(total);
+            FlightInformation flight = flights.get((int) (index / CAPACITY));
+            List<Booking> manifest = passengerManager.getManifest(flight.getFlightNumber());
+            Booking booking = manifest.get((int) (index % CAPACITY));
+            if (!booking.getPassenger().getName().equals(passenger(index).getName())) {
+                throw new IllegalStateException("乘客名单与购票顺序不符: " + flight.getFlightNumber());
+            }
+        }
+        System.out.printf(Locale.ROOT, "查询乘客名单(%d人): %.1f µs/次%n", CAPACITY, (System.nanoTime() - start) / 1e3 / queries);
+    }
+
+    private static PassengerInformation passenger(long index) {
+        return new PassengerInformation("乘客" + index, index % 2 == 0 ? "男" : "女", (int) (index % 30), phoneOf(index));
+    }
+
+    private static String phoneOf(long index) {
+        return String.format("1%010d", index / PASSENGERS_PER_PHONE);
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    // 完整GC之后的堆内存占用和完整GC的耗时（毫秒）
+    private static long[] usedHeapAfterGc() {
+        long start = System.nanoTime();
+        System.gc();
+        long pauseMillis = (System.nanoTime() - start) / 1_000_000;
+        return new long[]{MEMORY.getHeapMemoryUsage().getUsed(), pauseMillis};
+    }
+}
@@ -0,0 +1,127 @@
+package Benchmark;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.Booking;
+import Passenger.OffHeapPassengerStore;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 改签压力测试：多个线程在成对的航班之间交叉改签（一半线程从A改到B，另一半从B改到A），
+ * 航班接近满座，改签经常因没有座位或原记录已被其他线程改走而失败。
+ * 结束后检查每个航班的乘客名单与剩余座位之和等于座位总数、每位乘客恰好持有一张机票；
+ * 超时未结束视为死锁。
+ * <p>
+ * 用法：java Benchmark.RebookingStress [航班数] [线程数] [每线程改签次数] [object|offheap]
+ */
+public class RebookingStress {
+    private static final int CAPACITY = 200; // 每个航班的座位数
+    private static final int BOOKED_PER_FLIGHT = 190; // 每个航班预先售出的座位数
+    private static final long TIMEOUT_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        int flightCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        boolean offHeap = args.length > 3 && args[3].equals("offheap");
+        if (flightCount < 2 || flightCount % 2 != 0) {
+            throw new IllegalArgumentException("航班数必须是不小于2的偶数");
+        }
+
+        FlightManager flightManager = new FlightManager();
+        PassengerManager passengerManager = new PassengerManager(flightManager, offHeap ? new OffHeapPassengerStore() : null);
+        String[] airports = FlightInformation.getAllowedAirports();
+        List<FlightInformation> flights = new ArrayList<>();
+        int passengerCount = 0;
+        for (int i = 0; i < flightCount; i++) {
+            FlightInformation flight = flightManager.registerFlight(new FlightInformation(String.format("%06d", i),
+                    airports[0], airports[1], "2026-03-01 08:00", "波音737", CAPACITY));
+            flights.add(flight);
+            for (int k = 0; k < BOOKED_PER_FLIGHT; k++) {
+                passengerManager.bookFlight(new PassengerInformation("乘客" + passengerCount, "男", 10,
+                        String.format("1%010d", passengerCount)), flight);
+                passengerCount++;
+            }
+        }
+
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(thread);
+                for (int n = 0; n < operations; n++) {
+                    // 线程按奇偶分成两组，在同一对航班之间朝相反方向改签
+                    int pair = random.nextInt(flightCount / 2) * 2;
+                    FlightInformation from = flights.get(thread % 2 == 0 ? pair : pair + 1);
+                    FlightInformation to = flights.get(thread % 2 == 0 ? pair + 1 : pair);
+                    List<Booking> manifest = passengerManager.getManifest(from.getFlightNumber());
+                    if (manifest.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        if (passengerManager.rebook(manifest.get(random.nextInt(manifest.size())), to) != null) {
+                            succeeded.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (IllegalStateException e) {
+                        failed.incrementAndGet(); // 原记录已被其他线程改签
+                    }
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("FAILED: 改签线程在 " + TIMEOUT_SECONDS + " 秒内未结束，可能发生死锁");
+            System.exit(1);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        List<String> violations = new ArrayList<>();
+        int booked = 0;
+        for (FlightInformation flight : flights) {
+            int onManifest = passengerManager.getManifest(flight.getFlightNumber()).size();
+            booked += onManifest;
+            if (onManifest + flight.getAvailableSeats() != CAPACITY) {
+                violations.add("航班 " + flight.getFlightNumber() + ": 乘客 " + onManifest + " + 余座 "
+                        + flight.getAvailableSeats() + " != " + CAPACITY);
+            }
+        }
+        for (int p = 0; p < passengerCount; p++) {
+            int tickets = passengerManager.findBookingsByPhone(String.format("1%010d", p)).size();
+            if (tickets != 1) {
+                violations.add("乘客" + p + " 持有 " + tickets + " 张机票");
+            }
+        }
+        if (booked != passengerCount) {
+            violations.add("乘客名单共 " + booked + " 人，应为 " + passengerCount);
+        }
+
+        System.out.printf("%d flights, %d threads: %d rebookings succeeded, %d rejected, %.0f rebookings/s%n",
+                flightCount, threads, succeeded.get(), failed.get(), succeeded.get() * 1e9 / elapsed);
+        if (violations.isEmpty()) {
+            System.out.println("OK: 座位守恒，每位乘客恰好一张机票");
+        } else {
+            violations.stream().limit(20).forEach(v -> System.out.println("FAILED: " + v));
+            System.exit(1);
+        }
+    }
+}
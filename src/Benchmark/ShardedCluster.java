@@ -0,0 +1,437 @@
+package Benchmark;
+
+import Flight.FlightInformation;
+import Metrics.LatencyHistogram;
+import Server.FlightServer;
+import Server.ShardMap;
+import Server.ShardRouter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在本机启动分片集群并通过回环网络施加负载：每个分片是一个单独的JVM进程（RunApp --server，
+ * 各用临时目录中的快照和日志），路由器运行在本进程中，客户端线程通过TCP连接路由器。
+ * <p>
+ * 用法：java Benchmark.ShardedCluster [分片数] [线程数] [持续秒数] [航班数]，
+ * 例如 java Benchmark.ShardedCluster 4 16 30 100000。分片数为1时即单进程部署，可用于对比。
+ * 负载为 70% 按航线查询、20% 购票、10% 退掉本线程买的票。结束后检查：
+ * 经路由器能查到全部航班且出发地正确，每个线程的购票记录与经路由器汇总的记录一致，
+ * 各分片拒绝不属于自己的出发地。检查失败时以状态码1退出。
+ * 可用系统属性调整：shard.warmupSeconds（预热秒数，默认3）、shard.seed（随机种子，默认42）、
+ * shard.jvmOptions（分片进程的JVM参数，以空格分隔，如 -Xmx512m）。
+ */
+public class ShardedCluster {
+    private static final DateTimeFormatter PROTOCOL_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
+    private static final LocalDateTime SEASON_START = LocalDateTime.of(2026, 3, 1, 0, 0);
+    private static final int SEASON_DAYS = 30;
+    private static final int ADD_BATCH = 50; // 每个 ADD 请求的航班数，一行约5KB，不超过服务器的行长度上限
+    private static final Pattern PORT_PATTERN = Pattern.compile("(\\d+)");
+    private static final String[] OPERATIONS = {"search", "book", "cancel"};
+
+    // 一条到服务器的文本协议连接
+    private static final class LineClient implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+
+        LineClient(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        String call(String request) {
+            try {
+                out.write(request);
+                out.write('\n');
+                out.flush();
+                String response = in.readLine();
+                if (response == null) {
+                    throw new IOException("连接已关闭");
+                }
+                return response;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    // 客户端线程，计数只由本线程写入，结束后由主线程汇总
+    private static final class Worker extends Thread {
+        private final InetSocketAddress router;
+        private final List<String> flightNumbers;
+        private final String[] airports;
+        private final LatencyHistogram[] latencies;
+        private final SplittableRandom random;
+        private final String phone;
+        private final List<Long> held = new ArrayList<>();
+        private final long[] completed = new long[OPERATIONS.length];
+        private volatile boolean measuring;
+        private volatile boolean stopped;
+        private long soldOut;
+        private long errors;
+        private String firstError;
+
+        Worker(int index, InetSocketAddress router, List<String> flightNumbers, LatencyHistogram[] latencies, long seed) {
+            super("cluster-client-" + index);
+            this.router = router;
+            this.flightNumbers = flightNumbers;
+            this.airports = FlightInformation.getAllowedAirports();
+            this.latencies = latencies;
+            this.random = new SplittableRandom(seed);
+            this.phone = String.format("1%010d", index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (LineClient client = new LineClient(router)) {
+                while (!stopped) {
+                    int roll = random.nextInt(100);
+                    int operation = roll < 70 ? 0 : roll < 90 ? 1 : 2;
+                    long start = System.nanoTime();
+                    String response = execute(client, operation);
+                    if (response != null && response.startsWith("ERR")) {
+                        if (response.contains("没有可用座位")) {
+                            soldOut++;
+                        } else {
+                            errors++;
+                            if (firstError == null) {
+                                firstError = OPERATIONS[operation] + ": " + response;
+                            }
+                        }
+                    }
+                    if (measuring) {
+                        latencies[operation].record(System.nanoTime() - start);
+                        completed[operation]++;
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                errors++;
+                firstError = "连接失败: " + e.getMessage();
+            }
+        }
+
+        private String execute(LineClient client, int operation) {
+            switch (operation) {
+                case 0: {
+                    int from = random.nextInt(airports.length);
+                    int to = random.nextInt(airports.length - 1);
+                    if (to >= from) {
+                        to++;
+                    }
+                    return client.call("SEARCH " + airports[from] + " " + airports[to] + " limit=20");
+                }
+                case 1: {
+                    String flightNumber = flightNumbers.get(random.nextInt(flightNumbers.size()));
+                    String response = client.call("BOOK " + flightNumber + " " + phone + " 男 10 乘客" + getName());
+                    if (response.startsWith("OK ")) {
+                        held.add(Long.parseLong(response.split(" ")[1]));
+                    }
+                    return response;
+                }
+                default: {
+                    if (held.isEmpty()) {
+                        return null;
+                    }
+                    long id = held.remove(random.nextInt(held.size()));
+                    return client.call("CANCEL " + phone + " " + id);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int flightCount = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+        int warmupSeconds = Integer.getInteger("shard.warmupSeconds", 3);
+        long seed = Long.getLong("shard.seed", 42L);
+        if (shardCount <= 0 || threads <= 0 || seconds <= 0 || flightCount <= 0 || flightCount > 999_999) {
+            throw new IllegalArgumentException("分片数、线程数和持续秒数必须为正整数，航班数必须在1到999999之间");
+        }
+
+        Path directory = Files.createTempDirectory("flight-cluster");
+        List<Process> processes = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        try {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                Process process = startShard(i, shardCount, directory);
+                processes.add(process);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), awaitPort(process, i)));
+            }
+            try (ShardRouter router = new ShardRouter(addresses);
+                 FlightServer routerServer = new FlightServer(router, null, 0)) {
+                InetSocketAddress routerAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), routerServer.getPort());
+                long populateStart = System.nanoTime();
+                List<String> flightNumbers = populate(routerAddress, flightCount, seed);
+                System.out.printf("# %d shards on loopback, %d flights added through the router in %.1f s; %d threads, %d s warmup + %d s measured%n",
+                        shardCount, flightCount, (System.nanoTime() - populateStart) / 1e9, threads, warmupSeconds, seconds);
+
+                Worker[] workers = runLoad(routerAddress, flightNumbers, threads, warmupSeconds, seconds, seed, failures);
+                failures.addAll(verify(routerAddress, addresses, workers, flightCount));
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy(); // 分片在关闭钩子中写快照后退出
+            }
+            for (Process process : processes) {
+                if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+            deleteDirectory(directory);
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("OK: 全部航班可查，购票记录一致，各分片只接受自己的出发地");
+        } else {
+            failures.stream().limit(20).forEach(f -> System.out.println("FAILED: " + f));
+            System.exit(1);
+        }
+    }
+
+    // 启动一个分片进程，使用与本进程相同的JVM和类路径
+    private static Process startShard(int index, int shardCount, Path directory) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        String jvmOptions = System.getProperty("shard.jvmOptions", "").trim();
+        if (!jvmOptions.isEmpty()) {
+            command.addAll(List.of(jvmOptions.split(" +")));
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                "-Dfile.encoding=UTF-8",
+                "-Dflightapp.shard=" + index + "/" + shardCount,
+                "-Dflightapp.journal=" + directory.resolve("shard-" + index + ".journal"),
+                "-Dflightapp.snapshot=" + directory.resolve("shard-" + index + ".snapshot"),
+                "RunApp", "--server", "0"));
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    // 读取分片的输出直到启动完成，返回监听的端口；之后的输出转到本进程的标准输出
+    private static int awaitPort(Process process, int index) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = output.readLine()) != null) {
+            if (line.contains("Ctrl+C")) {
+                Matcher matcher = PORT_PATTERN.matcher(line);
+                if (!matcher.find()) {
+                    break;
+                }
+                Thread drain = new Thread(() -> {
+                    try {
+                        String rest;
+                        while ((rest = output.readLine()) != null) {
+                            System.out.println("[shard " + index + "] " + rest);
+                        }
+                    } catch (IOException ignored) {
+                        // 分片已退出
+                    }
+                }, "shard-" + index + "-output");
+                drain.setDaemon(true);
+                drain.start();
+                return Integer.parseInt(matcher.group(1));
+            }
+            System.out.println("[shard " + index + "] " + line);
+        }
+        throw new IOException("分片 " + index + " 启动失败");
+    }
+
+    // 生成航班并通过路由器登记，返回航班号
+    private static List<String> populate(InetSocketAddress router, int flightCount, long seed) throws IOException {
+        String[] airports = FlightInformation.getAllowedAirports();
+        String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+        SplittableRandom random = new SplittableRandom(seed);
+        List<String> flightNumbers = new ArrayList<>(flightCount);
+        try (LineClient client = new LineClient(router)) {
+            StringBuilder batch = new StringBuilder();
+            int inBatch = 0;
+            for (int i = 0; i < flightCount; i++) {
+                int from = random.nextInt(airports.length);
+                int to = random.nextInt(airports.length - 1);
+                if (to >= from) {
+                    to++;
+                }
+                String flightNumber = String.format("%06d", i);
+                LocalDateTime departure = SEASON_START.plusMinutes(random.nextInt(SEASON_DAYS * 24 * 12) * 5L);
+                batch.append(inBatch == 0 ? "ADD " : "|").append(flightNumber).append(',')
+                        .append(airports[from]).append(',').append(airports[to]).append(',')
+                        .append(departure.format(PROTOCOL_TIME_FORMAT)).append(',')
+                        .append(aircraftTypes[random.nextInt(aircraftTypes.length)]).append(',')
+                        .append(120 + random.nextInt(180));
+                flightNumbers.add(flightNumber);
+                if (++inBatch == ADD_BATCH || i == flightCount - 1) {
+                    String response = client.call(batch.toString());
+                    if (!response.equals("OK " + inBatch)) {
+                        throw new IllegalStateException("登记航班失败: " + response);
+                    }
+                    batch.setLength(0);
+                    inBatch = 0;
+                }
+            }
+        }
+        return flightNumbers;
+    }
+
+    private static Worker[] runLoad(InetSocketAddress router, List<String> flightNumbers, int threads, int warmupSeconds,
+                                    int seconds, long seed, List<String> failures) throws InterruptedException {
+        LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(t, router, flightNumbers, latencies, seeds.nextLong());
+            workers[t].start();
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+        for (Worker worker : workers) {
+            worker.measuring = true;
+        }
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        for (Worker worker : workers) {
+            worker.measuring = false;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Worker worker : workers) {
+            worker.stopped = true;
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+
+        System.out.printf("%-10s %10s %12s %10s %10s %10s %10s%n",
+                "operation", "count", "ops/s", "mean(us)", "p50(us)", "p99(us)", "max(us)");
+        long total = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            long count = 0;
+            for (Worker worker : workers) {
+                count += worker.completed[i];
+            }
+            total += count;
+            LatencyHistogram.Snapshot snapshot = latencies[i].snapshot();
+            System.out.printf("%-10s %10d %12.0f %10.1f %10.1f %10.1f %10.1f%n", OPERATIONS[i], count, count / elapsed,
+                    snapshot.getMeanNanos() / 1e3, snapshot.getValueAtQuantile(0.5) / 1e3,
+                    snapshot.getValueAtQuantile(0.99) / 1e3, snapshot.getMaxNanos() / 1e3);
+        }
+        long soldOut = 0;
+        long errors = 0;
+        for (Worker worker : workers) {
+            soldOut += worker.soldOut;
+            errors += worker.errors;
+            if (worker.firstError != null) {
+                failures.add(worker.getName() + " 操作失败: " + worker.firstError);
+            }
+        }
+        System.out.printf("total: %d operations in %.1f s, %.0f ops/s; %d bookings sold out, %d errors%n",
+                total, elapsed, total / elapsed, soldOut, errors);
+        return workers;
+    }
+
+    private static List<String> verify(InetSocketAddress router, List<InetSocketAddress> shards, Worker[] workers,
+                                       int flightCount) throws IOException {
+        List<String> failures = new ArrayList<>();
+        String[] airports = FlightInformation.getAllowedAirports();
+        try (LineClient client = new LineClient(router)) {
+            // 经路由器翻页查询每条航线，航班总数应与登记的一致
+            long found = 0;
+            for (String from : airports) {
+                for (String to : airports) {
+                    if (from.equals(to)) {
+                        continue;
+                    }
+                    String cursor = null;
+                    do {
+                        String response = client.call("SEARCH " + from + " " + to + " limit=200"
+                                + (cursor != null ? " cursor=" + cursor : ""));
+                        String[] parts = response.split(" ", 4);
+                        if (!parts[0].equals("OK")) {
+                            failures.add("查询 " + from + "-" + to + " 失败: " + response);
+                            break;
+                        }
+                        found += Integer.parseInt(parts[1]);
+                        if (parts.length > 3 && !parts[3].isEmpty() && !parts[3].split(",", 3)[1].equals(from)) {
+                            failures.add("查询 " + from + "-" + to + " 返回了其他出发地的航班: " + parts[3]);
+                        }
+                        cursor = parts[2].equals("-") ? null : parts[2];
+                    } while (cursor != null);
+                }
+            }
+            if (found != flightCount) {
+                failures.add("经路由器查到 " + found + " 个航班，应为 " + flightCount);
+            }
+
+            // 每个线程持有的购票记录应与经路由器汇总的一致
+            for (Worker worker : workers) {
+                String response = client.call("BOOKINGS " + worker.phone);
+                String[] parts = response.split(" ", 3);
+                Set<Long> listed = new HashSet<>();
+                if (parts.length == 3 && !parts[2].isEmpty()) {
+                    for (String item : parts[2].split("\\|")) {
+                        listed.add(Long.parseLong(item.substring(0, item.indexOf(','))));
+                    }
+                }
+                if (!parts[0].equals("OK") || !listed.equals(new HashSet<>(worker.held))) {
+                    failures.add(worker.phone + " 持有 " + worker.held.size() + " 张票，路由器返回: "
+                            + (response.length() > 200 ? response.substring(0, 200) + "..." : response));
+                }
+            }
+        }
+
+        // 直接连接分片，不属于本分片的出发地应被拒绝
+        ShardMap shardMap = new ShardMap(shards.size());
+        for (int i = 0; i < shards.size() && shards.size() > 1; i++) {
+            try (LineClient client = new LineClient(shards.get(i))) {
+                for (String from : airports) {
+                    String response = client.call("SEARCH " + from + " " + (from.equals(airports[0]) ? airports[1] : airports[0]));
+                    boolean owned = shardMap.shardOf(from) == i;
+                    if (owned != response.startsWith("OK ")) {
+                        failures.add("分片 " + i + " 对出发地 " + from + " 的响应不正确: " + response);
+                    }
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
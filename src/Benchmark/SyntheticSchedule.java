@@ -0,0 +1,127 @@
+package Benchmark;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// 合成航班计划生成类，用于基准测试和压力测试
+public class SyntheticSchedule {
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final LocalDateTime SEASON_START = LocalDateTime.of(2026, 1, 1, 0, 0);
+    private static final int SEASON_MINUTES = 180 * 24 * 60; // 一个航季约180天
+    // 航班集中在早、午、晚几个出港波次（距当天零点的分钟数）
+    private static final int[] DEPARTURE_BANKS = {7 * 60, 10 * 60, 13 * 60, 17 * 60, 20 * 60};
+    private static final int BATCH_SIZE = 10_000;
+
+    private SyntheticSchedule() {
+    }
+
+    /**
+     * 生成指定数量的随机航班并登记到航班管理器中
+     *
+     * @param flightManager 航班管理器
+     * @param count 航班数量（航班号为6位数字，最多1000000个）
+     * @param seed 随机种子，相同种子生成相同的航班计划
+     * @return 生成的航班列表
+     */
+    public static List<FlightInformation> populate(FlightManager flightManager, int count, long seed) {
+        if (count < 0 || count > 1_000_000) {
+            throw new IllegalArgumentException("航班数量必须在0到1000000之间: " + count);
+        }
+        String[] airports = FlightInformation.getAllowedAirports();
+        String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+        Random random = new Random(seed);
+        List<FlightInformation> generated = new ArrayList<>(count);
+        List<FlightInformation> batch = new ArrayList<>(Math.min(count, BATCH_SIZE));
+
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(airports.length);
+            int to = random.nextInt(airports.length - 1);
+            if (to >= from) {
+                to++; // 保证出发地和目的地不同
+            }
+            String departureTime = SEASON_START.plusMinutes(random.nextInt(SEASON_MINUTES)).format(DATE_TIME_FORMAT);
+            String aircraftType = aircraftTypes[random.nextInt(aircraftTypes.length)];
+            int availableSeats = 100 + random.nextInt(300);
+
+            FlightInformation flight = new FlightInformation(String.format("%06d", i), airports[from], airports[to],
+                    departureTime, aircraftType, availableSeats);
+            batch.add(flight);
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                generated.addAll(flightManager.registerFlights(batch));
+                batch = new ArrayList<>(Math.min(count - i - 1, BATCH_SIZE));
+            }
+        }
+        return generated;
+    }
+
+    /**
+     * 按更接近真实情况的分布生成航班并登记到航班管理器中：
+     * 机场按Zipf分布划分繁忙程度（排在前面的枢纽机场航班多），航线的航班量与两端机场的繁忙程度成正比；
+     * 航班分布在从航季开始的若干天中，起飞时间集中在几个出港波次附近；座位数随机。
+     *
+     * @param flightManager 航班管理器
+     * @param count 航班数量（航班号为6位数字，最多1000000个）
+     * @param days 航班计划覆盖的天数
+     * @param seed 随机种子，相同种子生成相同的航班计划
+     * @return 生成的航班列表
+     */
+    public static List<FlightInformation> populateNetwork(FlightManager flightManager, int count, int days, long seed) {
+        if (count < 0 || count > 1_000_000) {
+            throw new IllegalArgumentException("航班数量必须在0到1000000之间: " + count);
+        }
+        if (days <= 0 || days > 180) {
+            throw new IllegalArgumentException("天数必须在1到180之间: " + days);
+        }
+        String[] airports = FlightInformation.getAllowedAirports();
+        String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+        Random random = new Random(seed);
+
+        // 机场权重的累积和。航线权重是两端机场权重之积，所以出发地和目的地可以分别抽取，
+        // 抽到相同机场时重抽，不需要按机场数的平方建表
+        int airportCount = airports.length;
+        double[] cumulative = new double[airportCount];
+        double total = 0;
+        for (int airport = 0; airport < airportCount; airport++) {
+            total += 1.0 / (airport + 1);
+            cumulative[airport] = total;
+        }
+
+        List<FlightInformation> generated = new ArrayList<>(count);
+        List<FlightInformation> batch = new ArrayList<>(Math.min(count, BATCH_SIZE));
+        for (int i = 0; i < count; i++) {
+            int from;
+            int to;
+            do {
+                from = sample(cumulative, total, random);
+                to = sample(cumulative, total, random);
+            } while (from == to);
+            int bank = DEPARTURE_BANKS[random.nextInt(DEPARTURE_BANKS.length)];
+            int minuteOfDay = Math.floorMod(bank + (int) Math.round(random.nextGaussian() * 45), 24 * 60);
+            String departureTime = SEASON_START.plusDays(random.nextInt(days)).plusMinutes(minuteOfDay)
+                    .format(DATE_TIME_FORMAT);
+            String aircraftType = aircraftTypes[random.nextInt(aircraftTypes.length)];
+            int availableSeats = 120 + random.nextInt(180);
+
+            batch.add(new FlightInformation(String.format("%06d", i), airports[from], airports[to],
+                    departureTime, aircraftType, availableSeats));
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                generated.addAll(flightManager.registerFlights(batch));
+                batch = new ArrayList<>(Math.min(count - i - 1, BATCH_SIZE));
+            }
+        }
+        return generated;
+    }
+
+    // 按累积权重抽取一个下标
+    private static int sample(double[] cumulative, double total, Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,414 @@
+package Flight;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 机场网络：允许的机场、机场坐标和机场之间的飞行时间，创建后不再修改。
+ * <p>
+ * 默认使用内置的8个机场（资源文件 airports.csv）。启动时加 -Dflightapp.airports=文件路径 从数据文件加载，文件为UTF-8编码，
+ * 空行和 # 开头的行忽略，其余每行一项：
+ * <pre>
+ * airport,北京首都国际机场,40.0801,116.5846       # 机场名称,纬度,经度，序号按出现顺序分配
+ * time,北京首都国际机场,上海浦东国际机场,2.0       # 两个机场之间的飞行时间（小时），两个方向相同
+ * </pre>
+ * 没有指定飞行时间的机场对按大圆距离估算（巡航速度加起降的固定时间，取整到半小时），
+ * 所以数据量与机场数和指定的机场对数成正比，而不是机场数的平方。
+ * <p>
+ * 飞行时间以分钟为单位存放在 short 中。机场数不超过 CACHE_LIMIT 时另有一张按需填充的完整矩阵，
+ * 查询只是一次数组访问；机场更多时指定的机场对二分查找，其余每次由两个机场的弦长在预先算好的
+ * 半小时分档阈值中查找，不调用三角函数，也不占用额外内存。
+ * 机场名称用完美哈希查找：加载时为每个桶选定一个种子，使全部名称落在互不相同的位置上，
+ * 查找时按字符串缓存的哈希值算出位置，只读两个 int 数组、比较一次字符串。
+ */
+final class AirportNetwork {
+    static final int MAX_AIRPORTS = Short.MAX_VALUE; // 列式存储和快照中的机场序号为short
+    private static final String DEFAULT_RESOURCE = "airports.csv"; // 内置机场数据，与本类在同一目录
+    private static final int CACHE_LIMIT = 1024; // 不超过这个机场数时缓存每对机场的飞行时间（最多2MB）
+    private static final int MAX_FLIGHT_MINUTES = 24 * 60; // 中转查询按每段不超过一天估计时刻表范围
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double CRUISE_SPEED_KMH = 800.0; // 估算用的平均巡航速度
+    private static final double GROUND_HOURS = 0.5; // 估算用的起降和滑行时间
+    // 估算的飞行时间按半小时分档：弦长的平方达到 HALF_HOUR_STEPS[k] 时至少为 k + 2 个半小时
+    private static final double[] HALF_HOUR_STEPS = halfHourSteps();
+
+    private final String source;
+    private final String[] names;
+    // 名称的完美哈希：按名称哈希值分桶，bucketSeeds 为各桶选定的种子，slots 中存放机场序号，空位为-1
+    private final int[] bucketSeeds;
+    private final int[] slots;
+    // 哈希值与其他机场完全相同、无法放入完美哈希的机场序号，通常为空
+    private final int[] hashCollisions;
+    // 机场在单位球面上的坐标，两个机场之间的弦长由坐标差算出
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    // 指定了飞行时间的机场对，按 出发地序号 * 机场数 + 目的地序号 排序，两个方向各一项
+    private final int[] pairKeys;
+    private final short[] pairMinutes;
+    // 下标为 出发地序号 * 机场数 + 目的地序号，0 表示还没有计算；机场数超过 CACHE_LIMIT 时为null
+    private final short[] cachedMinutes;
+
+    private AirportNetwork(String source, String[] names, double[] latitudes, double[] longitudes,
+                           Map<Integer, Integer> explicitMinutes) {
+        if (names.length == 0) {
+            throw new IllegalArgumentException("至少需要一个机场");
+        }
+        if (names.length > MAX_AIRPORTS) {
+            throw new IllegalArgumentException("机场数不能超过 " + MAX_AIRPORTS + ": " + names.length);
+        }
+        this.source = source;
+        this.names = names;
+
+        this.bucketSeeds = new int[tableSize(Math.max(1, names.length / 4))];
+        this.slots = new int[tableSize(names.length * 2)];
+        this.hashCollisions = buildPerfectHash();
+
+        this.x = new double[names.length];
+        this.y = new double[names.length];
+        this.z = new double[names.length];
+        for (int i = 0; i < names.length; i++) {
+            double latitude = Math.toRadians(latitudes[i]);
+            double longitude = Math.toRadians(longitudes[i]);
+            x[i] = Math.cos(latitude) * Math.cos(longitude);
+            y[i] = Math.cos(latitude) * Math.sin(longitude);
+            z[i] = Math.sin(latitude);
+        }
+
+        this.pairKeys = explicitMinutes.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        this.pairMinutes = new short[pairKeys.length];
+        for (int i = 0; i < pairKeys.length; i++) {
+            pairMinutes[i] = (short) (int) explicitMinutes.get(pairKeys[i]);
+        }
+        this.cachedMinutes = names.length <= CACHE_LIMIT ? new short[names.length * names.length] : null;
+    }
+
+    /**
+     * 距离为 km 时估算的半小时数为 round((GROUND_HOURS + km / CRUISE_SPEED_KMH) * 2)，
+     * 在 km 使该值恰好为 k + 1.5 时进位，换算成单位球上的弦长平方即为各档的阈值
+     */
+    private static double[] halfHourSteps() {
+        List<Double> steps = new ArrayList<>();
+        for (int k = 0; ; k++) {
+            double kilometers = ((k + 1.5) / 2 - GROUND_HOURS) * CRUISE_SPEED_KMH;
+            double angle = kilometers / EARTH_RADIUS_KM;
+            if (angle > Math.PI) {
+                break;
+            }
+            double chord = 2 * Math.sin(angle / 2);
+            steps.add(chord * chord);
+        }
+        return steps.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    // 不小于 n 的2的幂
+    private static int tableSize(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private int bucketOf(int hash) {
+        int h = hash * 0x85EBCA6B;
+        return (h ^ (h >>> 15)) & (bucketSeeds.length - 1);
+    }
+
+    private int slotOf(int hash, int seed) {
+        int h = (hash ^ seed * 0x632BE5AB) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (slots.length - 1);
+    }
+
+    /**
+     * 建立完美哈希：从名称最多的桶开始，依次为每个桶尝试种子，直到桶中名称的位置都空闲且互不相同。
+     * 槽位数不少于名称数的两倍，每个桶平均只需尝试几次
+     *
+     * @return 哈希值与其他机场完全相同的机场序号
+     */
+    private int[] buildPerfectHash() {
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i < bucketSeeds.length; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        Map<Integer, Integer> firstWithHash = new HashMap<>();
+        List<Integer> collisions = new ArrayList<>();
+        for (int ordinal = 0; ordinal < names.length; ordinal++) {
+            int hash = names[ordinal].hashCode();
+            if (firstWithHash.putIfAbsent(hash, ordinal) != null) {
+                collisions.add(ordinal); // 哈希值相同的名称无论种子如何都落在同一位置
+            } else {
+                buckets.get(bucketOf(hash)).add(ordinal);
+            }
+        }
+        Integer[] order = new Integer[buckets.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+        Arrays.fill(slots, -1);
+        int[] positions = new int[order.length > 0 ? buckets.get(order[0]).size() : 0];
+        for (int bucket : order) {
+            List<Integer> members = buckets.get(bucket);
+            if (members.isEmpty()) {
+                break;
+            }
+            for (int seed = 0; ; seed++) {
+                if (seed == 1 << 24) {
+                    throw new IllegalStateException("无法为机场名称建立完美哈希");
+                }
+                if (tryPlace(members, seed, positions)) {
+                    bucketSeeds[bucket] = seed;
+                    break;
+                }
+            }
+        }
+        return collisions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private boolean tryPlace(List<Integer> members, int seed, int[] positions) {
+        for (int i = 0; i < members.size(); i++) {
+            int slot = slotOf(names[members.get(i)].hashCode(), seed);
+            if (slots[slot] >= 0) {
+                for (int j = 0; j < i; j++) {
+                    slots[positions[j]] = -1;
+                }
+                return false;
+            }
+            slots[slot] = members.get(i);
+            positions[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * 按系统属性 flightapp.airports 加载机场网络，没有设置时使用内置网络
+     *
+     * @return 机场网络
+     * @throws UncheckedIOException 读取数据文件失败时抛出
+     * @throws IllegalArgumentException 数据文件有误时抛出
+     */
+    static AirportNetwork load() {
+        String path = System.getProperty("flightapp.airports");
+        if (path == null || path.isEmpty()) {
+            return defaults();
+        }
+        try {
+            return load(Paths.get(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取机场数据失败: " + path, e);
+        }
+    }
+
+    /**
+     * 内置的8个机场和它们之间的飞行时间，数据在与本类同目录的资源文件 airports.csv 中，
+     * 与 -Dflightapp.airports 指定的数据文件格式相同，由同一个解析方法读取
+     *
+     * @throws UncheckedIOException 读取资源文件失败时抛出
+     */
+    static AirportNetwork defaults() {
+        InputStream in = AirportNetwork.class.getResourceAsStream(DEFAULT_RESOURCE);
+        if (in == null) {
+            throw new IllegalStateException("找不到内置机场数据: " + DEFAULT_RESOURCE);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return parse(reader, "内置机场");
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取内置机场数据失败: " + DEFAULT_RESOURCE, e);
+        }
+    }
+
+    /**
+     * 从数据文件加载机场网络，格式见类注释
+     *
+     * @param path 数据文件
+     * @return 机场网络
+     * @throws IllegalArgumentException 数据有误时抛出，消息中包含行号
+     */
+    static AirportNetwork load(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(reader, path.toString());
+        }
+    }
+
+    private static AirportNetwork parse(BufferedReader reader, String source) throws IOException {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> ordinals = new HashMap<>();
+        List<double[]> coordinates = new ArrayList<>();
+        List<String[]> times = new ArrayList<>();
+        List<Integer> timeLines = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            if (fields[0].equals("airport") && fields.length == 4) {
+                String name = fields[1];
+                if (name.isEmpty() || ordinals.putIfAbsent(name, names.size()) != null) {
+                    throw new IllegalArgumentException("第 " + lineNumber + " 行：机场名称为空或重复: " + name);
+                }
+                names.add(name);
+                coordinates.add(new double[]{
+                        parseCoordinate(fields[2], 90, lineNumber), parseCoordinate(fields[3], 180, lineNumber)});
+            } else if (fields[0].equals("time") && fields.length == 4) {
+                times.add(fields);
+                timeLines.add(lineNumber);
+            } else {
+                throw new IllegalArgumentException("第 " + lineNumber + " 行格式不正确: " + line);
+            }
+        }
+
+        // 机场全部读完之后再处理飞行时间，允许飞行时间写在机场之前
+        int airportCount = names.size();
+        Map<Integer, Integer> explicitMinutes = new HashMap<>();
+        for (int i = 0; i < times.size(); i++) {
+            String[] fields = times.get(i);
+            int timeLine = timeLines.get(i);
+            Integer from = ordinals.get(fields[1]);
+            Integer to = ordinals.get(fields[2]);
+            if (from == null || to == null || from.equals(to)) {
+                throw new IllegalArgumentException("第 " + timeLine + " 行：机场不存在或出发地与目的地相同");
+            }
+            int minutes = parseFlightMinutes(fields[3], timeLine);
+            explicitMinutes.put(from * airportCount + to, minutes);
+            explicitMinutes.put(to * airportCount + from, minutes);
+        }
+
+        double[] latitudes = new double[airportCount];
+        double[] longitudes = new double[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            latitudes[i] = coordinates.get(i)[0];
+            longitudes[i] = coordinates.get(i)[1];
+        }
+        return new AirportNetwork(source, names.toArray(new String[0]), latitudes, longitudes, explicitMinutes);
+    }
+
+    private static double parseCoordinate(String value, double limit, int lineNumber) {
+        try {
+            double degrees = Double.parseDouble(value);
+            if (!(Math.abs(degrees) <= limit)) {
+                throw new IllegalArgumentException("第 " + lineNumber + " 行：坐标超出范围: " + value);
+            }
+            return degrees;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("第 " + lineNumber + " 行：坐标必须是数字: " + value);
+        }
+    }
+
+    private static int parseFlightMinutes(String value, int lineNumber) {
+        try {
+            long minutes = Math.round(Double.parseDouble(value) * 60);
+            if (minutes <= 0 || minutes > MAX_FLIGHT_MINUTES) {
+                throw new IllegalArgumentException("第 " + lineNumber + " 行：飞行时间必须在1分钟到24小时之间: " + value);
+            }
+            return (int) minutes;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("第 " + lineNumber + " 行：飞行时间必须是数字: " + value);
+        }
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    // 按序号排列的机场名称，返回的数组不能修改
+    String[] names() {
+        return names;
+    }
+
+    String name(int ordinal) {
+        return names[ordinal];
+    }
+
+    /**
+     * 查找机场序号
+     *
+     * @param name 机场名称
+     * @return 序号，不是允许的机场时返回-1
+     */
+    int ordinal(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int hash = name.hashCode();
+        int ordinal = slots[slotOf(hash, bucketSeeds[bucketOf(hash)])];
+        if (ordinal >= 0 && names[ordinal].equals(name)) {
+            return ordinal;
+        }
+        for (int other : hashCollisions) {
+            if (names[other].equals(name)) {
+                return other;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按序号查询两个机场之间的飞行时间
+     *
+     * @param from 出发地序号
+     * @param to 目的地序号
+     * @return 飞行时间（小时），出发地与目的地相同时为NaN
+     */
+    double flightTime(int from, int to) {
+        if (from == to) {
+            return Double.NaN;
+        }
+        int pair = from * names.length + to;
+        short[] cache = cachedMinutes;
+        if (cache != null) {
+            int minutes = cache[pair];
+            if (minutes == 0) {
+                // 多个线程同时计算时写入的值相同
+                minutes = flightMinutes(pair, from, to);
+                cache[pair] = (short) minutes;
+            }
+            return minutes / 60.0;
+        }
+        return flightMinutes(pair, from, to) / 60.0;
+    }
+
+    private int flightMinutes(int pair, int from, int to) {
+        int index = Arrays.binarySearch(pairKeys, pair);
+        if (index >= 0) {
+            return pairMinutes[index];
+        }
+        double dx = x[from] - x[to];
+        double dy = y[from] - y[to];
+        double dz = z[from] - z[to];
+        double squaredChord = dx * dx + dy * dy + dz * dz;
+        // 不小于阈值的档数，即 squaredChord 之后第一个阈值的下标
+        int low = 0;
+        int high = HALF_HOUR_STEPS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (HALF_HOUR_STEPS[mid] <= squaredChord) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + 1) * 30;
+    }
+}
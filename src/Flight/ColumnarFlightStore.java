@@ -0,0 +1,715 @@
+package Flight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 列式航班存储，适用于百万级航班计划。
+ * <p>
+ * 每个字段单独保存在一列基本类型数组中：航班号为int，机场和机型为short序号，
+ * 起飞时间为epoch分钟数（long），可用座位数为int。每个航班约占26字节，
+ * 而一个 FlightInformation 对象连同其字符串约占160字节。
+ * 列按固定大小的页分配，扩容时不需要复制已有数据，座位数可以在扩容期间安全地并发修改。
+ * 按航班号查找通过以航班号为下标的行号数组完成，日志重放和购票时查找航班都是常数时间。
+ * 座位图（见 SeatMap）只为售过票或选过座的航班创建，此前可用座位数列就是开放的座位数；
+ * 存放座位图引用的数组也按1024个航班分块，块内有航班售票时才分配。
+ * 查询时返回轻量的 FlightInformation 视图。
+ * <p>
+ * 一行写入后除座位外不再修改：修改航班时追加一行新版本，并在航线索引中替换旧行。
+ * 航线索引中的数组同样不再修改，写线程复制涉及的航线后整体替换，查询不加锁，
+ * 总是在某一个版本的航线索引上进行，不会看到修改到一半的航班。
+ */
+public class ColumnarFlightStore {
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int SEAT_CHUNK_SHIFT = 10; // 座位图按1024个航班一块分配
+    private static final int SEAT_CHUNK_MASK = (1 << SEAT_CHUNK_SHIFT) - 1;
+    private static final int[] NO_ROWS = new int[0];
+    private static final int FLIGHT_NUMBERS = 1_000_000; // 6位航班号
+
+    // 一页航班数据，每列长度均为 PAGE_SIZE
+    private static final class Page {
+        final int[] flightNumbers = new int[PAGE_SIZE];
+        final short[] departures = new short[PAGE_SIZE];
+        final short[] destinations = new short[PAGE_SIZE];
+        final short[] aircraftTypes = new short[PAGE_SIZE];
+        final long[] departureMinutes = new long[PAGE_SIZE];
+        final AtomicIntegerArray availableSeats = new AtomicIntegerArray(PAGE_SIZE);
+        // 座位图分块存放，块内有航班第一次售票时才分配，没有售票的航班只占块引用数组中的一份
+        final AtomicReferenceArray<AtomicReferenceArray<SeatMap>> seatMapChunks =
+                new AtomicReferenceArray<>(PAGE_SIZE >>> SEAT_CHUNK_SHIFT);
+
+        SeatMap peekSeatMap(int slot) {
+            AtomicReferenceArray<SeatMap> chunk = seatMapChunks.get(slot >>> SEAT_CHUNK_SHIFT);
+            return chunk != null ? chunk.get(slot & SEAT_CHUNK_MASK) : null;
+        }
+
+        void setSeatMap(int slot, SeatMap map) {
+            seatMapChunk(slot).set(slot & SEAT_CHUNK_MASK, map);
+        }
+
+        // 没有座位图时装上 created，返回最终装上的座位图
+        SeatMap installIfAbsent(int slot, SeatMap created) {
+            AtomicReferenceArray<SeatMap> chunk = seatMapChunk(slot);
+            int index = slot & SEAT_CHUNK_MASK;
+            return chunk.compareAndSet(index, null, created) ? created : chunk.get(index);
+        }
+
+        private AtomicReferenceArray<SeatMap> seatMapChunk(int slot) {
+            int index = slot >>> SEAT_CHUNK_SHIFT;
+            AtomicReferenceArray<SeatMap> chunk = seatMapChunks.get(index);
+            if (chunk == null) {
+                chunk = new AtomicReferenceArray<>(1 << SEAT_CHUNK_SHIFT);
+                if (!seatMapChunks.compareAndSet(index, null, chunk)) {
+                    chunk = seatMapChunks.get(index);
+                }
+            }
+            return chunk;
+        }
+    }
+
+    private volatile Page[] pages = new Page[4];
+    private volatile int rowCount; // 已使用的行数，包括航班修改后留下的旧行
+    private volatile int size; // 航班数量
+    private volatile long version; // 航线索引的版本号，每次替换加1
+
+    // 航线索引：每条航线的行号按起飞时间升序排列，数组长度即航班数，没有航班的航线不在表中
+    private final int airportCount = FlightInformation.airportCount();
+    private volatile RouteTable<int[]> routes = new RouteTable<>(airportCount);
+
+    // 航班号索引：下标为航班号，值为当前版本的行号加1，0表示没有该航班；固定占用4MB
+    private final AtomicIntegerArray rowsByNumber = new AtomicIntegerArray(FLIGHT_NUMBERS);
+
+    /**
+     * 添加航班，把对象的字段拷贝到各列中
+     *
+     * @param flight 航班
+     * @return 指向新行的航班视图
+     */
+    public FlightInformation add(FlightInformation flight) {
+        return addAll(List.of(flight)).get(0);
+    }
+
+    /**
+     * 批量添加航班
+     *
+     * @param batch 航班列表
+     * @return 指向新行的航班视图，顺序与参数相同
+     * @throws IllegalArgumentException 航班号或机型不合法、航班号已存在时抛出，此时不添加任何航班
+     */
+    public List<FlightInformation> addAll(List<FlightInformation> batch) {
+        return addAll(batch, () -> { });
+    }
+
+    /**
+     * 批量添加航班：先检查整批航班，再追加到各列中，最后按航线合并到航线索引，整批只替换一次索引。
+     * beforePublish 在检查通过之后、航班可以被查到之前执行，用于先写日志，它抛出异常时不添加任何航班
+     *
+     * @param batch 航班列表
+     * @param beforePublish 发布之前执行的操作
+     * @return 指向新行的航班视图，顺序与参数相同
+     * @throws IllegalArgumentException 航班号或机型不合法、航班号已存在或在本批中重复时抛出，此时不添加任何航班
+     */
+    public synchronized List<FlightInformation> addAll(List<FlightInformation> batch, Runnable beforePublish) {
+        if (batch.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int[] flightNumbers = new int[batch.size()];
+        int[] aircraftTypes = new int[batch.size()];
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            FlightInformation flight = batch.get(i);
+            flightNumbers[i] = parseFlightNumber(flight.getFlightNumber());
+            if (rowsByNumber.get(flightNumbers[i]) != 0 || !seen.add(flightNumbers[i])) {
+                throw new IllegalArgumentException("航班号已存在: " + flight.getFlightNumber());
+            }
+            aircraftTypes[i] = FlightInformation.aircraftOrdinal(flight.getAircraftType());
+            if (aircraftTypes[i] < 0) {
+                throw new IllegalArgumentException("Invalid aircraft type: " + flight.getAircraftType());
+            }
+        }
+        beforePublish.run();
+        int[] rows = new int[batch.size()];
+        List<FlightInformation> views = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            FlightInformation flight = batch.get(i);
+            // 保留已分配的座位
+            rows[i] = appendRow(flightNumbers[i], flight.getDepartureOrdinal(), flight.getDestinationOrdinal(),
+                    aircraftTypes[i], flight.getDepartureMinutes(), flight.getAvailableSeats(), flight.peekSeatMap());
+            views.add(new FlightView(this, rows[i]));
+        }
+        publish(NO_ROWS, rows);
+        return views;
+    }
+
+    /**
+     * 修改航班：按新信息追加一行，并在航线索引中用新行替换旧行，查询要么看到旧行、要么看到新行。
+     * 旧行保持不变，仍持有旧视图的线程读到的是修改前的完整航班；座位数和机型不变时新旧两行共用原座位图，
+     * 否则先停用原座位图，在发布新行之前把按新座位数开放的座位图装到旧行上，通过旧视图购票占用的也是新行的座位。
+     * 旧行不回收，航班修改远少于查询和购票，占用的空间可以忽略。
+     * beforePublish 在检查通过之后、新行可以被查到之前执行，用于先写日志，它抛出异常时航班不变。
+     *
+     * @param flight 要修改的航班，必须是本存储中航班的当前版本
+     * @param flightNumber 新航班号
+     * @param departure 新出发地
+     * @param destination 新目的地
+     * @param departureTime 新起飞时间
+     * @param aircraftType 新机型
+     * @param availableSeats 新可用座位数
+     * @param beforePublish 发布之前执行的操作
+     * @return 指向新行的航班视图
+     * @throws IllegalArgumentException 新信息不合法、新航班号已被其他航班使用或航班不属于本存储时抛出，此时航班不变
+     * @throws IllegalStateException 航班已被修改（不是当前版本），或已有乘客占座时修改座位数或机型时抛出
+     */
+    public synchronized FlightInformation update(FlightInformation flight, String flightNumber, String departure,
+                                                 String destination, String departureTime, String aircraftType,
+                                                 int availableSeats, Runnable beforePublish) {
+        if (!(flight instanceof FlightView) || ((FlightView) flight).store != this) {
+            throw new IllegalArgumentException("航班不属于本存储: " + flight.getFlightNumber());
+        }
+        int oldRow = ((FlightView) flight).row;
+        if (!isCurrent(oldRow)) {
+            throw new IllegalStateException("航班已被修改，请重新查询: " + flight.getFlightNumber());
+        }
+        int number = parseFlightNumber(flightNumber);
+        int existing = rowsByNumber.get(number) - 1;
+        if (existing >= 0 && existing != oldRow) {
+            throw new IllegalArgumentException("航班号已存在: " + flightNumber);
+        }
+        int from = FlightInformation.airportOrdinal(departure);
+        if (from < 0) {
+            throw new IllegalArgumentException("Invalid departure airport: " + departure);
+        }
+        int to = FlightInformation.airportOrdinal(destination);
+        if (to < 0) {
+            throw new IllegalArgumentException("Invalid destination airport: " + destination);
+        }
+        int aircraft = FlightInformation.aircraftOrdinal(aircraftType);
+        if (aircraft < 0) {
+            throw new IllegalArgumentException("Invalid aircraft type: " + aircraftType);
+        }
+        long minutes = FlightInformation.toEpochMinutes(departureTime);
+        FlightInformation.checkSeatCount(availableSeats, aircraft);
+
+        // 座位数和机型不变时共用原座位图，否则停用原座位图，在发布之前把新座位图装到旧行上
+        SeatMap seatMap = flight.seatMap();
+        if (aircraft != flight.getAircraftOrdinal() || availableSeats != seatMap.getSeats()) {
+            if (!seatMap.retire()) {
+                throw new IllegalStateException("航班已有乘客购票，不能修改座位数或机型: " + flight.getFlightNumber());
+            }
+            try {
+                beforePublish.run();
+            } catch (RuntimeException e) {
+                // 停用时座位全部空闲，换上同样的空座位图即恢复原样
+                page(oldRow).setSeatMap(oldRow & PAGE_MASK,
+                        new SeatMap(SeatLayout.forAircraft(flight.getAircraftOrdinal()), seatMap.getSeats()));
+                throw e;
+            }
+            seatMap = new SeatMap(SeatLayout.forAircraft(aircraft), availableSeats);
+            page(oldRow).setSeatMap(oldRow & PAGE_MASK, seatMap);
+        } else {
+            beforePublish.run();
+        }
+        int row = appendRow(number, from, to, aircraft, minutes, availableSeats, seatMap);
+        publish(new int[]{oldRow}, new int[]{row});
+        return new FlightView(this, row);
+    }
+
+    // 在末尾追加一行，只由持有锁的写线程调用，航线索引替换之后其他线程才能查到这一行
+    private int appendRow(int flightNumber, int departure, int destination, int aircraft, long minutes,
+                          int availableSeats, SeatMap seatMap) {
+        int row = rowCount;
+        Page page = pageForAppend(row);
+        int slot = row & PAGE_MASK;
+        page.flightNumbers[slot] = flightNumber;
+        page.departures[slot] = (short) departure;
+        page.destinations[slot] = (short) destination;
+        page.aircraftTypes[slot] = (short) aircraft;
+        page.departureMinutes[slot] = minutes;
+        page.availableSeats.set(slot, availableSeats);
+        if (seatMap != null) {
+            page.setSeatMap(slot, seatMap);
+        }
+        rowCount = row + 1;
+        return row;
+    }
+
+    /**
+     * 从航线索引中移除一批行、加入一批行：复制涉及的航线和它们所在出发地的一行，
+     * 其余航线与上一版本共用，再整体替换航线索引，最后使这些航线的查询缓存失效。
+     * 只由持有锁的写线程调用
+     */
+    private void publish(int[] removed, int[] added) {
+        Map<Integer, int[]> removedByRoute = groupByRoute(removed);
+        Map<Integer, int[]> addedByRoute = groupByRoute(added);
+
+        Set<Integer> touched = new HashSet<>(addedByRoute.keySet());
+        touched.addAll(removedByRoute.keySet());
+        RouteTable<int[]> current = routes;
+        Map<Integer, int[]> changes = new HashMap<>();
+        for (int route : touched) {
+            int[] merged = merge(route(current, route / airportCount, route % airportCount),
+                    removedByRoute.getOrDefault(route, NO_ROWS), addedByRoute.getOrDefault(route, NO_ROWS));
+            changes.put(route, merged.length > 0 ? merged : null);
+        }
+        routes = current.with(changes);
+        // 先登记新行再清除旧行，航班号不变的修改不会出现查不到航班的间隙
+        for (int row : added) {
+            rowsByNumber.set(page(row).flightNumbers[row & PAGE_MASK], row + 1);
+        }
+        for (int row : removed) {
+            rowsByNumber.compareAndSet(page(row).flightNumbers[row & PAGE_MASK], row + 1, 0);
+        }
+        size += added.length - removed.length;
+        version++;
+        for (int route : touched) {
+            RouteVersions.bump(route / airportCount, route % airportCount);
+        }
+    }
+
+    /**
+     * 按航线分组，每组按起飞时间排序，稳定排序保证同一时间的行按行号（即添加顺序）排列
+     */
+    private Map<Integer, int[]> groupByRoute(int[] rows) {
+        Integer[] order = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            order[i] = rows[i];
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(this::routeOf).thenComparingLong(this::minutesOf));
+        Map<Integer, int[]> groups = new HashMap<>();
+        for (int start = 0; start < order.length; ) {
+            int route = routeOf(order[start]);
+            int end = start;
+            while (end < order.length && routeOf(order[end]) == route) {
+                end++;
+            }
+            int[] group = new int[end - start];
+            for (int i = start; i < end; i++) {
+                group[i - start] = order[i];
+            }
+            groups.put(route, group);
+            start = end;
+        }
+        return groups;
+    }
+
+    /**
+     * 去掉移除的行，再插入新增的行，相同起飞时间时已有的行排在前面。
+     * 移除和插入的位置都用二分查找确定，其余部分整段复制
+     */
+    private int[] merge(int[] existing, int[] gone, int[] group) {
+        int[] cuts = new int[gone.length];
+        for (int i = 0; i < cuts.length; i++) {
+            cuts[i] = indexOf(existing, gone[i]);
+        }
+        Arrays.sort(cuts);
+        int[] merged = new int[existing.length - cuts.length + group.length];
+        int count = 0;
+        int src = 0;
+        int c = 0;
+        int j = 0;
+        int insertAt = group.length == 0 ? existing.length : upperBound(existing, minutesOf(group[0]));
+        while (true) {
+            int cutAt = c < cuts.length ? cuts[c] : existing.length;
+            int stop = Math.min(cutAt, insertAt);
+            System.arraycopy(existing, src, merged, count, stop - src);
+            count += stop - src;
+            src = stop;
+            if (j < group.length && insertAt == src) {
+                merged[count++] = group[j++];
+                insertAt = j < group.length ? upperBound(existing, minutesOf(group[j])) : existing.length;
+            } else if (c < cuts.length && cutAt == src) {
+                src++;
+                c++;
+            } else {
+                return merged;
+            }
+        }
+    }
+
+    private int indexOf(int[] rows, int row) {
+        for (int i = lowerBound(rows, minutesOf(row)); i < rows.length; i++) {
+            if (rows[i] == row) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("行不在航线索引中: " + row);
+    }
+
+    private static int[] route(RouteTable<int[]> routes, int from, int to) {
+        int[] rows = routes.get(from, to);
+        return rows != null ? rows : NO_ROWS;
+    }
+
+    /**
+     * 获取出发地有航班的目的地
+     *
+     * @param from 出发地序号
+     * @return 升序排列的目的地序号，返回的数组不能修改
+     */
+    int[] destinations(int from) {
+        return routes.destinations(from);
+    }
+
+    // 第一个起飞时间不早于 minutes 的行在航线中的下标
+    private int lowerBound(int[] rows, long minutes) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (minutesOf(rows[mid]) < minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 第一个起飞时间晚于 minutes 的行在航线中的下标
+    private int upperBound(int[] rows, long minutes) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (minutesOf(rows[mid]) <= minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 行是否在航线索引中，即是否是航班的当前版本
+    private boolean isCurrent(int row) {
+        Page page = page(row);
+        int slot = row & PAGE_MASK;
+        int[] rows = route(routes, page.departures[slot], page.destinations[slot]);
+        long minutes = page.departureMinutes[slot];
+        for (int i = lowerBound(rows, minutes); i < rows.length && minutesOf(rows[i]) == minutes; i++) {
+            if (rows[i] == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 存储的航班数量，不包括修改后留下的旧行
+     */
+    public int size() {
+        return size;
+    }
+
+    // 航线索引的版本号，每添加一批航班或修改一个航班加1
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * 获取指定行的航班视图
+     *
+     * @param row 行号
+     * @return 航班视图
+     */
+    public FlightInformation get(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of range, size " + rowCount);
+        }
+        return new FlightView(this, row);
+    }
+
+    /**
+     * 获取全部航班的视图列表，按航线、再按起飞时间排序
+     *
+     * @return 航班视图列表
+     */
+    public List<FlightInformation> getFlights() {
+        List<FlightInformation> views = new ArrayList<>(size);
+        routes.forEach(rows -> {
+            for (int row : rows) {
+                views.add(new FlightView(this, row));
+            }
+        });
+        return views;
+    }
+
+    /**
+     * 按航班号查找航班
+     *
+     * @param flightNumber 航班号
+     * @return 航班视图，找不到时返回null
+     */
+    public FlightInformation findFlight(String flightNumber) {
+        int number;
+        try {
+            number = parseFlightNumber(flightNumber);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int row = rowsByNumber.get(number) - 1;
+        return row >= 0 ? new FlightView(this, row) : null;
+    }
+
+    /**
+     * 查询指定航线的航班，结果按起飞时间排序
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @return 航班视图列表
+     */
+    public List<FlightInformation> searchFlights(String departure, String destination) {
+        return searchFlights(departure, destination, Long.MIN_VALUE, Long.MAX_VALUE, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 查询指定航线在时间段内起飞的航班，二分查找起点，复杂度 O(log n + k)
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param fromMinutes 最早起飞时间（epoch分钟数，包含）
+     * @param toMinutes 最晚起飞时间（epoch分钟数，包含）
+     * @return 按起飞时间排序的航班视图列表
+     */
+    public List<FlightInformation> searchFlights(String departure, String destination, long fromMinutes, long toMinutes) {
+        return searchFlights(departure, destination, fromMinutes, toMinutes, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 按时间段分页读取航线上的航班，只为本页的行创建视图。
+     * 只读一次航线索引，不加锁
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param fromMinutes 最早起飞时间（epoch分钟数，包含）
+     * @param toMinutes 最晚起飞时间（epoch分钟数，包含）
+     * @param skip 起飞时间等于 fromMinutes 的航班中需要跳过的数量
+     * @param limit 最多返回的航班数
+     * @return 按起飞时间排序的航班视图列表
+     */
+    public List<FlightInformation> searchFlights(String departure, String destination, long fromMinutes, long toMinutes,
+                                                 int skip, int limit) {
+        int from = FlightInformation.airportOrdinal(departure);
+        int to = FlightInformation.airportOrdinal(destination);
+        List<FlightInformation> result = new ArrayList<>();
+        if (from < 0 || to < 0) {
+            return result;
+        }
+        int[] rows = route(routes, from, to);
+        int low = lowerBound(rows, fromMinutes);
+        for (int skipped = 0; skipped < skip && low < rows.length && minutesOf(rows[low]) == fromMinutes; skipped++) {
+            low++;
+        }
+        for (int i = low; i < rows.length && result.size() < limit && minutesOf(rows[i]) <= toMinutes; i++) {
+            result.add(new FlightView(this, rows[i]));
+        }
+        return result;
+    }
+
+    private Page pageForAppend(int row) {
+        int pageIndex = row >>> PAGE_SHIFT;
+        Page[] current = pages;
+        if (pageIndex >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[pageIndex] == null) {
+            current[pageIndex] = new Page();
+        }
+        pages = current;
+        return current[pageIndex];
+    }
+
+    private Page page(int row) {
+        return pages[row >>> PAGE_SHIFT];
+    }
+
+    private int routeOf(int row) {
+        Page page = page(row);
+        int slot = row & PAGE_MASK;
+        return page.departures[slot] * airportCount + page.destinations[slot];
+    }
+
+    private long minutesOf(int row) {
+        return page(row).departureMinutes[row & PAGE_MASK];
+    }
+
+    // 6位航班号补足前导0，在扫描和显示时频繁调用，不经过 String.format
+    private static String formatFlightNumber(int number) {
+        char[] digits = new char[6];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return new String(digits);
+    }
+
+    private static int parseFlightNumber(String flightNumber) {
+        if (flightNumber == null || !flightNumber.matches("\\d{6}")) {
+            throw new IllegalArgumentException("航班号必须是6位数字: " + flightNumber);
+        }
+        return Integer.parseInt(flightNumber);
+    }
+
+    /**
+     * 列式存储中某一行的航班视图，只保存存储引用和行号
+     */
+    private static final class FlightView extends FlightInformation {
+        private final ColumnarFlightStore store;
+        private final int row;
+
+        FlightView(ColumnarFlightStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        private Page page() {
+            return store.page(row);
+        }
+
+        private int slot() {
+            return row & PAGE_MASK;
+        }
+
+        @Override
+        public String getFlightNumber() {
+            return formatFlightNumber(page().flightNumbers[slot()]);
+        }
+
+        // 行写入后除座位外不再修改，修改航班通过 FlightManager.applyFlightUpdate 追加新版本
+        @Override
+        public void setFlightNumber(String flightNumber) {
+            throw immutable();
+        }
+
+        @Override
+        public String getDeparture() {
+            return FlightInformation.airportName(getDepartureOrdinal());
+        }
+
+        @Override
+        public void setDeparture(String departure) {
+            throw immutable();
+        }
+
+        @Override
+        public String getDestination() {
+            return FlightInformation.airportName(getDestinationOrdinal());
+        }
+
+        @Override
+        public void setDestination(String destination) {
+            throw immutable();
+        }
+
+        @Override
+        public String getDepartureTime() {
+            return FlightInformation.formatEpochMinutes(page().departureMinutes[slot()]);
+        }
+
+        @Override
+        public long getDepartureMinutes() {
+            return page().departureMinutes[slot()];
+        }
+
+        @Override
+        public void setDepartureTime(String departureTime) {
+            throw immutable();
+        }
+
+        @Override
+        public String getAircraftType() {
+            return FlightInformation.aircraftTypeName(getAircraftOrdinal());
+        }
+
+        @Override
+        public void setAircraftType(String aircraftType) {
+            throw immutable();
+        }
+
+        private static IllegalStateException immutable() {
+            return new IllegalStateException("列式存储中的航班信息不能直接修改，请使用 FlightManager.applyFlightUpdate");
+        }
+
+        @Override
+        public int getAvailableSeats() {
+            SeatMap map = peekSeatMap();
+            return map != null ? map.available() : page().availableSeats.get(slot());
+        }
+
+        @Override
+        public void setAvailableSeats(int availableSeats) {
+            FlightInformation.checkSeatCount(availableSeats, getAircraftOrdinal());
+            if (!seatMap().retire()) {
+                throw new IllegalStateException("航班已有乘客占座，不能修改座位数: " + getFlightNumber());
+            }
+            Page page = page();
+            page.availableSeats.set(slot(), availableSeats);
+            page.setSeatMap(slot(), new SeatMap(SeatLayout.forAircraft(getAircraftOrdinal()), availableSeats));
+        }
+
+        @Override
+        SeatMap seatMap() {
+            Page page = page();
+            int slot = slot();
+            SeatMap map = page.peekSeatMap(slot);
+            if (map == null) {
+                map = page.installIfAbsent(slot,
+                        new SeatMap(SeatLayout.forAircraft(getAircraftOrdinal()), page.availableSeats.get(slot)));
+            }
+            return map;
+        }
+
+        @Override
+        SeatMap peekSeatMap() {
+            return page().peekSeatMap(slot());
+        }
+
+        @Override
+        void installSeatMap(SeatMap map) {
+            page().setSeatMap(slot(), map);
+        }
+
+        @Override
+        int getDepartureOrdinal() {
+            return page().departures[slot()];
+        }
+
+        @Override
+        int getDestinationOrdinal() {
+            return page().destinations[slot()];
+        }
+
+        @Override
+        int getAircraftOrdinal() {
+            return page().aircraftTypes[slot()];
+        }
+
+        // 同一行的不同视图视为同一个航班
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FlightView)) {
+                return false;
+            }
+            FlightView other = (FlightView) o;
+            return store == other.store && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(store) * 31 + row;
+        }
+    }
+}
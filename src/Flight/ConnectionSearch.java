@@ -0,0 +1,275 @@
+package Flight;
+
+import Metrics.FlightMetrics;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 中转航班查询：在实际航班计划上查找直飞、一次中转和两次中转的行程，按总耗时或总票价排序。
+ * <p>
+ * 中转机场只从实际有航班的航线中枚举，组合数取决于各机场的通航点数，与机场总数无关。
+ * <p>
+ * 每个中转机场组合都有一个静态下界（各航段飞行时间之和加最短中转时间，或各航段最低票价之和），
+ * 按下界从小到大依次展开，下界已劣于当前第 limit 个结果时停止；展开过程中每选定一个航段
+ * 也用剩余航段的下界剪枝。每条用到的航线在一次查询中只从航线索引中取一次时间范围内的航班，
+ * 之后在这份按起飞时间排序的时刻表上二分查找可以衔接的航班。
+ */
+public class ConnectionSearch {
+    public static final int DEFAULT_MIN_CONNECTION_MINUTES = 60; // 默认最短中转时间
+    public static final int DEFAULT_MAX_CONNECTION_MINUTES = 12 * 60; // 默认最长中转等待时间
+    public static final int MAX_STOPS = 2;
+
+    // 排序方式
+    public enum SortBy {
+        FASTEST, // 总耗时最短
+        CHEAPEST // 总票价最低
+    }
+
+    private final FlightManager flightManager;
+    private final int minConnectionMinutes;
+    private final int maxConnectionMinutes;
+
+    public ConnectionSearch(FlightManager flightManager) {
+        this(flightManager, DEFAULT_MIN_CONNECTION_MINUTES, DEFAULT_MAX_CONNECTION_MINUTES);
+    }
+
+    /**
+     * @param flightManager 航班管理器
+     * @param minConnectionMinutes 最短中转时间（分钟）
+     * @param maxConnectionMinutes 最长中转等待时间（分钟）
+     */
+    public ConnectionSearch(FlightManager flightManager, int minConnectionMinutes, int maxConnectionMinutes) {
+        if (minConnectionMinutes < 0 || maxConnectionMinutes < minConnectionMinutes) {
+            throw new IllegalArgumentException("中转时间范围不合法");
+        }
+        this.flightManager = flightManager;
+        this.minConnectionMinutes = minConnectionMinutes;
+        this.maxConnectionMinutes = maxConnectionMinutes;
+    }
+
+    /**
+     * 查询从出发地到目的地、首段在指定时间段内起飞的行程
+     *
+     * @param origin 出发地
+     * @param destination 目的地
+     * @param from 首段最早起飞时间（包含）
+     * @param to 首段最晚起飞时间（包含）
+     * @param seats 每个航段需要的座位数
+     * @param maxStops 最多中转次数（0到2）
+     * @param sortBy 排序方式
+     * @param limit 最多返回的行程数
+     * @return 按排序方式从优到劣排列的行程
+     */
+    public List<Itinerary> search(String origin, String destination, LocalDateTime from, LocalDateTime to,
+                                  int seats, int maxStops, SortBy sortBy, int limit) {
+        long start = FlightMetrics.SEARCH_CONNECTIONS.start();
+        try {
+            return searchItineraries(origin, destination, from, to, seats, maxStops, sortBy, limit);
+        } finally {
+            FlightMetrics.SEARCH_CONNECTIONS.stop(start);
+        }
+    }
+
+    private List<Itinerary> searchItineraries(String origin, String destination, LocalDateTime from, LocalDateTime to,
+                                              int seats, int maxStops, SortBy sortBy, int limit) {
+        int originOrdinal = FlightInformation.airportOrdinal(origin);
+        int destinationOrdinal = FlightInformation.airportOrdinal(destination);
+        if (originOrdinal < 0 || destinationOrdinal < 0) {
+            throw new IllegalArgumentException("机场不在允许的机场列表中");
+        }
+        if (originOrdinal == destinationOrdinal) {
+            throw new IllegalArgumentException("起飞地和目的地不能相同");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("开始时间不能晚于结束时间");
+        }
+        if (seats <= 0 || limit <= 0 || maxStops < 0 || maxStops > MAX_STOPS) {
+            throw new IllegalArgumentException("座位数、结果数须为正整数，中转次数须在0到" + MAX_STOPS + "之间");
+        }
+
+        Query query = new Query(FlightInformation.toEpochMinutes(from), FlightInformation.toEpochMinutes(to),
+                seats, maxStops, sortBy, limit);
+        for (Candidate candidate : candidatePaths(originOrdinal, destinationOrdinal, maxStops, sortBy)) {
+            if (query.isFull() && candidate.bound > query.worstCost()) {
+                break; // 后面的组合下界更大，不可能进入结果
+            }
+            query.expand(candidate, 0, query.fromMinutes, query.toMinutes, 0.0);
+        }
+        return query.results();
+    }
+
+    // 一个中转机场组合，path 为依次经过的机场序号
+    private static final class Candidate {
+        final int[] path;
+        final double bound; // 整条路径的静态下界
+        final double[] remaining; // remaining[i] 为第 i 段之后剩余航段的静态下界
+
+        Candidate(int[] path, double bound, double[] remaining) {
+            this.path = path;
+            this.bound = bound;
+            this.remaining = remaining;
+        }
+    }
+
+    // 枚举直飞和经一个、两个机场中转的组合，按静态下界排序，有航段没有航班的组合跳过
+    private List<Candidate> candidatePaths(int origin, int destination, int maxStops, SortBy sortBy) {
+        List<Candidate> candidates = new ArrayList<>();
+        int[] fromOrigin = flightManager.destinations(origin);
+        if (Arrays.binarySearch(fromOrigin, destination) >= 0) {
+            addCandidate(candidates, new int[]{origin, destination}, sortBy);
+        }
+        for (int i = 0; i < fromOrigin.length && maxStops >= 1; i++) {
+            int first = fromOrigin[i];
+            if (first == destination) {
+                continue;
+            }
+            int[] fromFirst = flightManager.destinations(first);
+            if (Arrays.binarySearch(fromFirst, destination) >= 0) {
+                addCandidate(candidates, new int[]{origin, first, destination}, sortBy);
+            }
+            for (int j = 0; j < fromFirst.length && maxStops >= 2; j++) {
+                int second = fromFirst[j];
+                if (second == origin || second == destination
+                        || Arrays.binarySearch(flightManager.destinations(second), destination) < 0) {
+                    continue;
+                }
+                addCandidate(candidates, new int[]{origin, first, second, destination}, sortBy);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.bound));
+        return candidates;
+    }
+
+    private void addCandidate(List<Candidate> candidates, int[] path, SortBy sortBy) {
+        int legs = path.length - 1;
+        double[] remaining = new double[legs];
+        double total = 0;
+        for (int leg = legs - 1; leg >= 0; leg--) {
+            remaining[leg] = total;
+            double cost = sortBy == SortBy.FASTEST
+                    ? FlightInformation.flightTime(path[leg], path[leg + 1]) * 60 + (leg > 0 ? minConnectionMinutes : 0)
+                    : FlightInformation.minimumFare(path[leg], path[leg + 1]);
+            if (Double.isNaN(cost)) {
+                return;
+            }
+            total += cost;
+        }
+        candidates.add(new Candidate(path, total, remaining));
+    }
+
+    // 一次查询的状态：各航线的时刻表和当前最优的 limit 个结果
+    private final class Query {
+        final long fromMinutes;
+        final long toMinutes;
+        final long horizonMinutes; // 时刻表需要覆盖到的最晚起飞时间
+        final int seats;
+        final SortBy sortBy;
+        final int limit;
+        final Comparator<Itinerary> order;
+        final PriorityQueue<Itinerary> worstFirst;
+        final Map<Integer, List<FlightInformation>> timelines = new HashMap<>();
+        final FlightInformation[] legs = new FlightInformation[MAX_STOPS + 1];
+
+        Query(long fromMinutes, long toMinutes, int seats, int maxStops, SortBy sortBy, int limit) {
+            this.fromMinutes = fromMinutes;
+            this.toMinutes = toMinutes;
+            // 每段最长飞行时间按一天估计，足以覆盖现有航线
+            this.horizonMinutes = toMinutes + (long) maxStops * (24 * 60 + maxConnectionMinutes);
+            this.seats = seats;
+            this.sortBy = sortBy;
+            this.limit = limit;
+            Comparator<Itinerary> byDuration = Comparator.comparingLong(Itinerary::getDurationMinutes);
+            Comparator<Itinerary> byPrice = Comparator.comparingDouble(Itinerary::getPrice);
+            this.order = (sortBy == SortBy.FASTEST ? byDuration.thenComparing(byPrice) : byPrice.thenComparing(byDuration))
+                    .thenComparingLong(Itinerary::getDepartureMinutes);
+            this.worstFirst = new PriorityQueue<>(limit + 1, order.reversed());
+        }
+
+        // 出发地到目的地的航班时刻表，每次查询每条航线只取一次
+        List<FlightInformation> timeline(int from, int to) {
+            return timelines.computeIfAbsent(from * FlightInformation.airportCount() + to,
+                    route -> flightManager.searchFlights(FlightInformation.airportName(from),
+                            FlightInformation.airportName(to), fromMinutes, horizonMinutes));
+        }
+
+        boolean isFull() {
+            return worstFirst.size() == limit;
+        }
+
+        double worstCost() {
+            return cost(worstFirst.peek());
+        }
+
+        double cost(Itinerary itinerary) {
+            return sortBy == SortBy.FASTEST ? itinerary.getDurationMinutes() : itinerary.getPrice();
+        }
+
+        /**
+         * 为第 leg 段选择在 [earliest, latest] 内起飞的航班，并继续展开后面的航段
+         */
+        void expand(Candidate candidate, int leg, long earliest, long latest, double fare) {
+            List<FlightInformation> timeline = timeline(candidate.path[leg], candidate.path[leg + 1]);
+            boolean lastLeg = leg == candidate.path.length - 2;
+            for (int i = lowerBound(timeline, earliest); i < timeline.size(); i++) {
+                FlightInformation flight = timeline.get(i);
+                if (flight.getDepartureMinutes() > latest) {
+                    break;
+                }
+                if (flight.getAvailableSeats() < seats) {
+                    continue;
+                }
+                legs[leg] = flight;
+                long arrival = flight.getArrivalMinutes();
+                double legFare = fare + flight.calculatePrice();
+                if (isFull()) {
+                    double partial = sortBy == SortBy.FASTEST ? arrival - legs[0].getDepartureMinutes() : legFare;
+                    if (partial + candidate.remaining[leg] > worstCost()) {
+                        continue;
+                    }
+                }
+                if (lastLeg) {
+                    offer(new Itinerary(new ArrayList<>(Arrays.asList(legs).subList(0, leg + 1))));
+                } else {
+                    expand(candidate, leg + 1, arrival + minConnectionMinutes, arrival + maxConnectionMinutes, legFare);
+                }
+            }
+        }
+
+        void offer(Itinerary itinerary) {
+            if (!isFull()) {
+                worstFirst.add(itinerary);
+            } else if (order.compare(itinerary, worstFirst.peek()) < 0) {
+                worstFirst.poll();
+                worstFirst.add(itinerary);
+            }
+        }
+
+        List<Itinerary> results() {
+            List<Itinerary> results = new ArrayList<>(worstFirst);
+            results.sort(order);
+            return results;
+        }
+    }
+
+    // 时刻表中第一个起飞时间不早于 minutes 的位置
+    private static int lowerBound(List<FlightInformation> timeline, long minutes) {
+        int low = 0;
+        int high = timeline.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeline.get(mid).getDepartureMinutes() < minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
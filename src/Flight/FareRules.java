@@ -0,0 +1,168 @@
+package Flight;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * 编译好的一组定价规则，创建后不再修改，可以被任意多个线程同时读取。
+ * <p>
+ * 票价 = 基础票价（飞行时间 * 每小时价格 * 机型系数）* 余座系数 * 起飞前时间系数，四舍五入到分。
+ * 余座和起飞前时间的阶梯规则在加载时展开成以余座数、剩余小时数为下标的数组，
+ * 报价时只做几次数组访问和乘法，不分配对象，耗时与规则条数无关。
+ * 基础票价在报价时由飞行时间算出，不按航线预先展开，规则占用的内存与机场数无关。
+ */
+final class FareRules {
+    private static final double DEFAULT_PRICE_PER_HOUR = 500.0; // 每小时价格
+    private static final double[] DEFAULT_AIRCRAFT_FACTORS = {0.8, 1.2, 1.0, 1.1, 0.8, 1.3}; // 与允许的机型一一对应
+    private static final int MAX_SEAT_THRESHOLD = 10_000;
+    private static final int MAX_HOUR_THRESHOLD = 366 * 24;
+
+    private final String source;
+    private final double pricePerHour;
+    private final double[] aircraftFactors;
+    private final double lowestAircraftFactor;
+    // 所有余座和时间档位中最小的系数之积，用于计算中转查询剪枝用的最低票价
+    private final double lowestFactor;
+    // 下标为余座数，最后一项用于余座数超过所有阶梯的情况
+    private final double[] seatFactors;
+    // 下标为距起飞的整小时数，最后一项用于超过所有阶梯的情况
+    private final double[] hourFactors;
+
+    private FareRules(String source, double pricePerHour, double[] aircraftFactors,
+                      TreeMap<Integer, Double> seatSteps, TreeMap<Integer, Double> hourSteps) {
+        this.source = source;
+        this.pricePerHour = pricePerHour;
+        this.aircraftFactors = aircraftFactors;
+        this.seatFactors = compileSteps(seatSteps);
+        this.hourFactors = compileSteps(hourSteps);
+        this.lowestAircraftFactor = min(aircraftFactors);
+        this.lowestFactor = min(seatFactors) * min(hourFactors);
+    }
+
+    /**
+     * 把阶梯规则（不超过阈值时使用的系数）展开成数组：下标 i 的系数取自不小于 i 的最小阈值，
+     * 最后多出一项为1，用于超过所有阈值的情况
+     */
+    private static double[] compileSteps(TreeMap<Integer, Double> steps) {
+        int highest = steps.isEmpty() ? -1 : steps.lastKey();
+        double[] table = new double[highest + 2];
+        for (int i = 0; i <= highest; i++) {
+            table[i] = steps.ceilingEntry(i).getValue();
+        }
+        table[highest + 1] = 1.0;
+        return table;
+    }
+
+    private static double min(double[] values) {
+        double min = values[0];
+        for (double value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    /**
+     * 内置规则：只按飞行时间和机型定价，不随余座和起飞时间变化
+     */
+    static FareRules defaults() {
+        return new FareRules("内置规则", DEFAULT_PRICE_PER_HOUR, DEFAULT_AIRCRAFT_FACTORS.clone(),
+                new TreeMap<>(), new TreeMap<>());
+    }
+
+    /**
+     * 解析规则文件的内容，格式见 PricingEngine
+     *
+     * @param properties 规则
+     * @param source 规则来源，用于显示
+     * @return 编译好的规则
+     * @throws IllegalArgumentException 规则有误时抛出
+     */
+    static FareRules parse(Properties properties, String source) {
+        double pricePerHour = DEFAULT_PRICE_PER_HOUR;
+        double[] aircraftFactors = DEFAULT_AIRCRAFT_FACTORS.clone();
+        TreeMap<Integer, Double> seatSteps = new TreeMap<>();
+        TreeMap<Integer, Double> hourSteps = new TreeMap<>();
+
+        for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+            String key = ((String) entry.getKey()).trim();
+            String value = ((String) entry.getValue()).trim();
+            if (key.equals("pricePerHour")) {
+                pricePerHour = parseFactor(key, value);
+            } else if (key.startsWith("aircraft.")) {
+                int ordinal = FlightInformation.aircraftOrdinal(key.substring("aircraft.".length()));
+                if (ordinal < 0) {
+                    throw new IllegalArgumentException("未知机型: " + key);
+                }
+                aircraftFactors[ordinal] = parseFactor(key, value);
+            } else if (key.startsWith("seats.")) {
+                seatSteps.put(parseThreshold(key, "seats.".length(), MAX_SEAT_THRESHOLD), parseFactor(key, value));
+            } else if (key.startsWith("hours.")) {
+                hourSteps.put(parseThreshold(key, "hours.".length(), MAX_HOUR_THRESHOLD), parseFactor(key, value));
+            } else {
+                throw new IllegalArgumentException("未知的定价规则: " + key);
+            }
+        }
+        return new FareRules(source, pricePerHour, aircraftFactors, seatSteps, hourSteps);
+    }
+
+    private static int parseThreshold(String key, int prefixLength, int max) {
+        try {
+            int threshold = Integer.parseInt(key.substring(prefixLength));
+            if (threshold < 0 || threshold > max) {
+                throw new IllegalArgumentException("阈值必须在0到" + max + "之间: " + key);
+            }
+            return threshold;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("阈值必须是整数: " + key);
+        }
+    }
+
+    private static double parseFactor(String key, String value) {
+        try {
+            double factor = Double.parseDouble(value);
+            if (!(factor > 0) || Double.isInfinite(factor)) {
+                throw new IllegalArgumentException(key + " 必须是正数: " + value);
+            }
+            return factor;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " 必须是数字: " + value);
+        }
+    }
+
+    /**
+     * 报价
+     *
+     * @param from 出发地序号
+     * @param to 目的地序号
+     * @param aircraft 机型序号
+     * @param availableSeats 余座数
+     * @param minutesToDeparture 距起飞的分钟数，已起飞时为负数
+     * @return 票价（元），航线没有数据时为NaN
+     */
+    double quote(int from, int to, int aircraft, int availableSeats, long minutesToDeparture) {
+        double base = FlightInformation.flightTime(from, to) * pricePerHour * aircraftFactors[aircraft];
+        if (Double.isNaN(base)) {
+            return Double.NaN;
+        }
+        int seatIndex = Math.min(Math.max(availableSeats, 0), seatFactors.length - 1);
+        int hourIndex = (int) Math.min(Math.max(minutesToDeparture, 0) / 60, hourFactors.length - 1);
+        return Math.round(base * seatFactors[seatIndex] * hourFactors[hourIndex] * 100) / 100.0;
+    }
+
+    // 是否有按起飞前时间定价的规则
+    boolean dependsOnTime() {
+        return hourFactors.length > 1;
+    }
+
+    // 航线上所有机型、所有余座和时间档位中可能出现的最低票价，没有数据时为NaN
+    double minimumFare(int from, int to) {
+        double lowest = FlightInformation.flightTime(from, to) * pricePerHour * lowestAircraftFactor;
+        // 向下取整到分，保证不高于任何四舍五入后的报价
+        return Math.floor(lowest * lowestFactor * 100) / 100;
+    }
+
+    String getSource() {
+        return source;
+    }
+}
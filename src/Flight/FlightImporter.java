@@ -0,0 +1,285 @@
+package Flight;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 从CSV文件批量导入航班。
+ * <p>
+ * 每行格式为：航班号,出发地,目的地,起飞时间(yyyy-MM-dd HH:mm),机型,可用座位数，第一行可以是表头。
+ * 读取线程把文件按块切分，各块在线程池中并行解析和校验，校验通过的航班按块批量登记；
+ * 出错的行（包括航班号已存在的行）记录行号和原因，不会中断导入。
+ */
+public class FlightImporter {
+    private static final int CHUNK_SIZE = 8192; // 每块的行数，也是批量登记的大小
+    private static final int MAX_REPORTED_ERRORS = 1000; // 报告中最多保留的错误行数
+
+    private final FlightManager flightManager;
+    private final int threads;
+
+    public FlightImporter(FlightManager flightManager) {
+        this(flightManager, Runtime.getRuntime().availableProcessors());
+    }
+
+    public FlightImporter(FlightManager flightManager, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("线程数必须为正整数");
+        }
+        this.flightManager = flightManager;
+        this.threads = threads;
+    }
+
+    // 出错的行
+    public static class RowError {
+        private final long lineNumber;
+        private final String message;
+
+        public RowError(long lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // 导入结果
+    public static class ImportReport {
+        private final long importedCount;
+        private final long errorCount;
+        private final List<RowError> errors;
+        private final long elapsedNanos;
+
+        ImportReport(long importedCount, long errorCount, List<RowError> errors, long elapsedNanos) {
+            this.importedCount = importedCount;
+            this.errorCount = errorCount;
+            this.errors = Collections.unmodifiableList(errors);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getImportedCount() {
+            return importedCount;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        // 按行号排序的前 MAX_REPORTED_ERRORS 个错误
+        public List<RowError> getErrors() {
+            return errors;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        // 每分钟处理的行数
+        public double getRowsPerMinute() {
+            return (importedCount + errorCount) * 60_000_000_000.0 / Math.max(1, elapsedNanos);
+        }
+    }
+
+    // 一块的解析结果
+    private static class ChunkResult {
+        final List<FlightInformation> flights = new ArrayList<>();
+        final List<Long> flightLines = new ArrayList<>(); // 各航班所在的行号
+        final List<RowError> errors = new ArrayList<>();
+    }
+
+    /**
+     * 从CSV文件导入航班
+     *
+     * @param path 文件路径
+     * @return 导入结果
+     */
+    public ImportReport importCsv(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return importCsv(reader);
+        }
+    }
+
+    /**
+     * 从CSV文本流导入航班
+     *
+     * @param reader 文本流
+     * @return 导入结果
+     */
+    public ImportReport importCsv(BufferedReader reader) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "flight-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+        long[] counts = new long[2]; // 已导入数和错误数
+        List<RowError> errors = new ArrayList<>();
+        try {
+            long lineNumber = 0;
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            long chunkFirstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                chunk.add(line);
+                if (chunk.size() == CHUNK_SIZE) {
+                    inFlight.add(submit(executor, chunk, chunkFirstLine));
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    chunkFirstLine = lineNumber + 1;
+                    // 限制同时在处理的块数，避免文件过大时占满内存
+                    if (inFlight.size() >= threads * 2) {
+                        register(inFlight.removeFirst(), counts, errors);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                inFlight.add(submit(executor, chunk, chunkFirstLine));
+            }
+            while (!inFlight.isEmpty()) {
+                register(inFlight.removeFirst(), counts, errors);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ImportReport(counts[0], counts[1], errors, System.nanoTime() - start);
+    }
+
+    private static Future<ChunkResult> submit(ExecutorService executor, List<String> lines, long firstLineNumber) {
+        return executor.submit(() -> {
+            ChunkResult result = new ChunkResult();
+            for (int i = 0; i < lines.size(); i++) {
+                parseRow(lines.get(i), firstLineNumber + i, result);
+            }
+            return result;
+        });
+    }
+
+    // 按提交顺序登记每块的结果，保证错误按行号排列
+    private void register(Future<ChunkResult> future, long[] counts, List<RowError> errors) throws IOException {
+        ChunkResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("导入被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("解析航班数据失败", e.getCause());
+        }
+        // 航班号与已登记的航班或本块前面的行重复时记为错误，之前的块已登记，跨块的重复也能查到
+        List<FlightInformation> accepted = new ArrayList<>(result.flights.size());
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < result.flights.size(); i++) {
+            String flightNumber = result.flights.get(i).getFlightNumber();
+            if (!numbers.add(flightNumber) || flightManager.findFlight(flightNumber) != null) {
+                result.errors.add(new RowError(result.flightLines.get(i), "航班号已存在: " + flightNumber));
+            } else {
+                accepted.add(result.flights.get(i));
+            }
+        }
+        if (accepted.size() < result.flights.size()) {
+            result.errors.sort(Comparator.comparingLong(RowError::getLineNumber));
+        }
+        if (!accepted.isEmpty()) {
+            flightManager.registerFlights(accepted);
+        }
+        counts[0] += accepted.size();
+        counts[1] += result.errors.size();
+        for (RowError error : result.errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+
+    /**
+     * 解析并校验一行，结果放入 result
+     */
+    private static void parseRow(String line, long lineNumber, ChunkResult result) {
+        if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '﻿') {
+            line = line.substring(1); // 去掉UTF-8 BOM
+        }
+        if (line.isBlank()) {
+            return;
+        }
+        String[] fields = line.split(",", -1);
+        if (lineNumber == 1 && !fields[0].trim().chars().allMatch(Character::isDigit)) {
+            return; // 第一行的航班号一栏不是数字，视为表头
+        }
+        if (fields.length != 6) {
+            result.errors.add(new RowError(lineNumber, "字段数应为6，实际为" + fields.length));
+            return;
+        }
+        String flightNumber = fields[0].trim();
+        String departure = fields[1].trim();
+        String destination = fields[2].trim();
+        String departureTime = fields[3].trim();
+        String aircraftType = fields[4].trim();
+        String seats = fields[5].trim();
+
+        if (!FlightValidator.isValidFlightNumber(flightNumber)) {
+            result.errors.add(new RowError(lineNumber, "航班号必须是6位数字: " + flightNumber));
+            return;
+        }
+        if (!FlightValidator.isValidAirport(departure)) {
+            result.errors.add(new RowError(lineNumber, "出发地不在允许的机场列表中: " + departure));
+            return;
+        }
+        if (!FlightValidator.isValidAirport(destination)) {
+            result.errors.add(new RowError(lineNumber, "目的地不在允许的机场列表中: " + destination));
+            return;
+        }
+        if (departure.equals(destination)) {
+            result.errors.add(new RowError(lineNumber, "起飞地和目的地不能相同"));
+            return;
+        }
+        try {
+            FlightValidator.parseDepartureTime(departureTime);
+        } catch (DateTimeParseException e) {
+            result.errors.add(new RowError(lineNumber, "时间格式不正确: " + departureTime));
+            return;
+        }
+        if (!FlightValidator.isValidAircraftType(aircraftType)) {
+            result.errors.add(new RowError(lineNumber, "飞机型号无效: " + aircraftType));
+            return;
+        }
+        int availableSeats;
+        try {
+            availableSeats = Integer.parseInt(seats);
+        } catch (NumberFormatException e) {
+            availableSeats = 0;
+        }
+        if (availableSeats <= 0) {
+            result.errors.add(new RowError(lineNumber, "座位数必须为正整数: " + seats));
+            return;
+        }
+        if (availableSeats > SeatLayout.forAircraft(aircraftType).getMaxSeats()) {
+            result.errors.add(new RowError(lineNumber, aircraftType + " 最多开放 "
+                    + SeatLayout.forAircraft(aircraftType).getMaxSeats() + " 个座位: " + seats));
+            return;
+        }
+        result.flights.add(new FlightInformation(flightNumber, departure, destination, departureTime, aircraftType, availableSeats));
+        result.flightLines.add(lineNumber);
+    }
+}
@@ -1,15 +1,29 @@
 package Flight;
 
+import Metrics.FlightMetrics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-// 航班类
+// 航班类。登记到 FlightManager 之后，除座位以外的航班信息不再通过setter修改，而是由 FlightManager.applyFlightUpdate 创建新版本
 public class FlightInformation {
     private String flightNumber;
     private String departure;
     private String destination;
     private String departureTime;
+    private long departureMinutes; // 起飞时间的epoch分钟数（按UTC换算，不含时区），用于排序和按时间段查询
     private String aircraftType;
-    private int availableSeats;
+    private volatile int availableSeats; // 开放的座位数，座位图创建之后以座位图为准
+    private volatile SeatMap seatMap; // 座位图，首次选座或占座时才创建
+    private int departureOrdinal = -1; // 出发地机场序号，用于查表
+    private int destinationOrdinal = -1; // 目的地机场序号，用于查表
+    private int aircraftOrdinal = -1; // 飞机型号序号，不是合法机型时为-1
+
+    private static final AtomicReferenceFieldUpdater<FlightInformation, SeatMap> SEAT_MAP =
+            AtomicReferenceFieldUpdater.newUpdater(FlightInformation.class, SeatMap.class, "seatMap");
 
     // getter和setter方法
     public String getFlightNumber() {
@@ -27,6 +41,7 @@ public class FlightInformation {
     public void setDeparture(String departure) {
         if (isValidAirport(departure)) {
             this.departure = departure;
+            this.departureOrdinal = airportOrdinal(departure);
         } else {
             throw new IllegalArgumentException("Invalid departure airport: " + departure);
         }
@@ -39,6 +54,7 @@ public class FlightInformation {
     public void setDestination(String destination) {
         if (isValidAirport(destination)) {
             this.destination = destination;
+            this.destinationOrdinal = airportOrdinal(destination);
         } else {
             throw new IllegalArgumentException("Invalid destination airport: " + destination);
         }
@@ -49,48 +65,152 @@ public class FlightInformation {
     }
 
     public void setDepartureTime(String departureTime) {
+        this.departureMinutes = toEpochMinutes(departureTime);
         this.departureTime = departureTime;
     }
 
+    /**
+     * 获取起飞时间的epoch分钟数，比较和查询时不需要解析字符串
+     *
+     * @return 起飞时间的epoch分钟数
+     */
+    public long getDepartureMinutes() {
+        return departureMinutes;
+    }
+
     public String getAircraftType() {
         return aircraftType;
     }
 
+    /**
+     * 修改机型。已有座位图时先停用原座位图，再按新机型的布局开放同样多的座位
+     *
+     * @throws IllegalArgumentException 已有座位图而新机型不合法或容纳不下开放的座位数时抛出
+     * @throws IllegalStateException 已有座位被占用时抛出，此时机型不变
+     */
     public void setAircraftType(String aircraftType) {
+        SeatMap map = seatMap;
+        if (map == null) {
+            this.aircraftType = aircraftType;
+            this.aircraftOrdinal = aircraftOrdinal(aircraftType);
+            return;
+        }
+        int ordinal = aircraftOrdinal(aircraftType);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Invalid aircraft type: " + aircraftType);
+        }
+        checkSeatCount(map.getSeats(), ordinal);
+        if (!map.retire()) {
+            throw new IllegalStateException("航班已有乘客占座，不能修改机型: " + flightNumber);
+        }
         this.aircraftType = aircraftType;
+        this.aircraftOrdinal = ordinal;
+        installSeatMap(new SeatMap(requireSeatLayout(), map.getSeats()));
     }
 
+    /**
+     * 获取可用座位数，有座位图时按座位图中的空闲座位计算
+     *
+     * @return 可用座位数
+     */
     public int getAvailableSeats() {
-        return availableSeats;
+        SeatMap map = seatMap;
+        return map != null ? map.available() : availableSeats;
     }
 
+    /**
+     * 设置开放的座位数，按机型布局从第1排起依次开放。
+     * 先停用原座位图（见 SeatMap.retire）再换上新座位图。与同时进行的占座竞争时，要么修改因已有占座
+     * 抛出 IllegalStateException，要么占座失败，已占的座位不会被清除
+     *
+     * @param availableSeats 开放的座位数
+     * @throws IllegalStateException 已有座位被占用时抛出，此时座位不变
+     */
     public void setAvailableSeats(int availableSeats) {
-        if (availableSeats < 0) {
-            throw new IllegalArgumentException("可用座位数不能为负数");
+        checkSeatCount(availableSeats, getAircraftOrdinal());
+        if (!seatMap().retire()) {
+            throw new IllegalStateException("航班已有乘客占座，不能修改座位数: " + flightNumber);
         }
         this.availableSeats = availableSeats;
+        installSeatMap(new SeatMap(requireSeatLayout(), availableSeats));
     }
 
-    // 定义允许的机场集合
-    private static final Set<String> allowedAirports = new HashSet<>();
-    private static final String[] allowedAirportsArray = {
-            "北京首都国际机场",
-            "上海浦东国际机场",
-            "广州白云国际机场",
-            "南京禄口国际机场",
-            "深圳宝安国际机场",
-            "成都天府国际机场",
-            "武汉天河国际机场",
-            "苏南硕放国际机场"
-    };
+    static void checkSeatCount(int seats, int aircraftOrdinal) {
+        if (seats < 0) {
+            throw new IllegalArgumentException("可用座位数不能为负数");
+        }
+        if (aircraftOrdinal >= 0 && seats > SeatLayout.forAircraft(aircraftOrdinal).getMaxSeats()) {
+            throw new IllegalArgumentException(aircraftTypeName(aircraftOrdinal) + " 最多开放 "
+                    + SeatLayout.forAircraft(aircraftOrdinal).getMaxSeats() + " 个座位: " + seats);
+        }
+    }
+
+    // 获取座位图，还没有时按开放的座位数创建；列式存储的航班视图会覆盖这些方法
+    SeatMap seatMap() {
+        SeatMap map = seatMap;
+        if (map == null) {
+            map = new SeatMap(requireSeatLayout(), availableSeats);
+            if (!SEAT_MAP.compareAndSet(this, null, map)) {
+                map = seatMap;
+            }
+        }
+        return map;
+    }
+
+    // 已创建的座位图，没有时返回null
+    SeatMap peekSeatMap() {
+        return seatMap;
+    }
+
+    void installSeatMap(SeatMap map) {
+        this.seatMap = map;
+    }
+
+    // 查表用的序号，列式存储的航班视图会覆盖这些方法
+    int getDepartureOrdinal() {
+        return departureOrdinal;
+    }
+
+    int getDestinationOrdinal() {
+        return destinationOrdinal;
+    }
+
+    int getAircraftOrdinal() {
+        return aircraftOrdinal;
+    }
+
+    /**
+     * 将起飞时间（yyyy-MM-dd HH:mm）转换为epoch分钟数
+     *
+     * @param departureTime 起飞时间
+     * @return epoch分钟数
+     */
+    static long toEpochMinutes(String departureTime) {
+        try {
+            return toEpochMinutes(FlightValidator.parseDepartureTime(departureTime));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("时间格式不正确: " + departureTime, e);
+        }
+    }
+
+    static long toEpochMinutes(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    static String formatEpochMinutes(long minutes) {
+        return LocalDateTime.ofEpochSecond(minutes * 60, 0, ZoneOffset.UTC).format(FlightValidator.DEPARTURE_TIME_FORMAT);
+    }
+
+    // 允许的机场和机场之间的飞行时间，见 AirportNetwork
+    private static final AirportNetwork airportNetwork = AirportNetwork.load();
 
     /**
      * 获取允许的机场列表
      *
-     * @return 允许的机场数组
+     * @return 允许的机场数组，下标为机场序号
      */
     public static String[] getAllowedAirports() {
-        return allowedAirportsArray;
+        return airportNetwork.names();
     }
 
     /**
@@ -100,45 +220,38 @@ public class FlightInformation {
      * @return 如果机场在允许的列表中返回true，否则返回false
      */
     private static boolean isValidAirport(String airport) {
-        return allowedAirports.contains(airport);
+        return airportNetwork.ordinal(airport) >= 0;
     }
 
-    // 定义机场之间的飞行时间（单位：小时）
-    private static final Map<String, Map<String, Double>> flightTime = new HashMap<>();
+    static int airportOrdinal(String airport) {
+        return airportNetwork.ordinal(airport);
+    }
 
-    static {
-        // 初始化允许的机场集合
-        for (String airport : allowedAirportsArray) {
-            allowedAirports.add(airport);
-        }
+    static String airportName(int ordinal) {
+        return airportNetwork.name(ordinal);
+    }
 
-        // 初始化飞行时间
-        initializeFlightTimes();
-    }
-
-    private static void initializeFlightTimes() {
-        // 使用二维数组存储飞行时间数据
-        double[][] flightTimeData = {
-                {0.0, 2.0, 2.5, 1.5, 3.0, 2.0, 2.0, 2.0}, // 北京首都国际机场
-                {2.0, 0.0, 2.0, 1.0, 2.5, 3.0, 1.5, 0.5}, // 上海浦东国际机场
-                {2.5, 2.0, 0.0, 2.0, 1.5, 2.0, 2.0, 1.5}, // 广州白云国际机场
-                {1.5, 1.0, 2.0, 0.0, 2.0, 1.5, 2.0, 1.5}, // 南京禄口国际机场
-                {3.0, 2.5, 1.5, 2.0, 0.0, 1.5, 2.0, 2.0}, // 深圳宝安国际机场
-                {2.0, 3.0, 2.0, 1.5, 1.5, 0.0, 1.5, 2.0}, // 成都天府国际机场
-                {2.0, 1.5, 2.0, 2.0, 2.0, 1.5, 0.0, 1.5}, // 武汉天河国际机场
-                {2.0, 0.5, 1.5, 1.5, 2.0, 2.0, 1.5, 0.0}  // 苏南硕放国际机场
-        };
-
-        for (int i = 0; i < allowedAirportsArray.length; i++) {
-            String fromAirport = allowedAirportsArray[i];
-            Map<String, Double> toAirports = new HashMap<>();
-            for (int j = 0; j < allowedAirportsArray.length; j++) {
-                if (i != j) {
-                    String toAirport = allowedAirportsArray[j];
-                    toAirports.put(toAirport, flightTimeData[i][j]);
-                }
-            }
-            flightTime.put(fromAirport, toAirports);
+    static int airportCount() {
+        return airportNetwork.size();
+    }
+
+    // 定义允许的飞机型号，价格系数见 FareRules
+    private static final String[] allowedAircraftTypesArray = {"波音737", "波音747", "波音777", "波音787", "空客320", "空客380"};
+    private static final Map<String, Integer> aircraftOrdinals = new HashMap<>();
+
+    static int aircraftOrdinal(String aircraftType) {
+        Integer ordinal = aircraftOrdinals.get(aircraftType);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    static String aircraftTypeName(int ordinal) {
+        return allowedAircraftTypesArray[ordinal];
+    }
+
+    static {
+        // 初始化机型的序号
+        for (int i = 0; i < allowedAircraftTypesArray.length; i++) {
+            aircraftOrdinals.put(allowedAircraftTypesArray[i], i);
         }
     }
 
@@ -149,50 +262,90 @@ public class FlightInformation {
      * @param destination 目的地机场
      * @return 飞行时间（小时）
      */
-    double getFlightTime(String departure, String destination) {
-        if (flightTime.containsKey(departure) && flightTime.get(departure).containsKey(destination)) {
-            return flightTime.get(departure).get(destination);
-        } else {
+    public double getFlightTime(String departure, String destination) {
+        return lookupFlightTime(airportOrdinal(departure), airportOrdinal(destination), departure, destination);
+    }
+
+    /**
+     * 获取本航班的飞行时间
+     *
+     * @return 飞行时间（小时）
+     */
+    public double getFlightTime() {
+        int from = getDepartureOrdinal();
+        int to = getDestinationOrdinal();
+        double time = from >= 0 && to >= 0 ? airportNetwork.flightTime(from, to) : Double.NaN;
+        return Double.isNaN(time) ? lookupFlightTime(from, to, getDeparture(), getDestination()) : time;
+    }
+
+    private static double lookupFlightTime(int from, int to, String departure, String destination) {
+        double time = from >= 0 && to >= 0 ? airportNetwork.flightTime(from, to) : Double.NaN;
+        if (Double.isNaN(time)) {
             throw new IllegalArgumentException("No flight time data available between " + departure + " and " + destination);
         }
+        return time;
     }
 
     /**
-     * 计算两个机场之间的价格
+     * 获取本航班到达时间的epoch分钟数
+     *
+     * @return 到达时间的epoch分钟数
+     */
+    public long getArrivalMinutes() {
+        return getDepartureMinutes() + Math.round(getFlightTime() * 60);
+    }
+
+    // 按序号查询两个机场之间的飞行时间（小时），出发地与目的地相同时为NaN
+    static double flightTime(int from, int to) {
+        return airportNetwork.flightTime(from, to);
+    }
+
+    // 按序号查询两个机场之间在当前定价规则下可能出现的最低票价，没有数据时为NaN
+    static double minimumFare(int from, int to) {
+        return PricingEngine.minimumFare(from, to);
+    }
+
+    /**
+     * 按本航班的机型、余座和起飞时间计算两个机场之间的价格
      *
      * @param departure 出发地机场
      * @param destination 目的地机场
      * @return 价格（元）
      */
     public double calculatePrice(String departure, String destination) {
-        double flightTime = getFlightTime(departure, destination);
-        final double pricePerHour = 500.0; // 每小时价格
-        double basePrice = flightTime * pricePerHour;
-
-        switch (aircraftType) {
-            case "波音737":
-                basePrice *= 0.8;
-                break;
-            case "波音747":
-                basePrice *= 1.2;
-                break;
-            case "波音777":
-                // 保持原价
-                break;
-            case "波音787":
-                basePrice *= 1.1;
-                break;
-            case "空客320":
-                basePrice *= 0.8;
-                break;
-            case "空客380":
-                basePrice *= 1.3;
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid aircraft type: " + aircraftType);
+        long start = FlightMetrics.CALCULATE_PRICE.start();
+        try {
+            return lookupFare(airportOrdinal(departure), airportOrdinal(destination), departure, destination);
+        } finally {
+            FlightMetrics.CALCULATE_PRICE.stop(start);
         }
+    }
 
-        return basePrice;
+    /**
+     * 计算本航班的价格：按当前定价规则查表，票价随余座和距起飞的时间变化
+     *
+     * @return 价格（元）
+     */
+    public double calculatePrice() {
+        long start = FlightMetrics.CALCULATE_PRICE.start();
+        try {
+            return lookupFare(getDepartureOrdinal(), getDestinationOrdinal(), getDeparture(), getDestination());
+        } finally {
+            FlightMetrics.CALCULATE_PRICE.stop(start);
+        }
+    }
+
+    private double lookupFare(int from, int to, String departure, String destination) {
+        int aircraft = getAircraftOrdinal();
+        double fare = from >= 0 && to >= 0 && aircraft >= 0
+                ? PricingEngine.quote(from, to, aircraft, getAvailableSeats(), getDepartureMinutes())
+                : Double.NaN;
+        if (Double.isNaN(fare)) {
+            // 先检查航线再检查机型，与逐项计算时的报错顺序一致
+            lookupFlightTime(from, to, departure, destination);
+            throw new IllegalArgumentException("Invalid aircraft type: " + getAircraftType());
+        }
+        return fare;
     }
 
     /**
@@ -202,7 +355,7 @@ public class FlightInformation {
      * @return 选择的飞机型号
      */
     public static String selectAircraftType(Scanner scanner) {
-        String[] validTypes = {"波音737", "波音747", "波音777", "波音787", "空客320", "空客380"};
+        String[] validTypes = allowedAircraftTypesArray;
         for (int i = 0; i < validTypes.length; i++) {
             System.out.println((i + 1) + ". " + validTypes[i]);
         }
@@ -222,13 +375,123 @@ public class FlightInformation {
         }
     }
 
+    private SeatLayout requireSeatLayout() {
+        int aircraft = getAircraftOrdinal();
+        if (aircraft < 0) {
+            throw new IllegalStateException("Invalid aircraft type: " + getAircraftType());
+        }
+        return SeatLayout.forAircraft(aircraft);
+    }
+
+    /**
+     * 获取本航班机型的客舱布局
+     *
+     * @return 客舱布局
+     */
+    public SeatLayout getSeatLayout() {
+        return requireSeatLayout();
+    }
+
+    /**
+     * 座位编号转换为座位号
+     *
+     * @param seat 座位编号
+     * @return 座位号，如 12C
+     */
+    public String getSeatLabel(int seat) {
+        return requireSeatLayout().label(seat);
+    }
+
+    /**
+     * 原子地占用排在最前面的一个空闲座位，多个购票线程并发调用时不会超售
+     *
+     * @return 座位编号，没有空闲座位时返回-1
+     */
+    public int reserveSeat() {
+        return seatMap().reserveAny();
+    }
+
+    /**
+     * 占用指定座位（选座）
+     *
+     * @param seat 座位编号
+     * @return 成功返回true，座位已被占用返回false
+     * @throws IllegalArgumentException 本航班没有该座位时抛出
+     */
+    public boolean reserveSeat(int seat) {
+        return seatMap().reserve(seat);
+    }
+
+    /**
+     * 原子地占用 count 个座位（不要求相邻），要么全部占用，要么都不占用，多个购票线程并发调用时不会超售
+     *
+     * @param count 座位数
+     * @return 各座位的编号，按编号升序；可用座位不足时返回null
+     * @throws IllegalArgumentException 座位数不是正整数时抛出
+     */
+    public int[] reserveSeats(int count) {
+        return seatMap().reserveSeats(count);
+    }
+
+    /**
+     * 原子地占用同一排、过道之间的 count 个相邻座位，要么全部占用，要么都不占用
+     *
+     * @param count 座位数，不能超过机型过道之间的座位数
+     * @return 第一个座位的编号，其余座位的编号依次加1；没有足够的相邻空闲座位时返回-1
+     */
+    public int reserveAdjacentSeats(int count) {
+        return seatMap().reserveAdjacent(count);
+    }
+
+    /**
+     * 释放座位；座位编号为-1（没有座位号的旧购票记录）时释放一个为这类记录占用的座位
+     *
+     * @param seat 座位编号
+     * @throws IllegalStateException 座位没有被占用时抛出
+     */
+    public void releaseSeat(int seat) {
+        if (seat >= 0) {
+            seatMap().release(seat);
+        } else {
+            seatMap().releaseUnassigned(); // 没有为旧记录占用的座位时可用座位数保持不变
+        }
+    }
+
+    /**
+     * 判断座位是否空闲
+     *
+     * @param seat 座位编号
+     * @return 是本航班的空闲座位返回true
+     */
+    public boolean isSeatAvailable(int seat) {
+        return seatMap().isFree(seat);
+    }
+
+    /**
+     * 从快照恢复座位图：当前可用座位数加上已占用的座位即为开放的座位数，再占用已分配的座位。
+     * 编号为-1（旧快照中没有座位号）或与其他记录冲突的座位改为占用任意一个空闲座位。
+     *
+     * @param occupiedSeats 已占用座位的编号
+     */
+    public void restoreOccupiedSeats(int[] occupiedSeats) {
+        SeatMap map = new SeatMap(requireSeatLayout(), getAvailableSeats() + occupiedSeats.length);
+        int unassigned = 0;
+        for (int seat : occupiedSeats) {
+            if (seat < 0 || !map.isOpenSeat(seat) || !map.reserve(seat)) {
+                unassigned++;
+            }
+        }
+        for (int i = 0; i < unassigned; i++) {
+            map.reserveUnassigned();
+        }
+        installSeatMap(map);
+    }
+
     /**
      * 减少可用座位数
      */
     public void reduceAvailableSeats() {
-        if (availableSeats > 0) {
-            availableSeats--;
-        } else {
+        if (reserveSeat() < 0) {
             throw new IllegalStateException("没有可用座位");
         }
     }
@@ -237,25 +500,37 @@ public class FlightInformation {
         this.flightNumber = flightNumber;
         setDeparture(departure);
         setDestination(destination);
-        this.departureTime = departureTime;
-        this.aircraftType = aircraftType;
-        setAvailableSeats(availableSeats);
+        setDepartureTime(departureTime);
+        setAircraftType(aircraftType);
+        checkSeatCount(availableSeats, aircraftOrdinal);
+        this.availableSeats = availableSeats; // 座位图在第一次占座时才创建
+    }
 
+    /**
+     * 供列式存储的航班视图使用，字段由子类从列中读取
+     */
+    FlightInformation() {
+    }
+
+    /**
+     * 输出航班的具体明细
+     */
+    public void printFlightDetails() {
         // 计算并输出航班情况
-        double flightTime = getFlightTime(departure, destination);
+        double flightTime = getFlightTime();
         System.out.println("以下是您添加航班的具体明细：");
-        System.out.println("航班号: " + flightNumber);
-        System.out.println("出发地: " + departure);
-        System.out.println("目的地: " + destination);
-        System.out.println("出发时间: " + departureTime);
-        System.out.println("机型: " + aircraftType);
-        System.out.println("可选座位数: " + availableSeats);
+        System.out.println("航班号: " + getFlightNumber());
+        System.out.println("出发地: " + getDeparture());
+        System.out.println("目的地: " + getDestination());
+        System.out.println("出发时间: " + getDepartureTime());
+        System.out.println("机型: " + getAircraftType());
+        System.out.println("可选座位数: " + getAvailableSeats());
         System.out.println("飞行时间: " + flightTime + "小时");
-        System.out.println("飞行价格: " + calculatePrice(departure, destination));
+        System.out.println("飞行价格: " + calculatePrice());
     }
 
     // 新增方法：获取允许的飞机型号列表
     public static String[] getAllowedAircraftTypes() {
-        return new String[]{"波音737", "波音747", "波音777", "波音787", "空客320", "空客380"};
+        return allowedAircraftTypesArray.clone();
     }
 }
\ No newline at end of file
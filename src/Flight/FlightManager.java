@@ -1,28 +1,70 @@
 package Flight;
 
+import Metrics.CacheStats;
+import Metrics.FlightMetrics;
+import Storage.FlightJournal;
+import Storage.FlightSnapshot;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Scanner;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.IntStream;
 
 public class FlightManager {
-    private List<FlightInformation> flights = new ArrayList<>();
+    public static final int PAGE_SIZE = 20; // 分页浏览时每页的航班数
+
     private Scanner scanner = new Scanner(System.in);
-    private Map<String, Boolean> flightHasPassenger = new HashMap<>(); // 记录航班是否有乘客购票
+    private Map<String, Boolean> flightHasPassenger = new ConcurrentHashMap<>(); // 记录航班是否有乘客购票
+    private volatile FlightSchedule schedule = FlightSchedule.empty(); // 当前版本的航班计划（对象列表模式），整体替换，读取时不加锁
+    private Map<String, FlightInformation> flightsByNumber = new ConcurrentHashMap<>(); // 航班号索引（对象列表模式），指向各航班的最新版本
+    private final ColumnarFlightStore store; // 列式存储模式下保存全部航班及航线索引，为null时使用对象列表
+    private FlightJournal journal; // 预写日志，为null时不记录
+    private volatile FlightSnapshot snapshot; // 尚未完全加载的快照，为null时全部航班都在内存中
+    private volatile NavigableSet<Integer> unloadedRoutes; // 快照中尚未加载的航线，元素为 出发地序号 * 机场数 + 目的地序号
+    private final SearchResultCache searchCache; // 航线查询结果缓存，为null时不缓存
+    private final FlightRenderer renderer = new FlightRenderer(System.out);
+
+    public FlightManager() {
+        this(null);
+    }
+
+    /**
+     * 使用列式存储保存航班，适用于百万级航班计划
+     *
+     * @param store 列式航班存储，为null时使用对象列表
+     */
+    public FlightManager(ColumnarFlightStore store) {
+        this.store = store;
+        int cacheSize = Integer.getInteger("flightapp.searchCache.size", 4096);
+        this.searchCache = cacheSize > 0 ? new SearchResultCache(cacheSize) : null;
+    }
 
     // 录入航班信息并检查合法性
     public FlightInformation inputFlightInfo() {
         System.out.println("请输入航班号（6位数字）：");
         String flightNumber;
-        do {
+        while (true) {
             flightNumber = scanner.nextLine();
-            if (!flightNumber.matches("\\d{6}")) {
+            if (!FlightValidator.isValidFlightNumber(flightNumber)) {
                 System.out.println("航班号必须是6位数字，请重新输入：");
+            } else if (findFlight(flightNumber) != null) {
+                System.out.println("航班号已存在，请重新输入：");
+            } else {
+                break;
             }
-        } while (!flightNumber.matches("\\d{6}"));
+        }
 
         // 使用公共方法选择出发地
         String departure = selectOption(FlightInformation.getAllowedAirports(), "请选择出发地：");
@@ -44,7 +86,7 @@ public class FlightManager {
                 departureTime = scanner.nextLine();
                 validateDateTimeInput(departureTime);
                 break;
-            } catch (ParseException e) {
+            } catch (DateTimeParseException e) {
                 System.out.println("时间格式不正确，请重新输入。");
             }
         }
@@ -60,6 +102,7 @@ public class FlightManager {
                 if (availableSeats <= 0) {
                     throw new IllegalArgumentException("座位数必须为正整数");
                 }
+                FlightInformation.checkSeatCount(availableSeats, FlightInformation.aircraftOrdinal(aircraftType));
                 break;
             } catch (NumberFormatException e) {
                 System.out.println("请输入有效的座位数。");
@@ -69,25 +112,555 @@ public class FlightManager {
         }
 
         FlightInformation flight = new FlightInformation(flightNumber, departure, destination, departureTime, aircraftType, availableSeats);
-        addFlight(flight);
-        flightHasPassenger.put(flightNumber, false); // 初始化航班没有乘客购票
+        flight.printFlightDetails();
+        try {
+            flight = registerFlight(flight);
+        } catch (IllegalArgumentException e) {
+            System.out.println("添加失败: " + e.getMessage()); // 录入期间同号航班已被登记
+            return null;
+        }
         System.out.println("航班添加成功。");
         return flight;
     }
 
-    private void addFlight(FlightInformation flight) {
-        flights.add(flight);
+    // 从CSV文件批量导入航班
+    public void importFlightsFromCsv() {
+        System.out.println("请输入CSV文件路径（每行：航班号,出发地,目的地,起飞时间,机型,可用座位数）：");
+        String path = scanner.nextLine().trim();
+        FlightImporter.ImportReport report;
+        try {
+            report = new FlightImporter(this).importCsv(Path.of(path));
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("无法读取文件: " + e.getMessage());
+            return;
+        }
+        System.out.printf("成功导入 %d 个航班，%d 行有错误，用时 %.2f 秒（每分钟 %.0f 行）。%n",
+                report.getImportedCount(), report.getErrorCount(),
+                report.getElapsedNanos() / 1e9, report.getRowsPerMinute());
+        List<FlightImporter.RowError> errors = report.getErrors();
+        for (int i = 0; i < Math.min(errors.size(), 20); i++) {
+            System.out.println("   第 " + errors.get(i).getLineNumber() + " 行: " + errors.get(i).getMessage());
+        }
+        if (report.getErrorCount() > 20) {
+            System.out.println("   ……其余 " + (report.getErrorCount() - 20) + " 行错误未显示");
+        }
+    }
+
+    /**
+     * 登记一个已构造好的航班，不经过控制台交互
+     *
+     * @param flight 航班
+     * @return 登记后的航班，列式存储模式下为指向存储的视图
+     * @throws IllegalArgumentException 航班号已存在时抛出
+     */
+    public FlightInformation registerFlight(FlightInformation flight) {
+        long start = FlightMetrics.REGISTER_FLIGHT.start();
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            requireNewFlightNumbers(List.of(flight));
+            // 日志落盘之后才发布，其他线程查到航班时它已经在日志中
+            FlightInformation added = addFlights(List.of(flight), () -> {
+                if (journal != null) {
+                    journal.flightCreated(flight);
+                }
+            }).get(0);
+            return added;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.REGISTER_FLIGHT.stop(start);
+        }
+    }
+
+    /**
+     * 批量登记航班，整批只写一次日志、等待一次落盘，并且只发布一个新版本的航班计划
+     *
+     * @param batch 航班列表
+     * @return 登记后的航班，列式存储模式下为指向存储的视图
+     * @throws IllegalArgumentException 航班号已存在或在本批中重复时抛出，此时不登记任何航班
+     */
+    public List<FlightInformation> registerFlights(List<FlightInformation> batch) {
+        long start = FlightMetrics.REGISTER_FLIGHTS.start();
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            requireNewFlightNumbers(batch);
+            List<FlightInformation> added = addFlights(batch, () -> {
+                if (journal != null) {
+                    journal.flightsCreated(batch);
+                }
+            });
+            return added;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.REGISTER_FLIGHTS.stop(start);
+        }
+    }
+
+    /**
+     * 检查航班号在本批中不重复，也不与已有航班（包括快照中尚未加载的航班）重复。
+     * 新航班没有乘客购票，航班号不重复也就不会继承已有航班的购票标记。
+     * 检查之后到发布之前并发登记的同号航班，由发布时持锁的检查拒绝
+     */
+    private void requireNewFlightNumbers(List<FlightInformation> batch) {
+        Set<String> numbers = new HashSet<>();
+        for (FlightInformation flight : batch) {
+            if (!numbers.add(flight.getFlightNumber()) || findFlight(flight.getFlightNumber()) != null) {
+                throw new IllegalArgumentException("航班号已存在: " + flight.getFlightNumber());
+            }
+        }
     }
 
-    // 查询符合条件的航班
+    /**
+     * 把一批航班合并到下一个版本的航班计划中并发布，写线程之间互斥，读线程不受影响。
+     * beforePublish 在发布之前执行（用于写日志），它抛出异常时不添加任何航班
+     *
+     * @param batch 航班列表
+     * @param beforePublish 发布之前执行的操作
+     * @return 登记后的航班，列式存储模式下为指向存储的视图
+     * @throws IllegalArgumentException 航班号已存在时抛出，此时不添加任何航班
+     */
+    private List<FlightInformation> addFlights(List<FlightInformation> batch, Runnable beforePublish) {
+        if (store != null) {
+            return store.addAll(batch, beforePublish);
+        }
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        FlightSchedule.Builder next;
+        synchronized (this) {
+            for (FlightInformation flight : batch) {
+                if (flightsByNumber.containsKey(flight.getFlightNumber())) {
+                    throw new IllegalArgumentException("航班号已存在: " + flight.getFlightNumber());
+                }
+            }
+            next = schedule.edit();
+            for (FlightInformation flight : batch) {
+                next.add(flight);
+            }
+            beforePublish.run();
+            schedule = next.build();
+            for (FlightInformation flight : batch) {
+                flightsByNumber.put(flight.getFlightNumber(), flight);
+            }
+        }
+        next.bumpRouteVersions();
+        return batch;
+    }
+
+    /**
+     * 按航班号查找航班
+     *
+     * @param flightNumber 航班号
+     * @return 航班，找不到时返回null
+     */
+    public FlightInformation findFlight(String flightNumber) {
+        FlightInformation flight = findLoadedFlight(flightNumber);
+        FlightSnapshot snapshot = this.snapshot;
+        if (flight == null && snapshot != null) {
+            // 在快照的航班号索引中查找，找到后加载整条航线以保持航线索引完整
+            FlightInformation record = snapshot.findFlight(flightNumber);
+            if (record != null) {
+                ensureRouteLoaded(record.getDeparture(), record.getDestination());
+                flight = findLoadedFlight(flightNumber);
+            }
+        }
+        return flight;
+    }
+
+    private FlightInformation findLoadedFlight(String flightNumber) {
+        if (store != null) {
+            return store.findFlight(flightNumber);
+        }
+        return flightsByNumber.get(flightNumber);
+    }
+
+    /**
+     * 关联快照，快照中的航班在首次按航线或航班号访问时才加载到内存中。
+     * 应在重放日志之前调用。
+     *
+     * @param snapshot 快照
+     */
+    public synchronized void attachSnapshot(FlightSnapshot snapshot) {
+        NavigableSet<Integer> routes = new ConcurrentSkipListSet<>();
+        snapshot.forEachRoute((departure, destination) -> {
+            int from = FlightInformation.airportOrdinal(departure);
+            int to = FlightInformation.airportOrdinal(destination);
+            // 快照中已不在允许列表中的机场忽略，与按航线加载时一致
+            if (from >= 0 && to >= 0) {
+                routes.add(from * FlightInformation.airportCount() + to);
+            }
+        });
+        this.unloadedRoutes = routes;
+        this.snapshot = snapshot;
+    }
+
+    // 确保快照中指定航线的航班已加载
+    private void ensureRouteLoaded(String departure, String destination) {
+        if (snapshot == null) {
+            return;
+        }
+        int from = FlightInformation.airportOrdinal(departure);
+        int to = FlightInformation.airportOrdinal(destination);
+        if (from < 0 || to < 0) {
+            return;
+        }
+        synchronized (this) {
+            FlightSnapshot snapshot = this.snapshot;
+            int route = from * FlightInformation.airportCount() + to;
+            if (snapshot == null || !unloadedRoutes.contains(route)) {
+                return;
+            }
+            // 整条航线作为一批加入，只发布一个新版本
+            List<FlightInformation> batch = new ArrayList<>();
+            List<Boolean> passengers = new ArrayList<>();
+            snapshot.loadRoute(departure, destination, (flight, hasPassenger) -> {
+                batch.add(flight);
+                passengers.add(hasPassenger);
+            });
+            List<FlightInformation> added = addFlights(batch, () -> { });
+            for (int i = 0; i < added.size(); i++) {
+                if (passengers.get(i)) {
+                    flightHasPassenger.put(added.get(i).getFlightNumber(), true);
+                }
+            }
+            unloadedRoutes.remove(route);
+        }
+    }
+
+    // 确保快照中的全部航班已加载，之后不再需要快照
+    private synchronized void ensureAllLoaded() {
+        if (snapshot == null) {
+            return;
+        }
+        int airportCount = FlightInformation.airportCount();
+        for (int route : new ArrayList<>(unloadedRoutes)) {
+            ensureRouteLoaded(FlightInformation.airportName(route / airportCount),
+                    FlightInformation.airportName(route % airportCount));
+        }
+        snapshot = null;
+        unloadedRoutes = null;
+    }
+
+    /**
+     * 获取出发地有航班的目的地，包括快照中尚未加载的航线，不触发快照加载，供中转查询枚举中转机场
+     *
+     * @param from 出发地序号
+     * @return 升序排列的目的地序号，返回的数组不能修改
+     */
+    int[] destinations(int from) {
+        // 先读未加载的航线再读航班计划：航线加载时先发布新版本再从未加载集合中移除，两次读取之间加载的航线不会遗漏
+        NavigableSet<Integer> unloaded = unloadedRoutes;
+        int airportCount = FlightInformation.airportCount();
+        int[] pending = unloaded == null ? new int[0] : unloaded.subSet(from * airportCount, (from + 1) * airportCount)
+                .stream().mapToInt(route -> route % airportCount).toArray();
+        int[] loaded = store != null ? store.destinations(from) : schedule.destinations(from);
+        if (pending.length == 0) {
+            return loaded;
+        }
+        return IntStream.concat(IntStream.of(loaded), IntStream.of(pending)).distinct().sorted().toArray();
+    }
+
+    /**
+     * 获取全部航班，会加载快照中尚未加载的航班
+     *
+     * @return 全部航班
+     */
+    public List<FlightInformation> getAllFlights() {
+        return new ArrayList<>(getFlights());
+    }
+
+    /**
+     * 获取已加载到内存中的航班，不触发快照加载，供统计使用
+     *
+     * @return 已加载的航班
+     */
+    public List<FlightInformation> getLoadedFlights() {
+        return store != null ? store.getFlights() : schedule.flights();
+    }
+
+    /**
+     * 写快照时使用：在同一时刻取得已加载的航班和关联快照中尚未加载的航线，不触发快照加载。
+     * 尚未加载的航线中的航班自关联快照以来没有变化（按航班号查找、查询航线、把航班改到该航线都会先加载它），
+     * 写快照时可以直接复制原快照中的记录
+     *
+     * @param loadedFlights 接收已加载的航班
+     * @param unloadedRoutes 接收尚未加载的航线
+     * @return 关联的快照，没有关联快照或全部航线都已加载时返回null
+     */
+    public synchronized FlightSnapshot collectForSnapshot(List<FlightInformation> loadedFlights,
+                                                        FlightSnapshot.RouteConsumer unloadedRoutes) {
+        loadedFlights.addAll(getLoadedFlights());
+        FlightSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            int airportCount = FlightInformation.airportCount();
+            for (int route : this.unloadedRoutes) {
+                unloadedRoutes.accept(FlightInformation.airportName(route / airportCount),
+                        FlightInformation.airportName(route % airportCount));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 获取航班计划的版本号，每登记一批航班或修改一个航班加1（购票不改变航班计划，版本号不变），
+     * 可用于判断两次读取之间航班计划是否发生过变化
+     *
+     * @return 版本号
+     */
+    public long getScheduleVersion() {
+        return store != null ? store.getVersion() : schedule.getVersion();
+    }
+
+    /**
+     * 查询航班是否有乘客购票
+     *
+     * @param flightNumber 航班号
+     * @return 有乘客购票返回true
+     */
+    public boolean hasPassenger(String flightNumber) {
+        return flightHasPassenger.getOrDefault(flightNumber, false);
+    }
+
+    /**
+     * 设置预写日志，之后新建、修改航班都会写入日志。
+     * 从日志恢复数据时应在重放完成后再设置，避免重复写入。
+     *
+     * @param journal 预写日志，为null时不记录
+     */
+    public void setJournal(FlightJournal journal) {
+        this.journal = journal;
+    }
+
+    // 获取全部航班，列式存储模式下返回视图列表
+    private List<FlightInformation> getFlights() {
+        ensureAllLoaded();
+        return store != null ? store.getFlights() : schedule.flights();
+    }
+
+    // 查询符合条件的航班（按起飞时间排序）
     public List<FlightInformation> searchFlights(String departure, String destination) {
-        List<FlightInformation> matchingFlights = new ArrayList<>();
-        for (FlightInformation flight : flights) {
-            if (flight.getDeparture().equals(departure) && flight.getDestination().equals(destination)) {
-                matchingFlights.add(flight);
+        long start = FlightMetrics.SEARCH_FLIGHTS.start();
+        try {
+            return cachedSearch(departure, destination, Long.MIN_VALUE, Long.MAX_VALUE);
+        } finally {
+            FlightMetrics.SEARCH_FLIGHTS.stop(start);
+        }
+    }
+
+    /**
+     * 查询指定航线在时间段内起飞的航班（按起飞时间排序）。
+     * 航线内的航班已按起飞时间排序，二分查找时间段的起点后顺序读取，复杂度 O(log n + k)
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param from 最早起飞时间（包含）
+     * @param to 最晚起飞时间（包含）
+     * @return 符合条件的航班
+     */
+    public List<FlightInformation> searchFlights(String departure, String destination, LocalDateTime from, LocalDateTime to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("开始时间不能晚于结束时间");
+        }
+        long start = FlightMetrics.SEARCH_FLIGHTS_IN_WINDOW.start();
+        try {
+            return cachedSearch(departure, destination, FlightInformation.toEpochMinutes(from), FlightInformation.toEpochMinutes(to));
+        } finally {
+            FlightMetrics.SEARCH_FLIGHTS_IN_WINDOW.stop(start);
+        }
+    }
+
+    /**
+     * 先查缓存，未命中时查询航线索引并缓存结果。
+     * 航线版本号在查询之前读取，查询期间航线发生变化时缓存的结果下次读取即失效。
+     */
+    private List<FlightInformation> cachedSearch(String departure, String destination, long fromMinutes, long toMinutes) {
+        SearchResultCache cache = searchCache;
+        int from = FlightInformation.airportOrdinal(departure);
+        int to = FlightInformation.airportOrdinal(destination);
+        if (cache == null || from < 0 || to < 0) {
+            return searchFlights(departure, destination, fromMinutes, toMinutes);
+        }
+        SearchResultCache.Key key = new SearchResultCache.Key(from, to, fromMinutes, toMinutes);
+        List<FlightInformation> cached = cache.get(key);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        long version = RouteVersions.current(from, to);
+        List<FlightInformation> result = searchFlights(departure, destination, fromMinutes, toMinutes);
+        cache.put(key, version, result);
+        return result;
+    }
+
+    /**
+     * 获取航线查询缓存的命中统计
+     *
+     * @return 统计，未启用缓存时返回null
+     */
+    public CacheStats getSearchCacheStats() {
+        return searchCache != null ? searchCache.getStats() : null;
+    }
+
+    // 按epoch分钟数查询时间段内起飞的航班，供中转查询使用，不经过缓存
+    List<FlightInformation> searchFlights(String departure, String destination, long fromMinutes, long toMinutes) {
+        return scanRoute(departure, destination, fromMinutes, toMinutes, 0, Integer.MAX_VALUE);
+    }
+
+    // 从时间段起点开始顺序读取航线上的航班，跳过起点时间上的前 skip 个航班，最多读取 limit 个
+    private List<FlightInformation> scanRoute(String departure, String destination, long fromMinutes, long toMinutes,
+                                              int skip, int limit) {
+        ensureRouteLoaded(departure, destination);
+        if (store != null) {
+            return store.searchFlights(departure, destination, fromMinutes, toMinutes, skip, limit);
+        }
+        List<FlightInformation> result = new ArrayList<>();
+        int from = FlightInformation.airportOrdinal(departure);
+        int to = FlightInformation.airportOrdinal(destination);
+        if (from < 0 || to < 0) {
+            return result;
+        }
+        // 只读一次当前版本，整个查询都在这个版本的航线数组上进行
+        FlightInformation[] routeFlights = schedule.route(from, to);
+        int low = FlightSchedule.lowerBound(routeFlights, fromMinutes);
+        for (int skipped = 0; skipped < skip && low < routeFlights.length
+                && routeFlights[low].getDepartureMinutes() == fromMinutes; skipped++) {
+            low++;
+        }
+        for (int i = low; i < routeFlights.length && result.size() < limit
+                && routeFlights[i].getDepartureMinutes() <= toMinutes; i++) {
+            result.add(routeFlights[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 分页查询航线上的航班（按起飞时间排序），每次只读取一页
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param cursor 上一页返回的游标，查询第一页时为null
+     * @param pageSize 每页航班数
+     * @return 一页航班
+     */
+    public FlightPage searchFlightsPage(String departure, String destination, String cursor, int pageSize) {
+        return searchPage(departure, destination, Long.MIN_VALUE, Long.MAX_VALUE, cursor, pageSize);
+    }
+
+    /**
+     * 分页查询指定航线在时间段内起飞的航班（按起飞时间排序），每次只读取一页
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param from 最早起飞时间（包含）
+     * @param to 最晚起飞时间（包含）
+     * @param cursor 上一页返回的游标，查询第一页时为null
+     * @param pageSize 每页航班数
+     * @return 一页航班
+     */
+    public FlightPage searchFlightsPage(String departure, String destination, LocalDateTime from, LocalDateTime to,
+                                        String cursor, int pageSize) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("开始时间不能晚于结束时间");
+        }
+        return searchPage(departure, destination, FlightInformation.toEpochMinutes(from), FlightInformation.toEpochMinutes(to),
+                cursor, pageSize);
+    }
+
+    /**
+     * 游标记录上一页最后一个航班的起飞时间，以及已返回的该时间起飞的航班数。
+     * 下一页从该时间二分查找起点并跳过这些航班，与航线列表的下标无关，翻页期间新增航班不会导致重复或遗漏已返回的航班。
+     */
+    private FlightPage searchPage(String departure, String destination, long fromMinutes, long toMinutes,
+                                  String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("每页航班数必须为正整数");
+        }
+        long startMinutes = fromMinutes;
+        int skip = 0;
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            try {
+                startMinutes = Long.parseLong(cursor.substring(0, separator));
+                skip = Integer.parseInt(cursor.substring(separator + 1));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            if (startMinutes < fromMinutes || skip < 0) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+        }
+        // 多读一个航班用于判断是否还有下一页
+        List<FlightInformation> flights = scanRoute(departure, destination, startMinutes, toMinutes, skip, pageSize + 1);
+        if (flights.size() <= pageSize) {
+            return new FlightPage(flights, null);
+        }
+        flights = flights.subList(0, pageSize);
+        long lastMinutes = flights.get(pageSize - 1).getDepartureMinutes();
+        int sameMinutes = 0;
+        for (int i = pageSize - 1; i >= 0 && flights.get(i).getDepartureMinutes() == lastMinutes; i--) {
+            sameMinutes++;
+        }
+        if (sameMinutes == pageSize && lastMinutes == startMinutes) {
+            sameMinutes += skip; // 整页都在同一时间起飞，加上之前各页已跳过的航班
+        }
+        return new FlightPage(flights, lastMinutes + ":" + sameMinutes);
+    }
+
+    // 查询中转行程（直飞、一次或两次中转）
+    public void searchConnections() {
+        String origin = selectOption(FlightInformation.getAllowedAirports(), "请选择出发地：");
+        String destination;
+        do {
+            destination = selectOption(FlightInformation.getAllowedAirports(), "请选择目的地：");
+            if (origin.equals(destination)) {
+                System.out.println("起飞地和目的地不能相同，请重新选择。");
+            }
+        } while (origin.equals(destination));
+
+        LocalDate date;
+        while (true) {
+            try {
+                System.out.println("请输入出发日期（yyyy-MM-dd）：");
+                date = FlightValidator.parseDepartureDate(scanner.nextLine().trim());
+                break;
+            } catch (DateTimeParseException e) {
+                System.out.println("日期格式不正确，请重新输入。");
+            }
+        }
+        String sortBy = selectOption(new String[]{"总耗时最短", "总票价最低"}, "请选择排序方式：");
+
+        List<Itinerary> itineraries = new ConnectionSearch(this).search(origin, destination,
+                date.atStartOfDay(), date.atTime(23, 59), 1, ConnectionSearch.MAX_STOPS,
+                sortBy.equals("总耗时最短") ? ConnectionSearch.SortBy.FASTEST : ConnectionSearch.SortBy.CHEAPEST, 10);
+        printItineraries(itineraries);
+    }
+
+    // 打印行程列表
+    public void printItineraries(List<Itinerary> itineraries) {
+        if (itineraries.isEmpty()) {
+            System.out.println("没有找到符合条件的行程。");
+            return;
+        }
+        System.out.println("找到以下行程：");
+        for (int i = 0; i < itineraries.size(); i++) {
+            Itinerary itinerary = itineraries.get(i);
+            long duration = itinerary.getDurationMinutes();
+            System.out.println((i + 1) + ". " + (itinerary.getStops() == 0 ? "直飞" : "中转" + itinerary.getStops() + "次")
+                    + "，总耗时 " + duration / 60 + "小时" + duration % 60 + "分钟，总价 " + itinerary.getPrice());
+            for (FlightInformation leg : itinerary.getLegs()) {
+                System.out.println("   航班 " + leg.getFlightNumber() + ": " + leg.getDeparture() + " " + leg.getDepartureTime()
+                        + " -> " + leg.getDestination() + " " + FlightInformation.formatEpochMinutes(leg.getArrivalMinutes())
+                        + "（" + leg.getAircraftType() + "，余座 " + leg.getAvailableSeats() + "）");
             }
         }
-        return matchingFlights;
     }
 
     // 打印航班列表
@@ -96,17 +669,51 @@ public class FlightManager {
             System.out.println("没有找到符合条件的航班。");
         } else {
             System.out.println("找到以下符合条件的航班：");
-            for (int i = 0; i < flights.size(); i++) {
-                FlightInformation flight = flights.get(i);
-                System.out.println((i + 1) + ". 航班号: " + flight.getFlightNumber());
-                System.out.println("   出发地: " + flight.getDeparture());
-                System.out.println("   目的地: " + flight.getDestination());
-                System.out.println("   出发时间: " + flight.getDepartureTime());
-                System.out.println("   机型: " + flight.getAircraftType());
-                System.out.println("   可选座位数: " + flight.getAvailableSeats());
-                System.out.println("   飞行时间: " + flight.getFlightTime(flight.getDeparture(), flight.getDestination()) + "小时");
-                System.out.println("   飞行价格: " + flight.calculatePrice(flight.getDeparture(), flight.getDestination()));
-                System.out.println();
+            renderer.renderFlights(flights, 1);
+        }
+    }
+
+    /**
+     * 分页浏览航线上的航班并选择一个，每次只查询和输出一页
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @return 选择的航班，没有航班或用户取消时返回null
+     */
+    public FlightInformation browseFlights(String departure, String destination) {
+        FlightPage page = searchFlightsPage(departure, destination, null, PAGE_SIZE);
+        if (page.getFlights().isEmpty()) {
+            System.out.println("没有找到符合条件的航班。");
+            return null;
+        }
+        System.out.println("找到以下符合条件的航班：");
+        int firstNumber = 1;
+        while (true) {
+            List<FlightInformation> flights = page.getFlights();
+            renderer.renderFlights(flights, firstNumber);
+            String prompt = page.hasMore()
+                    ? "请选择航班编号（输入数字），输入 n 查看下一页，直接回车取消："
+                    : "请选择航班编号（输入数字），直接回车取消：";
+            while (true) {
+                System.out.print(prompt);
+                String input = scanner.nextLine().trim();
+                if (input.isEmpty()) {
+                    return null;
+                }
+                if (input.equalsIgnoreCase("n") && page.hasMore()) {
+                    firstNumber += flights.size();
+                    page = searchFlightsPage(departure, destination, page.getNextCursor(), PAGE_SIZE);
+                    break;
+                }
+                try {
+                    int choice = Integer.parseInt(input) - firstNumber;
+                    if (choice >= 0 && choice < flights.size()) {
+                        return flights.get(choice);
+                    }
+                    System.out.println("选择无效，请重新输入。");
+                } catch (NumberFormatException e) {
+                    System.out.println("请输入有效的选项编号。");
+                }
             }
         }
     }
@@ -152,14 +759,13 @@ public class FlightManager {
         }
     }
 
-    private void validateDateTimeInput(String dateTime) throws ParseException {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-        sdf.setLenient(false);
-        sdf.parse(dateTime);
+    private void validateDateTimeInput(String dateTime) {
+        FlightValidator.parseDepartureTime(dateTime);
     }
 
     // 修改航班信息
     public void updateFlightInfo() {
+        List<FlightInformation> flights = getFlights();
         if (flights.isEmpty()) {
             System.out.println("没有航班记录可以修改。");
             return;
@@ -198,7 +804,7 @@ public class FlightManager {
         System.out.println("请输入新的航班号（6位数字），当前航班号为 " + newFlightNumber + "：");
         String inputFlightNumber = scanner.nextLine().trim();
         if (!inputFlightNumber.isEmpty()) {
-            if (inputFlightNumber.matches("\\d{6}")) {
+            if (FlightValidator.isValidFlightNumber(inputFlightNumber)) {
                 newFlightNumber = inputFlightNumber;
             } else {
                 System.out.println("航班号必须是6位数字，修改未生效。");
@@ -252,15 +858,121 @@ public class FlightManager {
         }
 
         // 更新航班信息
-        flightToUpdate.setFlightNumber(newFlightNumber);
-        flightToUpdate.setDeparture(newDeparture);
-        flightToUpdate.setDestination(newDestination);
-        flightToUpdate.setDepartureTime(newDepartureTime);
-        flightToUpdate.setAircraftType(newAircraftType);
-        flightToUpdate.setAvailableSeats(newAvailableSeats);
+        FlightInformation updated;
+        try {
+            updated = applyFlightUpdate(flightToUpdate, newFlightNumber, newDeparture, newDestination, newDepartureTime,
+                    newAircraftType, newAvailableSeats);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("修改失败: " + e.getMessage());
+            return;
+        }
 
         System.out.println("航班信息修改成功。");
-        printFlights(List.of(flightToUpdate));
+        printFlights(List.of(updated));
+    }
+
+    /**
+     * 修改航班信息，不经过控制台交互。
+     * <p>
+     * 已发布的航班不再修改：按新信息创建航班的新版本，与旧版本的替换作为一个新版本的航班计划整体发布，
+     * 查询要么看到修改前的航班，要么看到修改后的航班，不会看到只改了一部分的航班。
+     * 座位数和机型不变时新旧版本共用原座位图；否则先停用原座位图（见 SeatMap.retire），
+     * 在发布之前把按新座位数开放的座位图装到旧版本上，仍持有旧版本的线程购票时占用的也是新版本的座位。
+     * 已有乘客购票的航班不能修改。
+     *
+     * @param flight 要修改的航班，必须是当前版本
+     * @param newFlightNumber 新航班号
+     * @param newDeparture 新出发地
+     * @param newDestination 新目的地
+     * @param newDepartureTime 新起飞时间
+     * @param newAircraftType 新机型
+     * @param newAvailableSeats 新可用座位数
+     * @return 修改后的航班
+     * @throws IllegalArgumentException 新信息不合法时抛出，此时航班不变
+     * @throws IllegalStateException 航班已被修改（不是当前版本）或已有乘客购票时抛出
+     */
+    public FlightInformation applyFlightUpdate(FlightInformation flight, String newFlightNumber, String newDeparture,
+                                               String newDestination, String newDepartureTime, String newAircraftType,
+                                               int newAvailableSeats) {
+        long start = FlightMetrics.UPDATE_FLIGHT.start();
+        String oldFlightNumber = flight.getFlightNumber();
+        if (hasPassenger(oldFlightNumber)) {
+            throw new IllegalStateException("航班已有乘客购票，不能修改: " + oldFlightNumber);
+        }
+        if (!newFlightNumber.equals(oldFlightNumber) && findFlight(newFlightNumber) != null) {
+            throw new IllegalArgumentException("航班号已存在: " + newFlightNumber);
+        }
+        // 新航线如果还在快照中，先加载进来再插入
+        ensureRouteLoaded(newDeparture, newDestination);
+
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            // 先按新信息创建航班（同时检查合法性），日志在发布之前落盘，写日志失败时航班不变
+            FlightInformation next = new FlightInformation(newFlightNumber, newDeparture, newDestination,
+                    newDepartureTime, newAircraftType, newAvailableSeats);
+            Runnable writeJournal = () -> {
+                if (journal != null) {
+                    journal.flightUpdated(oldFlightNumber, next);
+                }
+            };
+            if (store != null) {
+                return store.update(flight, newFlightNumber, newDeparture, newDestination, newDepartureTime,
+                        newAircraftType, newAvailableSeats, writeJournal);
+            }
+            return replaceFlight(flight, next, writeJournal);
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.UPDATE_FLIGHT.stop(start);
+        }
+    }
+
+    // 用新版本替换航班并发布新版本的航班计划；座位图在发布之前换好，替换期间的购票不会丢失
+    private FlightInformation replaceFlight(FlightInformation flight, FlightInformation updated, Runnable beforePublish) {
+        FlightSchedule.Builder next;
+        synchronized (this) {
+            next = schedule.edit();
+            if (!next.remove(flight)) {
+                throw new IllegalStateException("航班已被修改，请重新查询: " + flight.getFlightNumber());
+            }
+            FlightInformation existing = flightsByNumber.get(updated.getFlightNumber());
+            if (existing != null && existing != flight) {
+                throw new IllegalArgumentException("航班号已存在: " + updated.getFlightNumber());
+            }
+            SeatMap seats = flight.seatMap();
+            if (updated.getAircraftOrdinal() == flight.getAircraftOrdinal() && updated.getAvailableSeats() == seats.getSeats()) {
+                beforePublish.run();
+                updated.installSeatMap(seats);
+            } else {
+                if (!seats.retire()) {
+                    throw new IllegalStateException("航班已有乘客购票，不能修改座位数或机型: " + flight.getFlightNumber());
+                }
+                try {
+                    beforePublish.run();
+                } catch (RuntimeException e) {
+                    // 停用时座位全部空闲，换上同样的空座位图即恢复原样
+                    flight.installSeatMap(new SeatMap(flight.getSeatLayout(), seats.getSeats()));
+                    throw e;
+                }
+                seats = updated.seatMap();
+                flight.installSeatMap(seats);
+            }
+            next.add(updated);
+            schedule = next.build();
+            String oldFlightNumber = flight.getFlightNumber();
+            if (oldFlightNumber.equals(updated.getFlightNumber())) {
+                flightsByNumber.replace(oldFlightNumber, flight, updated);
+            } else {
+                flightsByNumber.remove(oldFlightNumber, flight);
+                flightsByNumber.put(updated.getFlightNumber(), updated);
+            }
+        }
+        next.bumpRouteVersions();
+        return updated;
     }
 
     // 辅助方法：选择选项并允许保留默认值
@@ -299,7 +1011,7 @@ public class FlightManager {
                 }
                 validateDateTimeInput(newDateTime);
                 return true;
-            } catch (ParseException e) {
+            } catch (DateTimeParseException e) {
                 System.out.println("时间格式不正确，请重新输入。");
             }
         }
@@ -327,8 +1039,34 @@ public class FlightManager {
         }
     }
 
+    /**
+     * 为航班占用一个座位，多个购票线程并发调用时不会超售
+     *
+     * @param flight 航班
+     * @return 座位编号，没有空闲座位时返回-1
+     */
+    public int reserveSeat(FlightInformation flight) {
+        return flight.reserveSeat();
+    }
+
+    /**
+     * 为航班占用 n 个座位，要么全部占用，要么都不占用，可用座位数不会变为负数
+     *
+     * @param flight 航班
+     * @param n 座位数
+     * @return 各座位的编号，可用座位不足时返回null
+     * @throws IllegalArgumentException 座位数不是正整数时抛出
+     */
+    public int[] tryReserve(FlightInformation flight, int n) {
+        return flight.reserveSeats(n);
+    }
+
     // 设置航班是否有乘客购票
     public void setFlightHasPassenger(String flightNumber, boolean hasPassenger) {
-        flightHasPassenger.put(flightNumber, hasPassenger);
+        if (hasPassenger) {
+            flightHasPassenger.put(flightNumber, true);
+        } else {
+            flightHasPassenger.remove(flightNumber); // 没有记录即视为没有乘客
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package Flight;
+
+import java.util.List;
+
+// 分页查询的一页结果
+public class FlightPage {
+    private final List<FlightInformation> flights;
+    private final String nextCursor;
+
+    FlightPage(List<FlightInformation> flights, String nextCursor) {
+        this.flights = List.copyOf(flights);
+        this.nextCursor = nextCursor;
+    }
+
+    // 本页的航班，按起飞时间排序
+    public List<FlightInformation> getFlights() {
+        return flights;
+    }
+
+    // 查询下一页时传入的游标，已是最后一页时为null
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,67 @@
+package Flight;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * 航班列表的输出。所有内容写入同一个带缓冲的输出流，每次输出完一批航班后只刷新一次，
+ * 不再为每一行拼接字符串并调用一次 println；输出耗时只与本次输出的航班数有关。
+ */
+public class FlightRenderer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PrintWriter out;
+
+    public FlightRenderer(OutputStream stream) {
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, consoleCharset()), BUFFER_SIZE), false);
+    }
+
+    // 与 System.out 使用相同的编码
+    private static Charset consoleCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        try {
+            return name != null ? Charset.forName(name) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    /**
+     * 输出航班列表
+     *
+     * @param flights 航班
+     * @param firstNumber 第一个航班的编号
+     */
+    public synchronized void renderFlights(List<FlightInformation> flights, int firstNumber) {
+        for (int i = 0; i < flights.size(); i++) {
+            renderFlight(firstNumber + i, flights.get(i));
+        }
+        out.flush();
+    }
+
+    private void renderFlight(int number, FlightInformation flight) {
+        out.print(number);
+        out.print(". 航班号: ");
+        out.println(flight.getFlightNumber());
+        out.print("   出发地: ");
+        out.println(flight.getDeparture());
+        out.print("   目的地: ");
+        out.println(flight.getDestination());
+        out.print("   出发时间: ");
+        out.println(flight.getDepartureTime());
+        out.print("   机型: ");
+        out.println(flight.getAircraftType());
+        out.print("   可选座位数: ");
+        out.println(flight.getAvailableSeats());
+        out.print("   飞行时间: ");
+        out.print(flight.getFlightTime());
+        out.println("小时");
+        out.print("   飞行价格: ");
+        out.println(flight.calculatePrice());
+        out.println();
+    }
+}
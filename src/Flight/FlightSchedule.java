@@ -0,0 +1,263 @@
+package Flight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对象列表模式下的航班计划：各航线按起飞时间排序的航班数组，创建后不再修改。
+ * <p>
+ * FlightManager 用一个 volatile 字段保存当前版本，读线程只读一次该字段，之后整个查询都在这个版本上进行，
+ * 不加锁，也不会看到修改到一半的航线。写线程用 Builder 把一批修改合并成下一个版本，
+ * 只复制涉及的航线数组和它们所在出发地的一行（见 RouteTable），其余航线与上一版本共用，再整体替换。
+ * 版本中的航班对象同样不再修改；座位图不属于航班计划，购票只修改座位图，不产生新版本。
+ */
+final class FlightSchedule {
+    private static final FlightInformation[] NO_FLIGHTS = new FlightInformation[0];
+
+    private final long version;
+    private final int size;
+    // 各航线按起飞时间排序的航班，没有航班的航线不在表中
+    private final RouteTable<FlightInformation[]> routes;
+
+    private FlightSchedule(long version, int size, RouteTable<FlightInformation[]> routes) {
+        this.version = version;
+        this.size = size;
+        this.routes = routes;
+    }
+
+    static FlightSchedule empty() {
+        return new FlightSchedule(0, 0, new RouteTable<>(FlightInformation.airportCount()));
+    }
+
+    // 版本号，每发布一个新版本加1
+    long getVersion() {
+        return version;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 获取航线上按起飞时间排序的航班，返回的数组不能修改
+     *
+     * @param from 出发地序号
+     * @param to 目的地序号
+     * @return 航班数组，没有航班时为空数组
+     */
+    FlightInformation[] route(int from, int to) {
+        FlightInformation[] flights = routes.get(from, to);
+        return flights != null ? flights : NO_FLIGHTS;
+    }
+
+    /**
+     * 获取出发地有航班的目的地
+     *
+     * @param from 出发地序号
+     * @return 升序排列的目的地序号，返回的数组不能修改
+     */
+    int[] destinations(int from) {
+        return routes.destinations(from);
+    }
+
+    // 第一个起飞时间不早于 minutes 的航班的下标
+    static int lowerBound(FlightInformation[] flights, long minutes) {
+        int low = 0;
+        int high = flights.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (flights[mid].getDepartureMinutes() < minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // 第一个起飞时间晚于 minutes 的航班的下标
+    static int upperBound(FlightInformation[] flights, long minutes) {
+        int low = 0;
+        int high = flights.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (flights[mid].getDepartureMinutes() <= minutes) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 获取全部航班，按航线、再按起飞时间排序
+     *
+     * @return 航班列表
+     */
+    List<FlightInformation> flights() {
+        List<FlightInformation> flights = new ArrayList<>(size);
+        routes.forEach(routeFlights -> Collections.addAll(flights, routeFlights));
+        return flights;
+    }
+
+    /**
+     * 在本版本的基础上开始一批修改
+     *
+     * @return 修改器
+     */
+    Builder edit() {
+        return new Builder(this);
+    }
+
+    /**
+     * 一批修改，build 时合并成下一个版本，本版本保持不变。只由持有写锁的线程使用
+     */
+    static final class Builder {
+        private final FlightSchedule base;
+        // 按航线（出发地序号 * 机场数 + 目的地序号）记录新增和移除的航班
+        private final Map<Integer, List<FlightInformation>> added = new HashMap<>();
+        private final Map<Integer, List<FlightInformation>> removed = new HashMap<>();
+
+        private Builder(FlightSchedule base) {
+            this.base = base;
+        }
+
+        private int routeOf(FlightInformation flight) {
+            return base.routes.routeOf(flight.getDepartureOrdinal(), flight.getDestinationOrdinal());
+        }
+
+        /**
+         * 加入航班，同一航线内起飞时间相同的航班排在已有航班之后
+         *
+         * @param flight 航班
+         */
+        void add(FlightInformation flight) {
+            added.computeIfAbsent(routeOf(flight), k -> new ArrayList<>()).add(flight);
+        }
+
+        /**
+         * 移除航班
+         *
+         * @param flight 航班
+         * @return 航班在本版本中或已在本批中加入时返回true，否则返回false
+         */
+        boolean remove(FlightInformation flight) {
+            int route = routeOf(flight);
+            List<FlightInformation> pending = added.get(route);
+            if (pending != null) {
+                for (int i = 0; i < pending.size(); i++) {
+                    if (pending.get(i) == flight) {
+                        pending.remove(i);
+                        return true;
+                    }
+                }
+            }
+            FlightInformation[] flights = base.route(flight.getDepartureOrdinal(), flight.getDestinationOrdinal());
+            for (int i = lowerBound(flights, flight.getDepartureMinutes());
+                 i < flights.length && flights[i].getDepartureMinutes() == flight.getDepartureMinutes(); i++) {
+                if (flights[i] == flight) {
+                    List<FlightInformation> gone = removed.computeIfAbsent(route, k -> new ArrayList<>());
+                    for (FlightInformation other : gone) {
+                        if (other == flight) {
+                            return false;
+                        }
+                    }
+                    return gone.add(flight);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 生成下一个版本
+         *
+         * @return 新版本
+         */
+        FlightSchedule build() {
+            int airportCount = FlightInformation.airportCount();
+            Map<Integer, FlightInformation[]> changes = new HashMap<>();
+            int size = base.size;
+            for (int route : touchedRoutes()) {
+                FlightInformation[] existing = base.route(route / airportCount, route % airportCount);
+                List<FlightInformation> group = added.getOrDefault(route, List.of());
+                List<FlightInformation> gone = removed.getOrDefault(route, List.of());
+                FlightInformation[] merged = merge(existing, gone, group);
+                size += merged.length - existing.length;
+                changes.put(route, merged.length > 0 ? merged : null);
+            }
+            return new FlightSchedule(base.version + 1, size, base.routes.with(changes));
+        }
+
+        /**
+         * 去掉移除的航班，再插入按起飞时间稳定排序的新增航班，相同时间时已有航班排在前面。
+         * 移除和插入的位置都用二分查找确定，其余部分整段复制，不逐个读取航班对象
+         */
+        private static FlightInformation[] merge(FlightInformation[] existing, List<FlightInformation> gone,
+                                                 List<FlightInformation> group) {
+            if (group.size() > 1) {
+                group.sort(Comparator.comparingLong(FlightInformation::getDepartureMinutes));
+            }
+            int[] cuts = new int[gone.size()];
+            for (int i = 0; i < cuts.length; i++) {
+                cuts[i] = indexOf(existing, gone.get(i));
+            }
+            Arrays.sort(cuts);
+            FlightInformation[] merged = new FlightInformation[existing.length - cuts.length + group.size()];
+            int count = 0;
+            int src = 0;
+            int c = 0;
+            int j = 0;
+            int insertAt = group.isEmpty() ? existing.length : upperBound(existing, group.get(0).getDepartureMinutes());
+            while (true) {
+                int cutAt = c < cuts.length ? cuts[c] : existing.length;
+                int stop = Math.min(cutAt, insertAt);
+                System.arraycopy(existing, src, merged, count, stop - src);
+                count += stop - src;
+                src = stop;
+                if (j < group.size() && insertAt == src) {
+                    merged[count++] = group.get(j++);
+                    insertAt = j < group.size() ? upperBound(existing, group.get(j).getDepartureMinutes()) : existing.length;
+                } else if (c < cuts.length && cutAt == src) {
+                    src++;
+                    c++;
+                } else {
+                    return merged;
+                }
+            }
+        }
+
+        private static int indexOf(FlightInformation[] flights, FlightInformation flight) {
+            for (int i = lowerBound(flights, flight.getDepartureMinutes()); i < flights.length; i++) {
+                if (flights[i] == flight) {
+                    return i;
+                }
+            }
+            throw new IllegalStateException("航班不在航线中: " + flight.getFlightNumber());
+        }
+
+        private Set<Integer> touchedRoutes() {
+            Set<Integer> routes = new HashSet<>(added.keySet());
+            routes.addAll(removed.keySet());
+            return routes;
+        }
+
+        /**
+         * 使涉及的航线的查询缓存失效，必须在新版本发布之后调用，
+         * 否则读到新版本号的查询可能把旧版本的结果缓存下来
+         */
+        void bumpRouteVersions() {
+            int airportCount = FlightInformation.airportCount();
+            for (int route : touchedRoutes()) {
+                RouteVersions.bump(route / airportCount, route % airportCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package Flight;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.regex.Pattern;
+
+// 航班字段校验类，正则和时间格式只构造一次，可以被多个线程同时使用
+public class FlightValidator {
+    private static final Pattern FLIGHT_NUMBER_PATTERN = Pattern.compile("\\d{6}");
+
+    // 起飞时间格式，严格解析，不接受 2026-02-30 这样的日期
+    public static final DateTimeFormatter DEPARTURE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm").withResolverStyle(ResolverStyle.STRICT);
+
+    // 出发日期格式
+    public static final DateTimeFormatter DEPARTURE_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd").withResolverStyle(ResolverStyle.STRICT);
+
+    private FlightValidator() {
+    }
+
+    /**
+     * 验证航班号是否为6位数字
+     *
+     * @param flightNumber 航班号
+     * @return 合法返回true
+     */
+    public static boolean isValidFlightNumber(String flightNumber) {
+        return flightNumber != null && FLIGHT_NUMBER_PATTERN.matcher(flightNumber).matches();
+    }
+
+    /**
+     * 验证机场是否在允许的机场列表中
+     *
+     * @param airport 机场名称
+     * @return 合法返回true
+     */
+    public static boolean isValidAirport(String airport) {
+        return FlightInformation.airportOrdinal(airport) >= 0;
+    }
+
+    /**
+     * 验证飞机型号是否在允许的机型列表中
+     *
+     * @param aircraftType 飞机型号
+     * @return 合法返回true
+     */
+    public static boolean isValidAircraftType(String aircraftType) {
+        return FlightInformation.aircraftOrdinal(aircraftType) >= 0;
+    }
+
+    /**
+     * 解析起飞时间（yyyy-MM-dd HH:mm）
+     *
+     * @param departureTime 起飞时间
+     * @return 解析后的时间
+     * @throws DateTimeParseException 格式不正确或日期不存在时抛出
+     */
+    public static LocalDateTime parseDepartureTime(String departureTime) {
+        return LocalDateTime.parse(departureTime, DEPARTURE_TIME_FORMAT);
+    }
+
+    /**
+     * 解析出发日期（yyyy-MM-dd）
+     *
+     * @param departureDate 出发日期
+     * @return 解析后的日期
+     * @throws DateTimeParseException 格式不正确或日期不存在时抛出
+     */
+    public static LocalDate parseDepartureDate(String departureDate) {
+        return LocalDate.parse(departureDate, DEPARTURE_DATE_FORMAT);
+    }
+
+    /**
+     * 检查机场数据文件（格式见 AirportNetwork）能否加载。航班类在首次访问时才加载
+     * -Dflightapp.airports 指定的文件，那时出错只会得到 ExceptionInInitializerError，
+     * 所以启动时先用这个方法检查，给出包含行号的错误信息
+     *
+     * @param path 机场数据文件
+     * @throws IOException              读取文件失败时抛出
+     * @throws IllegalArgumentException 数据有误时抛出，消息中包含行号
+     */
+    public static void checkAirportData(Path path) throws IOException {
+        AirportNetwork.load(path);
+    }
+}
@@ -0,0 +1,54 @@
+package Flight;
+
+import java.util.Collections;
+import java.util.List;
+
+// 行程类：由一个或多个首尾衔接的航段组成
+public class Itinerary {
+    private final List<FlightInformation> legs;
+    private final double price;
+
+    Itinerary(List<FlightInformation> legs) {
+        this.legs = Collections.unmodifiableList(legs);
+        double total = 0;
+        for (FlightInformation leg : legs) {
+            total += leg.calculatePrice();
+        }
+        this.price = total;
+    }
+
+    public List<FlightInformation> getLegs() {
+        return legs;
+    }
+
+    // 中转次数
+    public int getStops() {
+        return legs.size() - 1;
+    }
+
+    // 各航段票价之和（元）
+    public double getPrice() {
+        return price;
+    }
+
+    public long getDepartureMinutes() {
+        return legs.get(0).getDepartureMinutes();
+    }
+
+    public long getArrivalMinutes() {
+        return legs.get(legs.size() - 1).getArrivalMinutes();
+    }
+
+    // 从第一段起飞到最后一段到达的总耗时（分钟），包括中转等待时间
+    public long getDurationMinutes() {
+        return getArrivalMinutes() - getDepartureMinutes();
+    }
+
+    public String getDepartureTime() {
+        return legs.get(0).getDepartureTime();
+    }
+
+    public String getArrivalTime() {
+        return FlightInformation.formatEpochMinutes(getArrivalMinutes());
+    }
+}
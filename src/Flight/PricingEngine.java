@@ -0,0 +1,173 @@
+package Flight;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态定价：票价随航班余座和距起飞的时间变化，规则从文件加载，可以在运行中替换。
+ * <p>
+ * 规则文件为UTF-8编码的 properties 格式，所有项都可以省略：
+ * <pre>
+ * pricePerHour=500          # 每小时价格
+ * aircraft.波音747=1.2       # 机型系数
+ * seats.10=1.5              # 余座不超过10个时乘以1.5
+ * seats.50=1.2              # 余座不超过50个时乘以1.2（取满足条件的最小阈值）
+ * hours.24=1.4              # 距起飞不超过24小时时乘以1.4
+ * hours.720=0.9             # 距起飞不超过30天时乘以0.9，更早购票不打折
+ * </pre>
+ * 规则在加载时编译成查找表（见 FareRules），通过一次 volatile 写整体替换；
+ * 报价只读一次当前规则，不加锁、不分配对象，替换规则时购票和报价都不需要暂停。
+ */
+public final class PricingEngine {
+    private static volatile FareRules rules = FareRules.defaults();
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile ZoneWindow zoneWindow;
+    private static ScheduledExecutorService watcher;
+
+    // 时区偏移在两次夏令时切换之间不变，缓存下来，报价时不用查询时区规则
+    private static final class ZoneWindow {
+        final ZoneId zone;
+        final long offsetMillis;
+        final long fromMillis;
+        final long untilMillis;
+
+        ZoneWindow(ZoneId zone, long millis) {
+            ZoneRules zoneRules = zone.getRules();
+            Instant instant = Instant.ofEpochMilli(millis);
+            ZoneOffsetTransition previous = zoneRules.previousTransition(instant);
+            ZoneOffsetTransition next = zoneRules.nextTransition(instant);
+            this.zone = zone;
+            this.offsetMillis = zoneRules.getOffset(instant).getTotalSeconds() * 1000L;
+            this.fromMillis = previous != null ? previous.getInstant().toEpochMilli() : Long.MIN_VALUE;
+            this.untilMillis = next != null ? next.getInstant().toEpochMilli() : Long.MAX_VALUE;
+        }
+    }
+
+    private PricingEngine() {
+    }
+
+    /**
+     * 报价
+     *
+     * @return 票价（元），航线没有数据时为NaN
+     */
+    static double quote(int from, int to, int aircraft, int availableSeats, long departureMinutes) {
+        FareRules current = rules;
+        // 规则与起飞时间无关时不读时钟
+        long minutesToDeparture = current.dependsOnTime() ? departureMinutes - nowMinutes() : 0;
+        return current.quote(from, to, aircraft, availableSeats, minutesToDeparture);
+    }
+
+    // 航线上可能出现的最低票价，没有数据时为NaN
+    static double minimumFare(int from, int to) {
+        return rules.minimumFare(from, to);
+    }
+
+    // 当前时间，与航班起飞时间一样按本地时间换算成epoch分钟数
+    private static long nowMinutes() {
+        Clock current = clock;
+        long millis = current.millis();
+        ZoneWindow window = zoneWindow;
+        if (window == null || !window.zone.equals(current.getZone()) || millis < window.fromMillis || millis >= window.untilMillis) {
+            window = new ZoneWindow(current.getZone(), millis);
+            zoneWindow = window;
+        }
+        return Math.floorDiv(millis + window.offsetMillis, 60_000L);
+    }
+
+    /**
+     * 从文件加载规则并替换当前规则
+     *
+     * @param path 规则文件
+     * @throws IOException 读取失败时抛出
+     * @throws IllegalArgumentException 规则有误时抛出，此时仍使用原来的规则
+     */
+    public static void load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        rules = FareRules.parse(properties, path.toString());
+    }
+
+    /**
+     * 加载规则文件，之后定期检查文件，修改后自动重新加载；重新加载失败时打印原因并继续使用原来的规则
+     *
+     * @param path 规则文件
+     * @param intervalSeconds 检查间隔（秒）
+     * @throws IOException 首次读取失败时抛出
+     * @throws IllegalArgumentException 首次加载的规则有误时抛出
+     */
+    public static synchronized void watch(Path path, long intervalSeconds) throws IOException {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("检查间隔必须为正整数");
+        }
+        stopWatching();
+        FileTime[] loaded = {Files.getLastModifiedTime(path)};
+        load(path);
+        watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pricing-rules-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(path);
+                if (!modified.equals(loaded[0])) {
+                    loaded[0] = modified;
+                    load(path);
+                    System.out.println("已重新加载定价规则: " + path);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("重新加载定价规则失败，继续使用原规则: " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止检查规则文件，当前规则保持不变
+     */
+    public static synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * 恢复内置规则：只按飞行时间和机型定价
+     */
+    public static void resetToDefaults() {
+        rules = FareRules.defaults();
+    }
+
+    // 当前规则的来源（文件路径或“内置规则”）
+    public static String getRulesSource() {
+        return rules.getSource();
+    }
+
+    /**
+     * 设置计算距起飞时间所用的时钟，用于模拟和测试
+     *
+     * @param clock 时钟
+     */
+    public static void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("时钟不能为空");
+        }
+        PricingEngine.clock = clock;
+    }
+}
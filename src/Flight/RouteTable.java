@@ -0,0 +1,153 @@
+package Flight;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 按航线存放数据的表，创建后不再修改，修改时生成新表，供航班计划和列式存储的航线索引使用。
+ * <p>
+ * 每个出发地一行，行内只存放有数据的目的地序号（升序）和对应的值，查询时在行内二分查找，
+ * 占用的内存与有数据的航线数成正比，而不是机场数的平方。
+ * 生成新表时只复制外层数组和涉及的出发地的行，其余各行与原表共用。
+ *
+ * @param <T> 每条航线的值
+ */
+final class RouteTable<T> {
+    private static final int[] NO_DESTINATIONS = new int[0];
+
+    private final Row[] rows; // 下标为出发地序号，没有数据的出发地为null
+
+    private static final class Row {
+        final int[] destinations;
+        final Object[] values;
+
+        Row(int[] destinations, Object[] values) {
+            this.destinations = destinations;
+            this.values = values;
+        }
+    }
+
+    /**
+     * 空表
+     *
+     * @param airportCount 机场数
+     */
+    RouteTable(int airportCount) {
+        this.rows = new Row[airportCount];
+    }
+
+    private RouteTable(Row[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * 航线编号，修改表时用作键
+     *
+     * @param from 出发地序号
+     * @param to 目的地序号
+     * @return 出发地序号 * 机场数 + 目的地序号
+     */
+    int routeOf(int from, int to) {
+        return from * rows.length + to;
+    }
+
+    /**
+     * 查询航线的值
+     *
+     * @param from 出发地序号
+     * @param to 目的地序号
+     * @return 值，没有数据时返回null
+     */
+    @SuppressWarnings("unchecked")
+    T get(int from, int to) {
+        Row row = rows[from];
+        if (row == null) {
+            return null;
+        }
+        int index = Arrays.binarySearch(row.destinations, to);
+        return index >= 0 ? (T) row.values[index] : null;
+    }
+
+    /**
+     * 出发地有数据的目的地
+     *
+     * @param from 出发地序号
+     * @return 升序排列的目的地序号，返回的数组不能修改
+     */
+    int[] destinations(int from) {
+        Row row = rows[from];
+        return row != null ? row.destinations : NO_DESTINATIONS;
+    }
+
+    /**
+     * 按出发地、目的地的序号依次访问各航线的值
+     *
+     * @param action 访问操作
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(Consumer<? super T> action) {
+        for (Row row : rows) {
+            if (row != null) {
+                for (Object value : row.values) {
+                    action.accept((T) value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 生成修改后的新表，本表保持不变
+     *
+     * @param changes 键为航线编号（见 routeOf），值为航线的新值，为null时删除该航线
+     * @return 新表
+     */
+    RouteTable<T> with(Map<Integer, T> changes) {
+        int[] routes = changes.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        Row[] next = rows.clone();
+        for (int start = 0; start < routes.length; ) {
+            int from = routes[start] / rows.length;
+            int end = start;
+            while (end < routes.length && routes[end] / rows.length == from) {
+                end++;
+            }
+            next[from] = merge(rows[from], routes, start, end, changes);
+            start = end;
+        }
+        return new RouteTable<>(next);
+    }
+
+    // 把一个出发地的修改（routes[start, end)，已排序）合并到原来的行中
+    private Row merge(Row row, int[] routes, int start, int end, Map<Integer, T> changes) {
+        int[] oldDestinations = row != null ? row.destinations : NO_DESTINATIONS;
+        int[] destinations = new int[oldDestinations.length + end - start];
+        Object[] values = new Object[destinations.length];
+        int count = 0;
+        int i = 0;
+        int j = start;
+        while (i < oldDestinations.length || j < end) {
+            int changed = j < end ? routes[j] % rows.length : Integer.MAX_VALUE;
+            int destination;
+            Object value;
+            if (i < oldDestinations.length && oldDestinations[i] < changed) {
+                destination = oldDestinations[i];
+                value = row.values[i++];
+            } else {
+                destination = changed;
+                value = changes.get(routes[j++]);
+                if (i < oldDestinations.length && oldDestinations[i] == destination) {
+                    i++;
+                }
+            }
+            if (value != null) {
+                destinations[count] = destination;
+                values[count++] = value;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return count == destinations.length ? new Row(destinations, values)
+                : new Row(Arrays.copyOf(destinations, count), Arrays.copyOf(values, count));
+    }
+}
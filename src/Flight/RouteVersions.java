@@ -0,0 +1,34 @@
+package Flight;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 航线版本号：航线上增加、删除航班或航班改期后递增，缓存的查询结果与当前版本不一致即失效。
+ * 查询不按座位筛选，缓存的结果是航班本身的引用，座位数读取时总是最新的，所以购票和退票不递增版本号。
+ * <p>
+ * 航线按哈希分到固定数量的槽位，不同航线共用槽位时只会多失效一些缓存，不会读到过期结果；
+ * 每个槽位独占一个缓存行，修改一条航线不会使查询其他航线的线程读到失效的缓存行。
+ * 版本号必须在修改完成之后递增，这样修改前读到旧版本并据此缓存的结果一定会失效。
+ */
+final class RouteVersions {
+    private static final int SLOTS = 1024;
+    private static final int PADDING = 8; // 8个long占满一个64字节的缓存行
+    private static final AtomicLongArray VERSIONS = new AtomicLongArray(SLOTS * PADDING);
+
+    private RouteVersions() {
+    }
+
+    static long current(int departure, int destination) {
+        return VERSIONS.get(slot(departure, destination));
+    }
+
+    static void bump(int departure, int destination) {
+        VERSIONS.incrementAndGet(slot(departure, destination));
+    }
+
+    private static int slot(int departure, int destination) {
+        int hash = departure * 0x9E3779B1 + destination;
+        hash ^= hash >>> 16;
+        return (hash & (SLOTS - 1)) * PADDING;
+    }
+}
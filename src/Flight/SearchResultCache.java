@@ -0,0 +1,158 @@
+package Flight;
+
+import Metrics.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 航线查询结果缓存，按查询条件（航线和时间段）保存结果。
+ * <p>
+ * 分为若干段，每段是一个按访问顺序排列的 LinkedHashMap（LRU），各自加锁，不同查询很少争用同一把锁。
+ * 每个条目记录填充时的航线版本号，读取时与当前版本比较，航线上的航班增删或改期后只有该航线的条目失效，售票不使条目失效。
+ */
+final class SearchResultCache {
+    private static final int SEGMENTS = 16;
+
+    // 查询条件
+    static final class Key {
+        final int departure;
+        final int destination;
+        final long fromMinutes;
+        final long toMinutes;
+
+        Key(int departure, int destination, long fromMinutes, long toMinutes) {
+            this.departure = departure;
+            this.destination = destination;
+            this.fromMinutes = fromMinutes;
+            this.toMinutes = toMinutes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return departure == other.departure && destination == other.destination
+                    && fromMinutes == other.fromMinutes && toMinutes == other.toMinutes;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = departure * 31 + destination;
+            hash = hash * 31 + Long.hashCode(fromMinutes);
+            return hash * 31 + Long.hashCode(toMinutes);
+        }
+    }
+
+    private static final class CachedResult {
+        final long version;
+        final List<FlightInformation> flights;
+
+        CachedResult(long version, List<FlightInformation> flights) {
+            this.version = version;
+            this.flights = flights;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, CachedResult> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+            if (size() > capacity) {
+                stats.recordEviction();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private final Segment[] segments;
+    private final CacheStats stats;
+
+    /**
+     * @param capacity 最多缓存的查询结果数
+     */
+    SearchResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("缓存容量必须为正整数");
+        }
+        this.stats = new CacheStats("searchFlights", this::size);
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * 读取缓存的查询结果
+     *
+     * @param key 查询条件
+     * @return 不可修改的结果列表，未缓存或已失效时返回null
+     */
+    List<FlightInformation> get(Key key) {
+        Segment segment = segmentFor(key);
+        CachedResult entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && entry.version != RouteVersions.current(key.departure, key.destination)) {
+                segment.remove(key);
+                stats.recordInvalidation();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            stats.recordMiss();
+            return null;
+        }
+        stats.recordHit();
+        return entry.flights;
+    }
+
+    /**
+     * 缓存查询结果
+     *
+     * @param key 查询条件
+     * @param version 查询之前读取的航线版本号
+     * @param flights 查询结果，会被复制
+     */
+    void put(Key key, long version, List<FlightInformation> flights) {
+        CachedResult entry = new CachedResult(version, List.copyOf(flights));
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    CacheStats getStats() {
+        return stats;
+    }
+
+    private Segment segmentFor(Key key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+}
@@ -0,0 +1,216 @@
+package Flight;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 机型的客舱布局：每排的座位按过道分成几段（如 3-4-3），座位号为 排号 + 字母，如 12C。
+ * <p>
+ * 座位图中每排占 rowBits 位：每段座位之后留一个始终为0的分隔位，一个long中放下整数排，
+ * 所以连续的空闲位一定在同一排的同一段内，一次查找相邻座位只需在单个long上做位运算。
+ * 座位编号就是座位在位图中的位置（long的下标 * 64 + 位号），不连续，只能由本类转换为座位号。
+ */
+public final class SeatLayout {
+    public static final int MAX_ROWS = 999;
+
+    private static final Map<String, SeatLayout> LAYOUTS = new HashMap<>();
+    private static final SeatLayout[] BY_ORDINAL;
+
+    static {
+        register(new SeatLayout("波音737", "ABC", "DEF"));
+        register(new SeatLayout("波音747", "ABC", "DEFG", "HJK"));
+        register(new SeatLayout("波音777", "ABC", "DEFG", "HJK"));
+        register(new SeatLayout("波音787", "ABC", "DEF", "HJK"));
+        register(new SeatLayout("空客320", "ABC", "DEF"));
+        register(new SeatLayout("空客380", "ABC", "DEFG", "HJK"));
+        String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+        BY_ORDINAL = new SeatLayout[aircraftTypes.length];
+        for (int i = 0; i < aircraftTypes.length; i++) {
+            BY_ORDINAL[i] = LAYOUTS.get(aircraftTypes[i]);
+            if (BY_ORDINAL[i] == null) {
+                throw new IllegalStateException("机型没有客舱布局: " + aircraftTypes[i]);
+            }
+        }
+    }
+
+    private final String aircraftType;
+    private final String letters; // 一排中各座位的字母，按位置顺序
+    private final int seatsPerRow;
+    private final int maxSectionWidth;
+    private final int rowBits; // 每排占用的位数，包括各段之后的分隔位
+    private final int rowsPerWord;
+    private final int[] bitOfColumn; // 第几个座位在一排中的位号
+    private final int[] columnOfBit; // 一排中的位号对应第几个座位，分隔位为-1
+
+    private SeatLayout(String aircraftType, String... sections) {
+        this.aircraftType = aircraftType;
+        this.letters = String.join("", sections);
+        this.seatsPerRow = letters.length();
+        this.rowBits = seatsPerRow + sections.length;
+        this.rowsPerWord = Long.SIZE / rowBits;
+        this.bitOfColumn = new int[seatsPerRow];
+        this.columnOfBit = new int[rowBits];
+        int bit = 0;
+        int column = 0;
+        int widest = 0;
+        for (String section : sections) {
+            for (int i = 0; i < section.length(); i++) {
+                bitOfColumn[column] = bit;
+                columnOfBit[bit++] = column++;
+            }
+            columnOfBit[bit++] = -1;
+            widest = Math.max(widest, section.length());
+        }
+        this.maxSectionWidth = widest;
+    }
+
+    private static void register(SeatLayout layout) {
+        LAYOUTS.put(layout.aircraftType, layout);
+    }
+
+    /**
+     * 获取机型的客舱布局
+     *
+     * @param aircraftType 机型
+     * @return 客舱布局
+     * @throws IllegalArgumentException 不是允许的机型时抛出
+     */
+    public static SeatLayout forAircraft(String aircraftType) {
+        SeatLayout layout = LAYOUTS.get(aircraftType);
+        if (layout == null) {
+            throw new IllegalArgumentException("Invalid aircraft type: " + aircraftType);
+        }
+        return layout;
+    }
+
+    static SeatLayout forAircraft(int aircraftOrdinal) {
+        return BY_ORDINAL[aircraftOrdinal];
+    }
+
+    public String getAircraftType() {
+        return aircraftType;
+    }
+
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    // 过道之间最多有几个相邻座位，即一次最多能预订的相邻座位数
+    public int getMaxSectionWidth() {
+        return maxSectionWidth;
+    }
+
+    // 一个航班最多开放的座位数
+    public int getMaxSeats() {
+        return MAX_ROWS * seatsPerRow;
+    }
+
+    // 开放指定数量的座位需要的排数
+    public int rowsFor(int seats) {
+        return (seats + seatsPerRow - 1) / seatsPerRow;
+    }
+
+    int wordsFor(int seats) {
+        return (rowsFor(seats) + rowsPerWord - 1) / rowsPerWord;
+    }
+
+    /**
+     * 开放前 seats 个座位（按排、再按字母顺序）时，第 word 个long中开放座位的位
+     */
+    long openMask(int word, int seats) {
+        long mask = 0;
+        for (int r = 0; r < rowsPerWord; r++) {
+            int row = word * rowsPerWord + r;
+            int open = Math.min(seatsPerRow, seats - row * seatsPerRow);
+            for (int column = 0; column < open; column++) {
+                mask |= 1L << (r * rowBits + bitOfColumn[column]);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 判断座位编号是否是开放 seats 个座位时的一个座位
+     *
+     * @param seat 座位编号
+     * @param seats 开放的座位数
+     * @return 是开放的座位返回true
+     */
+    boolean isOpenSeat(int seat, int seats) {
+        if (seat < 0) {
+            return false;
+        }
+        int bit = seat & (Long.SIZE - 1);
+        int rowInWord = bit / rowBits;
+        if (rowInWord >= rowsPerWord) {
+            return false;
+        }
+        int column = columnOfBit[bit % rowBits];
+        int row = (seat >>> 6) * rowsPerWord + rowInWord;
+        return column >= 0 && row * seatsPerRow + column < seats;
+    }
+
+    /**
+     * 座位编号转换为座位号
+     *
+     * @param seat 座位编号
+     * @return 座位号，如 12C
+     * @throws IllegalArgumentException 座位编号不是一个座位时抛出
+     */
+    public String label(int seat) {
+        if (!isOpenSeat(seat, getMaxSeats())) {
+            throw new IllegalArgumentException("无效的座位编号: " + seat);
+        }
+        int bit = seat & (Long.SIZE - 1);
+        int row = (seat >>> 6) * rowsPerWord + bit / rowBits;
+        return (row + 1) + String.valueOf(letters.charAt(columnOfBit[bit % rowBits]));
+    }
+
+    /**
+     * 座位号转换为座位编号
+     *
+     * @param label 座位号，如 12C，字母不区分大小写
+     * @return 座位编号，格式不正确或机型没有该座位时返回-1
+     */
+    public int seatOf(String label) {
+        if (label == null || label.length() < 2) {
+            return -1;
+        }
+        int column = letters.indexOf(Character.toUpperCase(label.charAt(label.length() - 1)));
+        int row;
+        try {
+            row = Integer.parseInt(label.substring(0, label.length() - 1)) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (column < 0 || row < 0 || row >= MAX_ROWS) {
+            return -1;
+        }
+        return (row / rowsPerWord) * Long.SIZE + (row % rowsPerWord) * rowBits + bitOfColumn[column];
+    }
+
+    // 座位所在的排（从1开始）
+    public int rowOf(int seat) {
+        return (seat >>> 6) * rowsPerWord + (seat & (Long.SIZE - 1)) / rowBits + 1;
+    }
+
+    /**
+     * 指定排的第 column 个座位（从0开始）的编号
+     */
+    public int seatAt(int row, int column) {
+        if (row < 1 || row > MAX_ROWS || column < 0 || column >= seatsPerRow) {
+            throw new IllegalArgumentException("座位不存在: 第" + row + "排第" + (column + 1) + "个座位");
+        }
+        int index = row - 1;
+        return (index / rowsPerWord) * Long.SIZE + (index % rowsPerWord) * rowBits + bitOfColumn[column];
+    }
+
+    // 第 column 个座位之后是否是过道
+    public boolean isAisleAfter(int column) {
+        return column < seatsPerRow - 1 && columnOfBit[bitOfColumn[column] + 1] < 0;
+    }
+
+    public char letterOf(int column) {
+        return letters.charAt(column);
+    }
+}
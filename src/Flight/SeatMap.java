@@ -0,0 +1,288 @@
+package Flight;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个航班的座位图：每个座位一位，1表示空闲，布局见 SeatLayout。
+ * <p>
+ * 所有操作都是对单个long的CAS，不加锁。相邻座位总在同一个long中，
+ * 所以预订一组相邻座位也只需一次CAS，要么全部成功，要么不占用任何座位。
+ * 可用座位数由位图旁的计数器给出，每次占用或释放座位的CAS成功后再原子地增减，
+ * 查询时不需要对整个位图做 bitCount；计数器可能短暂地比位图多出正在进行的占座，但不会小于0。
+ */
+final class SeatMap {
+    private final SeatLayout layout;
+    private final int seats; // 开放的座位数
+    private final AtomicLongArray free;
+    private final AtomicInteger available; // 空闲座位数
+    // 从没有座位号的旧记录恢复的购票所占的座位，这些乘客退票时从中取一个释放；只有旧记录才用到，第一次用时分配
+    private volatile ConcurrentLinkedQueue<Integer> unassigned;
+
+    /**
+     * @param layout 客舱布局
+     * @param seats 开放的座位数，按排依次开放
+     */
+    SeatMap(SeatLayout layout, int seats) {
+        if (seats < 0 || seats > layout.getMaxSeats()) {
+            throw new IllegalArgumentException(layout.getAircraftType() + " 的座位数必须在0到" + layout.getMaxSeats() + "之间: " + seats);
+        }
+        this.layout = layout;
+        this.seats = seats;
+        this.free = new AtomicLongArray(layout.wordsFor(seats));
+        this.available = new AtomicInteger(seats);
+        for (int word = 0; word < free.length(); word++) {
+            free.set(word, layout.openMask(word, seats));
+        }
+    }
+
+    SeatLayout getLayout() {
+        return layout;
+    }
+
+    // 开放的座位数（包括已占用的）
+    int getSeats() {
+        return seats;
+    }
+
+    int available() {
+        return available.get();
+    }
+
+    boolean isOpenSeat(int seat) {
+        return layout.isOpenSeat(seat, seats);
+    }
+
+    boolean isFree(int seat) {
+        return isOpenSeat(seat) && (free.get(seat >>> 6) & (1L << seat)) != 0;
+    }
+
+    /**
+     * 占用排在最前面的一个空闲座位
+     *
+     * @return 座位编号，没有空闲座位时返回-1
+     */
+    int reserveAny() {
+        for (int word = 0; word < free.length(); word++) {
+            long bits;
+            while ((bits = free.get(word)) != 0) {
+                long lowest = bits & -bits;
+                if (free.compareAndSet(word, bits, bits ^ lowest)) {
+                    available.decrementAndGet();
+                    return word * Long.SIZE + Long.numberOfTrailingZeros(lowest);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 占用指定座位
+     *
+     * @param seat 座位编号
+     * @return 成功返回true，座位已被占用返回false
+     * @throws IllegalArgumentException 座位编号不是本航班开放的座位时抛出
+     */
+    boolean reserve(int seat) {
+        if (!isOpenSeat(seat)) {
+            throw new IllegalArgumentException("座位不存在: " + seat);
+        }
+        int word = seat >>> 6;
+        long bit = 1L << seat;
+        long bits;
+        while (((bits = free.get(word)) & bit) != 0) {
+            if (free.compareAndSet(word, bits, bits & ~bit)) {
+                available.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 占用 count 个座位（不要求相邻），要么全部占用，要么都不占用。
+     * 逐个long用CAS取走排在最前面的空闲座位，座位不足时把已取走的座位放回，
+     * 期间同时进行的购票可能因为这些座位暂时被占用而失败，但不会超售，计数器也不会小于0。
+     *
+     * @param count 座位数
+     * @return 各座位的编号，按编号升序；空闲座位不足时返回null
+     * @throws IllegalArgumentException 座位数不是正整数时抛出
+     */
+    int[] reserveSeats(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("座位数必须为正整数: " + count);
+        }
+        int[] seats = new int[count];
+        int taken = 0;
+        for (int word = 0; word < free.length() && taken < count; word++) {
+            while (true) {
+                long bits = free.get(word);
+                if (bits == 0) {
+                    break;
+                }
+                long take = lowestBits(bits, count - taken);
+                if (free.compareAndSet(word, bits, bits & ~take)) {
+                    available.addAndGet(-Long.bitCount(take));
+                    for (; take != 0; take &= take - 1) {
+                        seats[taken++] = word * Long.SIZE + Long.numberOfTrailingZeros(take);
+                    }
+                    break; // 这个long中的空闲座位已取完或已取够
+                }
+            }
+        }
+        if (taken < count) {
+            for (int i = 0; i < taken; i++) {
+                release(seats[i]);
+            }
+            return null;
+        }
+        return seats;
+    }
+
+    // bits 中最低的 count 个1
+    private static long lowestBits(long bits, int count) {
+        long result = 0;
+        for (int i = 0; i < count && bits != 0; i++) {
+            long lowest = bits & -bits;
+            result |= lowest;
+            bits ^= lowest;
+        }
+        return result;
+    }
+
+    /**
+     * 占用同一排、过道之间的 count 个相邻座位，选排在最前面的一组
+     *
+     * @param count 座位数
+     * @return 第一个座位的编号（其余座位编号依次加1），没有足够的相邻空闲座位时返回-1
+     */
+    int reserveAdjacent(int count) {
+        if (count <= 0 || count > layout.getMaxSectionWidth()) {
+            throw new IllegalArgumentException(layout.getAircraftType() + " 一次最多预订" + layout.getMaxSectionWidth()
+                    + "个相邻座位: " + count);
+        }
+        long block = (1L << count) - 1;
+        for (int word = 0; word < free.length(); word++) {
+            while (true) {
+                long bits = free.get(word);
+                long starts = runStarts(bits, count);
+                if (starts == 0) {
+                    break;
+                }
+                int first = Long.numberOfTrailingZeros(starts);
+                if (free.compareAndSet(word, bits, bits & ~(block << first))) {
+                    available.addAndGet(-count);
+                    return word * Long.SIZE + first;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 连续 count 个空闲位的起点：结果的第 i 位为1表示第 i 到 i + count - 1 位都为1。
+     * 每次把已覆盖的长度翻倍，count 为4时只需两次移位和与运算。分隔位为0，结果不会跨过道或跨排。
+     */
+    static long runStarts(long bits, int count) {
+        long runs = bits;
+        int length = 1;
+        while (length < count) {
+            int step = Math.min(length, count - length);
+            runs &= runs >>> step;
+            length += step;
+        }
+        return runs;
+    }
+
+    /**
+     * 释放座位
+     *
+     * @param seat 座位编号
+     * @throws IllegalArgumentException 座位编号不是本航班开放的座位时抛出
+     * @throws IllegalStateException 座位没有被占用时抛出
+     */
+    void release(int seat) {
+        if (!isOpenSeat(seat)) {
+            throw new IllegalArgumentException("座位不存在: " + seat);
+        }
+        int word = seat >>> 6;
+        long bit = 1L << seat;
+        while (true) {
+            long bits = free.get(word);
+            if ((bits & bit) != 0) {
+                throw new IllegalStateException("座位没有被占用: " + layout.label(seat));
+            }
+            if (free.compareAndSet(word, bits, bits | bit)) {
+                available.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 停用座位图：一次取走全部空闲座位，之后在本座位图上购票都会失败。
+     * 只有没有任何座位被占用时才停用成功，否则退回刚取走的座位，座位图保持不变。
+     * 修改航班的座位数或机型时先停用原座位图确认没有乘客占座，再换上新的座位图，
+     * 同时进行的购票要么在停用之前完成（此时修改失败），要么失败，不会在被替换的座位图上丢失。
+     *
+     * @return 停用成功返回true，已有座位被占用返回false
+     */
+    boolean retire() {
+        long[] taken = new long[free.length()];
+        int count = 0;
+        for (int word = 0; word < free.length(); word++) {
+            taken[word] = free.getAndSet(word, 0L);
+            count += Long.bitCount(taken[word]);
+        }
+        available.addAndGet(-count);
+        if (count == seats) {
+            return true;
+        }
+        // 取走的都是空闲座位，其他线程只会释放自己占用的座位，按位或放回不会冲突
+        for (int word = 0; word < free.length(); word++) {
+            free.getAndAccumulate(word, taken[word], (bits, back) -> bits | back);
+        }
+        available.addAndGet(count);
+        return false;
+    }
+
+    /**
+     * 为没有座位号的购票记录占用一个座位
+     *
+     * @return 成功返回true，没有空闲座位返回false
+     */
+    boolean reserveUnassigned() {
+        int seat = reserveAny();
+        if (seat < 0) {
+            return false;
+        }
+        ConcurrentLinkedQueue<Integer> queue = unassigned;
+        if (queue == null) {
+            synchronized (this) {
+                queue = unassigned;
+                if (queue == null) {
+                    queue = new ConcurrentLinkedQueue<>();
+                    unassigned = queue;
+                }
+            }
+        }
+        queue.add(seat);
+        return true;
+    }
+
+    /**
+     * 释放一个由没有座位号的购票记录占用的座位
+     *
+     * @return 成功返回true，没有这样的座位时返回false
+     */
+    boolean releaseUnassigned() {
+        ConcurrentLinkedQueue<Integer> queue = unassigned;
+        Integer seat = queue != null ? queue.poll() : null;
+        if (seat == null) {
+            return false;
+        }
+        release(seat);
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+package Mail;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 只监听本机回环地址的简易SMTP服务器，用于在没有真实邮件服务器时验证发送管道。
+ * 只实现 SmtpMailTransport 用到的命令，收到的邮件只计数不保存；
+ * 可以按比例拒收邮件（返回451），用于验证重试。
+ */
+public class LocalSmtpServer implements Closeable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final double failureRate;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+
+    /**
+     * @param failureRate 拒收邮件的比例，0到1之间
+     */
+    public LocalSmtpServer(double failureRate) throws IOException {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("拒收比例必须在0到1之间");
+        }
+        this.failureRate = failureRate;
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-smtp");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connections.execute(this::acceptLoop);
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        sessions.incrementAndGet();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             OutputStream out = socket.getOutputStream()) {
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() < 4 ? line : line.substring(0, 4);
+                switch (command.toUpperCase(Locale.ROOT)) {
+                    case "EHLO":
+                    case "HELO":
+                    case "MAIL":
+                    case "RCPT":
+                    case "RSET":
+                    case "NOOP":
+                        reply(out, "250 OK");
+                        break;
+                    case "DATA":
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // 邮件内容只计数不保存
+                        }
+                        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                            refused.incrementAndGet();
+                            reply(out, "451 Try again later");
+                        } else {
+                            received.incrementAndGet();
+                            reply(out, "250 OK");
+                        }
+                        break;
+                    case "QUIT":
+                        reply(out, "221 Bye");
+                        return;
+                    default:
+                        reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (IOException ignored) {
+            // 客户端断开连接
+        }
+    }
+
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // 成功接收的邮件数
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    // 拒收的邮件数
+    public long getRefusedCount() {
+        return refused.get();
+    }
+
+    // 建立的连接数
+    public long getSessionCount() {
+        return sessions.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,257 @@
+package Mail;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步邮件发送管道。
+ * <p>
+ * 邮件先进入有界队列，由若干工作线程取出，每次最多取 batchSize 封通过同一个连接发送。
+ * 发送失败的邮件按指数退避（带随机抖动）重新排队，超过最大次数后放弃。
+ * 队列满时 trySubmit 立即返回false，购票等对延迟敏感的调用方不会等待邮件I/O；
+ * 批量发送时使用 submit 在队列满时等待，形成背压。
+ */
+public class MailDispatcher implements Closeable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    // 排队中的邮件及已尝试发送的次数
+    private static final class PendingMail {
+        final MailMessage message;
+        final int attempts;
+
+        PendingMail(MailMessage message, int attempts) {
+            this.message = message;
+            this.attempts = attempts;
+        }
+    }
+
+    private final MailTransport transport;
+    private final BlockingQueue<PendingMail> queue;
+    private final int batchSize;
+    private final Thread[] workers;
+    private final ScheduledExecutorService retryScheduler;
+    // 已提交但尚未发送成功或放弃的邮件数，包括排队、发送中和等待重试的邮件。
+    // 进入队列之前加1、结束之后才减1，邮件在队列和工作线程之间转手时计数不会短暂为0
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public MailDispatcher(MailTransport transport, int workerCount) {
+        this(transport, workerCount, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param transport 邮件发送方式
+     * @param workerCount 工作线程数
+     * @param queueCapacity 队列容量
+     * @param batchSize 每批（每个连接）最多发送的邮件数
+     */
+    public MailDispatcher(MailTransport transport, int workerCount, int queueCapacity, int batchSize) {
+        if (workerCount <= 0 || queueCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("线程数、队列容量和批大小必须为正整数");
+        }
+        this.transport = transport;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::workLoop, "mail-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 提交邮件，队列已满时不等待
+     *
+     * @param message 邮件
+     * @return 进入队列返回true，队列已满返回false
+     */
+    public boolean trySubmit(MailMessage message) {
+        checkOpen();
+        unfinished.incrementAndGet();
+        if (!queue.offer(new PendingMail(message, 0))) {
+            unfinished.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    /**
+     * 提交邮件，队列已满时最多等待指定时间
+     *
+     * @param message 邮件
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 进入队列返回true，超时返回false
+     */
+    public boolean submit(MailMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        unfinished.incrementAndGet();
+        boolean accepted = false;
+        try {
+            accepted = queue.offer(new PendingMail(message, 0), timeout, unit);
+        } finally {
+            if (!accepted) {
+                unfinished.decrementAndGet();
+            }
+        }
+        if (!accepted) {
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("邮件发送已关闭");
+        }
+    }
+
+    /**
+     * 获取发送统计
+     *
+     * @return 统计快照
+     */
+    public MailMetrics getMetrics() {
+        return new MailMetrics(submitted.sum(), sent.sum(), rejected.sum(), retried.sum(), failed.sum(), batches.sum(),
+                queue.size(), System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 等待已提交的邮件全部发送完成或放弃
+     *
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return 全部完成返回true，超时返回false
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isIdle()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private boolean isIdle() {
+        return unfinished.get() == 0;
+    }
+
+    private void workLoop() {
+        List<PendingMail> batch = new ArrayList<>(batchSize);
+        List<MailMessage> messages = new ArrayList<>(batchSize);
+        while (true) {
+            PendingMail first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (closed && isIdle()) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            for (PendingMail pending : batch) {
+                messages.add(pending.message);
+            }
+
+            Set<MailMessage> failedMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                failedMessages.addAll(transport.send(messages));
+            } catch (RuntimeException e) {
+                failedMessages.addAll(messages);
+            }
+            batches.increment();
+            for (PendingMail pending : batch) {
+                if (failedMessages.contains(pending.message)) {
+                    scheduleRetry(pending);
+                } else {
+                    sent.increment();
+                    unfinished.decrementAndGet();
+                }
+            }
+            batch.clear();
+            messages.clear();
+        }
+    }
+
+    // 按指数退避重新排队，重试次数用完后放弃
+    private void scheduleRetry(PendingMail pending) {
+        int attempts = pending.attempts + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            failed.increment();
+            unfinished.decrementAndGet();
+            return;
+        }
+        retried.increment();
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempts - 1));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        PendingMail retry = new PendingMail(pending.message, attempts);
+        retryScheduler.schedule(() -> requeue(retry, delay), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // 重试的邮件已被接受，队列满时稍后再试而不是丢弃
+    private void requeue(PendingMail retry, long delay) {
+        if (!queue.offer(retry)) {
+            retryScheduler.schedule(() -> requeue(retry, delay), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止接受新邮件，等待已提交的邮件发送完成后关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            awaitIdle(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            for (Thread worker : workers) {
+                worker.interrupt();
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        retryScheduler.shutdownNow();
+    }
+}
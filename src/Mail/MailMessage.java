@@ -0,0 +1,29 @@
+package Mail;
+
+// 待发送的邮件
+public class MailMessage {
+    private final String to;
+    private final String subject;
+    private final String body;
+
+    public MailMessage(String to, String subject, String body) {
+        if (to == null || !to.matches("[^@\\s]+@[^@\\s]+")) {
+            throw new IllegalArgumentException("邮箱地址格式不正确: " + to);
+        }
+        this.to = to;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
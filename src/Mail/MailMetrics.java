@@ -0,0 +1,76 @@
+package Mail;
+
+// 邮件发送统计的快照
+public class MailMetrics {
+    private final long submitted;
+    private final long sent;
+    private final long rejected;
+    private final long retried;
+    private final long failed;
+    private final long batches;
+    private final int queueDepth;
+    private final long elapsedNanos;
+
+    MailMetrics(long submitted, long sent, long rejected, long retried, long failed, long batches,
+                int queueDepth, long elapsedNanos) {
+        this.submitted = submitted;
+        this.sent = sent;
+        this.rejected = rejected;
+        this.retried = retried;
+        this.failed = failed;
+        this.batches = batches;
+        this.queueDepth = queueDepth;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // 进入队列的邮件数
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    // 发送成功的邮件数
+    public long getSent() {
+        return sent;
+    }
+
+    // 队列已满被拒绝的邮件数
+    public long getRejected() {
+        return rejected;
+    }
+
+    // 重试次数
+    public long getRetried() {
+        return retried;
+    }
+
+    // 重试次数用完后放弃的邮件数
+    public long getFailed() {
+        return failed;
+    }
+
+    // 发送的批次数，即建立的SMTP连接数
+    public long getBatches() {
+        return batches;
+    }
+
+    // 当前排队的邮件数
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    // 每秒发送成功的邮件数
+    public double getSentPerSecond() {
+        return sent * 1e9 / Math.max(1, elapsedNanos);
+    }
+
+    // 平均每批邮件数
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) (sent + retried + failed) / batches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("已提交 %d，已发送 %d，被拒绝 %d，重试 %d，放弃 %d，批次 %d（平均每批 %.1f 封），排队 %d，吞吐量 %.1f 封/秒",
+                submitted, sent, rejected, retried, failed, batches, getAverageBatchSize(), queueDepth, getSentPerSecond());
+    }
+}
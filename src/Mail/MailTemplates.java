@@ -0,0 +1,59 @@
+package Mail;
+
+import Flight.FlightInformation;
+import Passenger.Booking;
+import Passenger.PassengerInformation;
+
+import java.util.List;
+
+// 通知邮件的内容格式
+public final class MailTemplates {
+    private MailTemplates() {
+    }
+
+    /**
+     * 购票确认邮件
+     *
+     * @param to 收件人地址
+     * @param flight 航班
+     * @param passenger 乘客
+     * @param totalCost 总费用
+     * @return 邮件
+     */
+    public static MailMessage bookingConfirmation(String to, FlightInformation flight, PassengerInformation passenger,
+                                                  double totalCost) {
+        StringBuilder body = new StringBuilder(256);
+        body.append("尊敬的").append(passenger.getName()).append("，您已成功购买以下航班：\n");
+        appendFlight(body, flight);
+        body.append("联系方式: ").append(passenger.getTelephoneNumber()).append('\n');
+        body.append("总费用: ").append(totalCost).append("元\n");
+        return new MailMessage(to, "购票确认 - 航班 " + flight.getFlightNumber(), body.toString());
+    }
+
+    /**
+     * 航班及乘客名单邮件
+     *
+     * @param to 收件人地址
+     * @param flight 航班
+     * @param manifest 该航班的购票记录
+     * @return 邮件
+     */
+    public static MailMessage flightReport(String to, FlightInformation flight, List<Booking> manifest) {
+        StringBuilder body = new StringBuilder(128 + manifest.size() * 64);
+        appendFlight(body, flight);
+        body.append("可选座位数: ").append(flight.getAvailableSeats()).append('\n');
+        body.append("乘客人数: ").append(manifest.size()).append('\n');
+        for (Booking booking : manifest) {
+            body.append(booking).append('\n');
+        }
+        return new MailMessage(to, "航班信息 - " + flight.getFlightNumber(), body.toString());
+    }
+
+    private static void appendFlight(StringBuilder body, FlightInformation flight) {
+        body.append("航班号: ").append(flight.getFlightNumber()).append('\n');
+        body.append("出发地: ").append(flight.getDeparture()).append('\n');
+        body.append("目的地: ").append(flight.getDestination()).append('\n');
+        body.append("出发时间: ").append(flight.getDepartureTime()).append('\n');
+        body.append("机型: ").append(flight.getAircraftType()).append('\n');
+    }
+}
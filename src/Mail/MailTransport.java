@@ -0,0 +1,14 @@
+package Mail;
+
+import java.util.List;
+
+// 邮件发送方式，可以替换为SMTP以外的实现
+public interface MailTransport {
+    /**
+     * 通过一个连接发送一批邮件
+     *
+     * @param batch 邮件列表
+     * @return 发送失败的邮件，建立连接失败时为整批
+     */
+    List<MailMessage> send(List<MailMessage> batch);
+}
@@ -0,0 +1,83 @@
+package Mail;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 通过 javax.mail 发送邮件，每批邮件共用一个SMTP连接
+ */
+public class SmtpMailTransport implements MailTransport {
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    private final Session session;
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String password;
+    private final String from;
+
+    /**
+     * @param host SMTP服务器地址
+     * @param port SMTP服务器端口
+     * @param user 用户名，为null时不认证
+     * @param password 密码
+     * @param from 发件人地址
+     */
+    public SmtpMailTransport(String host, int port, String user, String password, String from) {
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", host);
+        properties.put("mail.smtp.port", String.valueOf(port));
+        properties.put("mail.smtp.auth", String.valueOf(user != null));
+        properties.put("mail.smtp.connectiontimeout", String.valueOf(TIMEOUT_MILLIS));
+        properties.put("mail.smtp.timeout", String.valueOf(TIMEOUT_MILLIS));
+        this.session = Session.getInstance(properties);
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.password = password;
+        this.from = from;
+    }
+
+    @Override
+    public List<MailMessage> send(List<MailMessage> batch) {
+        List<MailMessage> failed = new ArrayList<>();
+        Transport transport = null;
+        try {
+            transport = session.getTransport("smtp");
+            transport.connect(host, port, user, password);
+            for (MailMessage message : batch) {
+                try {
+                    MimeMessage mime = new MimeMessage(session);
+                    mime.setFrom(new InternetAddress(from));
+                    mime.setRecipient(Message.RecipientType.TO, new InternetAddress(message.getTo()));
+                    mime.setSubject(message.getSubject(), "UTF-8");
+                    mime.setText(message.getBody(), "UTF-8");
+                    mime.saveChanges();
+                    transport.sendMessage(mime, mime.getAllRecipients());
+                } catch (MessagingException e) {
+                    failed.add(message);
+                }
+            }
+        } catch (MessagingException e) {
+            // 建立连接失败，整批重试
+            failed.clear();
+            failed.addAll(batch);
+        } finally {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException ignored) {
+                    // 邮件已发送，关闭连接失败不影响结果
+                }
+            }
+        }
+        return failed;
+    }
+}
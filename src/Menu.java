@@ -10,8 +10,8 @@ public class Menu {
     private final Scanner scanner;
 
     public Menu(PassengerManager passengerManager, FlightManager flightManager) {
-        this.flightManager = new FlightManager();
-        this.passengerManager = new PassengerManager(this.flightManager); // 传递相同的 FlightManager 实例
+        this.flightManager = flightManager;
+        this.passengerManager = passengerManager; // 两者共享同一个 FlightManager 实例
         this.scanner = new Scanner(System.in);
     }
 
@@ -26,8 +26,8 @@ public class Menu {
                 * 4) Add a passenger and select a flight                  *
                 * 5) Change the flight                                    *
                 * 6) Cancel the ticket purchase                           *
-                * 7)                                                      *
-                * 8)                                                      *
+                * 7) Import flights from a CSV file                       *
+                * 8) Search connecting flights                            *
                 * 9) Send flight and passenger information to the mailbox *
                 * 0) Exit                                                 *
                 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
@@ -57,19 +57,19 @@ public class Menu {
                         passengerManager.addPassengerAndSelectFlight();
                         break;
                     case 5:
-                        // 乘客改签
+                        passengerManager.changeFlight();
                         break;
                     case 6:
-                        // 乘客退票
+                        passengerManager.cancelTicket();
                         break;
                     case 7:
-                        // 其他功能
+                        flightManager.importFlightsFromCsv();
                         break;
                     case 8:
-                        // 其他功能
+                        flightManager.searchConnections();
                         break;
                     case 9:
-                        // 发送信息到邮箱
+                        passengerManager.sendInformationToMailbox();
                         break;
                     default:
                         System.out.println("请输入0-9中的数字。");
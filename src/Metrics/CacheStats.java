@@ -0,0 +1,89 @@
+package Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+// 缓存的命中、未命中、淘汰和失效次数
+public class CacheStats implements CacheStatsMBean {
+    private final String name;
+    private final IntSupplier size;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param name 缓存名称
+     * @param size 读取当前条目数的方法
+     */
+    public CacheStats(String name, IntSupplier size) {
+        this.name = name;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordInvalidation() {
+        invalidations.increment();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public int getSize() {
+        return size.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: 命中 %d，未命中 %d，命中率 %.1f%%，淘汰 %d，失效 %d，条目 %d",
+                name, getHits(), getMisses(), getHitRatio() * 100, getEvictions(), getInvalidations(), getSize());
+    }
+}
@@ -0,0 +1,20 @@
+package Metrics;
+
+// 缓存命中情况的JMX接口
+public interface CacheStatsMBean {
+    long getHits();
+
+    long getMisses();
+
+    // 容量已满时淘汰的条目数
+    long getEvictions();
+
+    // 因航线版本变化而失效的条目数
+    long getInvalidations();
+
+    double getHitRatio();
+
+    int getSize();
+
+    void reset();
+}
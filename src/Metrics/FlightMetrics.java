@@ -0,0 +1,73 @@
+package Metrics;
+
+import Flight.FlightManager;
+import Passenger.PassengerManager;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * 各操作的统计，使用静态常量以便在热路径上直接引用。
+ * 启动时加 -Dflightapp.metrics=false 可关闭统计。
+ */
+public final class FlightMetrics {
+    public static final OperationStats SEARCH_FLIGHTS = new OperationStats("searchFlights", 1);
+    public static final OperationStats SEARCH_FLIGHTS_IN_WINDOW = new OperationStats("searchFlightsInWindow", 1);
+    public static final OperationStats SEARCH_CONNECTIONS = new OperationStats("searchConnections", 1);
+    // 查票价表只需几纳秒，每64次调用计时一次
+    public static final OperationStats CALCULATE_PRICE = new OperationStats("calculatePrice", 64);
+    public static final OperationStats REGISTER_FLIGHT = new OperationStats("registerFlight", 1);
+    public static final OperationStats REGISTER_FLIGHTS = new OperationStats("registerFlights", 1);
+    public static final OperationStats UPDATE_FLIGHT = new OperationStats("updateFlight", 1);
+    public static final OperationStats BOOK = new OperationStats("book", 1);
+    public static final OperationStats CANCEL = new OperationStats("cancel", 1);
+    public static final OperationStats REBOOK = new OperationStats("rebook", 1);
+    public static final OperationStats JOIN_WAITLIST = new OperationStats("joinWaitlist", 1);
+    public static final OperationStats SERVER_REQUEST = new OperationStats("serverRequest", 1);
+
+    private static final List<OperationStats> ALL = List.of(SEARCH_FLIGHTS, SEARCH_FLIGHTS_IN_WINDOW,
+            SEARCH_CONNECTIONS, CALCULATE_PRICE, REGISTER_FLIGHT, REGISTER_FLIGHTS, UPDATE_FLIGHT, BOOK, CANCEL,
+            REBOOK, JOIN_WAITLIST, SERVER_REQUEST);
+
+    private FlightMetrics() {
+    }
+
+    public static List<OperationStats> getAll() {
+        return ALL;
+    }
+
+    /**
+     * 将各操作的统计、座位库存和查询缓存命中率注册到平台MBeanServer，
+     * 之后可以用 jconsole 等工具在 FlightApp 域下查看
+     *
+     * @param flightManager 航班管理
+     * @param passengerManager 乘客管理
+     */
+    public static void registerMBeans(FlightManager flightManager, PassengerManager passengerManager) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (OperationStats stats : ALL) {
+                register(server, new ObjectName("FlightApp:type=Operation,name=" + stats.getName()), stats);
+            }
+            register(server, new ObjectName("FlightApp:type=SeatInventory"),
+                    new SeatInventory(flightManager, passengerManager));
+            CacheStats searchCacheStats = flightManager.getSearchCacheStats();
+            if (searchCacheStats != null) {
+                register(server, new ObjectName("FlightApp:type=Cache,name=" + searchCacheStats.getName()),
+                        searchCacheStats);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("注册MBean失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+    }
+}
@@ -0,0 +1,151 @@
+package Metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个操作的调用次数和耗时分布。
+ * <p>
+ * 用法：
+ * <pre>
+ * long start = stats.start();
+ * try {
+ *     ...
+ * } finally {
+ *     stats.stop(start);
+ * }
+ * </pre>
+ * 调用次数用分段计数器（LongAdder）累加，多线程之间不争用同一个缓存行；
+ * 本身只需几纳秒的操作（如查票价表）可以按比例抽样计时，避免两次读时钟的开销超过操作本身。
+ */
+public class OperationStats implements OperationStatsMBean {
+    // 关闭后 start/stop 直接返回，JIT会把判断折叠掉
+    static final boolean ENABLED = !"false".equals(System.getProperty("flightapp.metrics"));
+
+    private final String name;
+    private final int sampleMask; // 每 sampleMask + 1 次调用计时一次
+    private final LongAdder count = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private volatile long resetNanos = System.nanoTime();
+    private long lastCount; // 上次读取速率时的调用次数，只在读取时使用
+    private long lastNanos = resetNanos;
+
+    /**
+     * @param name 操作名称
+     * @param samplingInterval 每多少次调用计时一次，必须是2的幂，1表示每次都计时
+     */
+    public OperationStats(String name, int samplingInterval) {
+        if (samplingInterval <= 0 || Integer.bitCount(samplingInterval) != 1) {
+            throw new IllegalArgumentException("抽样间隔必须是2的幂");
+        }
+        this.name = name;
+        this.sampleMask = samplingInterval - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 开始一次调用
+     *
+     * @return 开始时间，本次不计时时为0
+     */
+    public long start() {
+        if (!ENABLED || (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 结束一次调用
+     *
+     * @param start start() 的返回值
+     */
+    public void stop(long start) {
+        if (!ENABLED) {
+            return;
+        }
+        count.increment();
+        if (start != 0) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public synchronized double getRatePerSecond() {
+        long now = System.nanoTime();
+        long current = count.sum();
+        double rate = (current - lastCount) * 1e9 / Math.max(1, now - lastNanos);
+        lastCount = current;
+        lastNanos = now;
+        return rate;
+    }
+
+    @Override
+    public double getMeanRatePerSecond() {
+        return count.sum() * 1e9 / Math.max(1, System.nanoTime() - resetNanos);
+    }
+
+    @Override
+    public long getSampledCount() {
+        return histogram.snapshot().getCount();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return histogram.snapshot().getMeanNanos() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return histogram.snapshot().getValueAtQuantile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return histogram.snapshot().getValueAtQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return histogram.snapshot().getValueAtQuantile(0.999) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return histogram.snapshot().getMaxNanos() / 1e3;
+    }
+
+    @Override
+    public synchronized void reset() {
+        count.reset();
+        histogram.reset();
+        resetNanos = System.nanoTime();
+        lastCount = 0;
+        lastNanos = resetNanos;
+    }
+
+    /**
+     * 获取耗时分布的快照
+     *
+     * @return 快照
+     */
+    public LatencyHistogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        return String.format("%s: 调用 %d 次，p50 %.2f 微秒，p99 %.2f 微秒，p999 %.2f 微秒，最大 %.2f 微秒",
+                name, getCount(), snapshot.getValueAtQuantile(0.5) / 1e3, snapshot.getValueAtQuantile(0.99) / 1e3,
+                snapshot.getValueAtQuantile(0.999) / 1e3, snapshot.getMaxNanos() / 1e3);
+    }
+}
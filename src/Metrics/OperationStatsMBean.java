@@ -0,0 +1,27 @@
+package Metrics;
+
+// 单个操作的JMX接口，耗时单位为微秒
+public interface OperationStatsMBean {
+    long getCount();
+
+    // 自上次读取以来每秒的调用次数
+    double getRatePerSecond();
+
+    // 自启动（或上次清空）以来平均每秒的调用次数
+    double getMeanRatePerSecond();
+
+    // 参与耗时统计的调用次数，抽样统计的操作小于总调用次数
+    long getSampledCount();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
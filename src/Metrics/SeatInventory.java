@@ -0,0 +1,61 @@
+package Metrics;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.PassengerManager;
+
+/**
+ * 座位库存指标，每次读取时遍历已加载的航班计算，不在购票路径上维护任何状态。
+ * 快照中尚未加载的航班不计入，读取指标不会触发加载。
+ */
+public class SeatInventory implements SeatInventoryMBean {
+    private final FlightManager flightManager;
+    private final PassengerManager passengerManager;
+
+    public SeatInventory(FlightManager flightManager, PassengerManager passengerManager) {
+        this.flightManager = flightManager;
+        this.passengerManager = passengerManager;
+    }
+
+    @Override
+    public int getFlightCount() {
+        return flightManager.getLoadedFlights().size();
+    }
+
+    @Override
+    public long getAvailableSeats() {
+        long seats = 0;
+        for (FlightInformation flight : flightManager.getLoadedFlights()) {
+            seats += flight.getAvailableSeats();
+        }
+        return seats;
+    }
+
+    @Override
+    public int getSoldOutFlights() {
+        int soldOut = 0;
+        for (FlightInformation flight : flightManager.getLoadedFlights()) {
+            if (flight.getAvailableSeats() == 0) {
+                soldOut++;
+            }
+        }
+        return soldOut;
+    }
+
+    @Override
+    public long getBookedSeats() {
+        return passengerManager.getBookingCount();
+    }
+
+    @Override
+    public long getWaitlistedPassengers() {
+        return passengerManager.getWaitlistedCount();
+    }
+
+    @Override
+    public double getLoadFactor() {
+        long booked = getBookedSeats();
+        long total = booked + getAvailableSeats();
+        return total == 0 ? 0 : (double) booked / total;
+    }
+}
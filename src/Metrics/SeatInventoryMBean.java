@@ -0,0 +1,17 @@
+package Metrics;
+
+// 座位库存的JMX接口，只统计已加载到内存中的航班
+public interface SeatInventoryMBean {
+    int getFlightCount();
+
+    long getAvailableSeats();
+
+    int getSoldOutFlights();
+
+    long getBookedSeats();
+
+    long getWaitlistedPassengers();
+
+    // 已售座位占总座位的比例
+    double getLoadFactor();
+}
@@ -0,0 +1,37 @@
+package Passenger;
+
+// 购票记录：乘客与所购航班的对应关系
+public class Booking {
+    private final long id; // 购票序号，按购票先后递增
+    private final String flightNumber;
+    private final PassengerInformation passenger;
+    private final int seat; // 座位编号，见 SeatLayout；从没有座位号的旧记录恢复时为-1
+
+    Booking(long id, String flightNumber, PassengerInformation passenger, int seat) {
+        this.id = id;
+        this.flightNumber = flightNumber;
+        this.passenger = passenger;
+        this.seat = seat;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getFlightNumber() {
+        return flightNumber;
+    }
+
+    public PassengerInformation getPassenger() {
+        return passenger;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    @Override
+    public String toString() {
+        return "航班号: " + flightNumber + ", 乘客: " + passenger.getName() + ", 联系方式: " + passenger.getTelephoneNumber();
+    }
+}
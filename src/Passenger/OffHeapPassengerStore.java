@@ -0,0 +1,563 @@
+package Passenger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 堆外乘客存储，适用于千万级购票记录。
+ * <p>
+ * 购票记录按固定长度（40字节）保存在直接缓冲区的页中。姓名按UTF-8编码存放在变长区，记录中只保存其位置；
+ * 航班号、联系方式和性别在各自的键表中每个不同的值只存一份，记录中保存键的序号。
+ * 每条购票记录在堆外约占一百字节，堆上没有随购票记录增长的对象，购票记录增加到数千万条时，
+ * 堆内存占用和垃圾回收的耗时基本不变。查询时返回轻量的 PassengerInformation 视图。
+ * <p>
+ * 每个航班、每个联系方式的有效记录各串成一条链表，链表头保存在键表中，用于查询乘客名单和按联系方式查找。
+ * 写入（购票、退票）由同一把锁串行化，查询不加锁：记录写完后才以release方式挂到链表上，
+ * 查询以acquire方式读取链表头和链接，不会看到写到一半的记录。
+ * 行写入后不再修改，退票只把记录标记为无效并从链表中摘除，行本身不回收，
+ * 仍持有旧视图的线程读到的是退票前的完整信息。购票序号为行号加1。
+ * <p>
+ * 直接缓冲区的总量受 -XX:MaxDirectMemorySize 限制（默认与最大堆内存相同），保存数千万条记录时应相应调大。
+ */
+public class OffHeapPassengerStore {
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final int NONE = -1;
+    private static final int LIVE = 1;
+    private static final int CANCELLED = 0;
+
+    // 购票记录：姓名位置(long) 航班键 联系方式键 性别键 座位 行李重量 状态 同航班的下一条 同联系方式的下一条
+    private static final int RECORD_SIZE = 40;
+    private static final int NAME = 0;
+    private static final int FLIGHT = 8;
+    private static final int PHONE = 12;
+    private static final int GENDER = 16;
+    private static final int SEAT = 20;
+    private static final int LUGGAGE = 24;
+    private static final int STATUS = 28;
+    private static final int NEXT_IN_FLIGHT = 32;
+    private static final int NEXT_IN_PHONE = 36;
+
+    // 键：字符串位置(long) 散列值 链表头 有效记录数
+    private static final int KEY_SIZE = 24;
+    private static final int KEY_STRING = 0;
+    private static final int KEY_HASH = 8;
+    private static final int KEY_HEAD = 12;
+    private static final int KEY_LIVE = 16;
+
+    private static final int STRING_PAGE_SHIFT = 20; // 变长区每页1MB，字符串不跨页
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final Region records = new Region(16, RECORD_SIZE);
+    private final Region strings = new Region(STRING_PAGE_SHIFT, 1);
+    private final KeyTable flights = new KeyTable();
+    private final KeyTable phones = new KeyTable();
+    private final KeyTable genders = new KeyTable();
+    private long stringOffset; // 变长区下一个可写位置
+    private volatile int rowCount; // 已使用的行数，包括已退票的行
+    private volatile long size; // 有效购票记录数
+
+    /**
+     * 添加购票记录，把乘客信息编码后写入堆外缓冲区
+     *
+     * @param flightNumber 航班号
+     * @param passenger 乘客信息
+     * @param seat 座位编号，没有座位号的旧记录为-1
+     * @return 购票序号
+     * @throws IllegalArgumentException 乘客信息不完整或字符串过长时抛出，此时不添加记录
+     */
+    public synchronized long add(String flightNumber, PassengerInformation passenger, int seat) {
+        String name = passenger.getName();
+        String gender = passenger.getGender();
+        String telephoneNumber = passenger.getTelephoneNumber();
+        if (flightNumber == null || name == null || gender == null || telephoneNumber == null) {
+            throw new IllegalArgumentException("乘客信息不完整");
+        }
+        byte[] nameBytes = encode(name);
+        int flight = flights.intern(flightNumber);
+        int phone = phones.intern(telephoneNumber);
+        int genderKey = genders.intern(gender);
+        long nameRef = writeString(nameBytes);
+
+        int row = rowCount;
+        if (row == Integer.MAX_VALUE) {
+            throw new IllegalStateException("购票记录数已达上限");
+        }
+        ByteBuffer page = records.pageForWrite(row);
+        int position = records.position(row);
+        page.putLong(position + NAME, nameRef);
+        page.putInt(position + FLIGHT, flight);
+        page.putInt(position + PHONE, phone);
+        page.putInt(position + GENDER, genderKey);
+        page.putInt(position + SEAT, seat);
+        page.putInt(position + LUGGAGE, passenger.getWeightOfLuggage());
+        page.putInt(position + STATUS, LIVE);
+        link(row);
+        rowCount = row + 1;
+        size++;
+        return row + 1L;
+    }
+
+    /**
+     * 退票：把记录标记为无效并从航班和联系方式的链表中摘除，同一记录只有一次返回true
+     *
+     * @param id 购票序号
+     * @return 记录有效并已移除返回true，记录不存在或已退票返回false
+     */
+    public synchronized boolean remove(long id) {
+        int row = rowOf(id);
+        if (row < 0 || !isLive(row)) {
+            return false;
+        }
+        INT.setRelease(records.page(row), records.position(row) + STATUS, CANCELLED);
+        unlink(row, flights, FLIGHT, NEXT_IN_FLIGHT);
+        unlink(row, phones, PHONE, NEXT_IN_PHONE);
+        size--;
+        return true;
+    }
+
+    /**
+     * 恢复已移除的记录，用于退票、改签的日志写入失败时回滚
+     *
+     * @param id 购票序号
+     * @throws IllegalStateException 记录不存在或仍然有效时抛出
+     */
+    public synchronized void restore(long id) {
+        int row = rowOf(id);
+        if (row < 0 || isLive(row)) {
+            throw new IllegalStateException("购票记录不存在或仍然有效: " + id);
+        }
+        INT.setRelease(records.page(row), records.position(row) + STATUS, LIVE);
+        link(row);
+        size++;
+    }
+
+    /**
+     * 航班的乘客名单
+     *
+     * @param flightNumber 航班号
+     * @return 有效购票记录，按购票先后排列
+     */
+    public List<Booking> manifest(String flightNumber) {
+        return collect(flights, flightNumber, NEXT_IN_FLIGHT);
+    }
+
+    /**
+     * 按联系方式查找购票记录
+     *
+     * @param telephoneNumber 联系方式
+     * @return 有效购票记录，按购票先后排列
+     */
+    public List<Booking> findByPhone(String telephoneNumber) {
+        return collect(phones, telephoneNumber, NEXT_IN_PHONE);
+    }
+
+    /**
+     * 航班是否有有效购票记录
+     *
+     * @param flightNumber 航班号
+     * @return 有返回true
+     */
+    public boolean hasBookings(String flightNumber) {
+        int key = flights.find(flightNumber);
+        return key != NONE && flights.live(key) > 0;
+    }
+
+    /**
+     * 按购票先后依次访问全部有效购票记录
+     *
+     * @param action 访问操作
+     */
+    public void forEach(Consumer<? super Booking> action) {
+        int rows = rowCount;
+        for (int row = 0; row < rows; row++) {
+            if (isLive(row)) {
+                action.accept(booking(row));
+            }
+        }
+    }
+
+    /**
+     * 有效购票记录数
+     *
+     * @return 记录数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 已分配的堆外内存，包括已退票的行
+     *
+     * @return 字节数
+     */
+    public synchronized long offHeapBytes() {
+        return records.allocatedBytes + strings.allocatedBytes
+                + flights.allocatedBytes() + phones.allocatedBytes() + genders.allocatedBytes();
+    }
+
+    // 沿链表收集有效记录；并发退票、回滚时旧链接可能使同一行出现两次，按序号排序后去重，并限制步数避免绕圈
+    private List<Booking> collect(KeyTable table, String key, int nextField) {
+        List<Booking> result = new ArrayList<>();
+        int k = table.find(key);
+        if (k == NONE) {
+            return result;
+        }
+        int[] rows = new int[8];
+        int count = 0;
+        int steps = rowCount;
+        for (int row = table.head(k); row != NONE && steps-- >= 0; row = next(row, nextField)) {
+            if (isLive(row)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, count * 2);
+                }
+                rows[count++] = row;
+            }
+        }
+        Arrays.sort(rows, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || rows[i] != rows[i - 1]) {
+                result.add(booking(rows[i]));
+            }
+        }
+        return result;
+    }
+
+    private Booking booking(int row) {
+        ByteBuffer page = records.page(row);
+        int position = records.position(row);
+        return new Booking(row + 1L, flights.name(page.getInt(position + FLIGHT)), new PassengerView(this, row),
+                page.getInt(position + SEAT));
+    }
+
+    private int rowOf(long id) {
+        return id >= 1 && id <= rowCount ? (int) (id - 1) : -1;
+    }
+
+    private boolean isLive(int row) {
+        return (int) INT.getAcquire(records.page(row), records.position(row) + STATUS) == LIVE;
+    }
+
+    private int next(int row, int nextField) {
+        return (int) INT.getAcquire(records.page(row), records.position(row) + nextField);
+    }
+
+    // 把记录挂到航班和联系方式链表的头部，只由持有锁的写线程调用
+    private void link(int row) {
+        ByteBuffer page = records.page(row);
+        int position = records.position(row);
+        int flight = page.getInt(position + FLIGHT);
+        int phone = page.getInt(position + PHONE);
+        INT.setRelease(page, position + NEXT_IN_FLIGHT, flights.head(flight));
+        flights.setHead(flight, row);
+        flights.addLive(flight, 1);
+        INT.setRelease(page, position + NEXT_IN_PHONE, phones.head(phone));
+        phones.setHead(phone, row);
+        phones.addLive(phone, 1);
+    }
+
+    // 从链表中摘除记录；被摘除记录自身的链接保持不变，正在经过它的查询仍能走到链表末尾
+    private void unlink(int row, KeyTable table, int keyField, int nextField) {
+        int key = records.page(row).getInt(records.position(row) + keyField);
+        int after = next(row, nextField);
+        table.addLive(key, -1);
+        int current = table.head(key);
+        if (current == row) {
+            table.setHead(key, after);
+            return;
+        }
+        while (current != NONE) {
+            int following = next(current, nextField);
+            if (following == row) {
+                INT.setRelease(records.page(current), records.position(current) + nextField, after);
+                return;
+            }
+            current = following;
+        }
+    }
+
+    private static byte[] encode(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("字符串过长: " + bytes.length + " 字节");
+        }
+        return bytes;
+    }
+
+    // 在变长区写入 [长度(short)][UTF-8字节]，返回位置；放不下时从下一页开始
+    private long writeString(byte[] bytes) {
+        int pageSize = 1 << STRING_PAGE_SHIFT;
+        if (strings.position(stringOffset) + 2 + bytes.length > pageSize) {
+            stringOffset = (stringOffset >>> STRING_PAGE_SHIFT) + 1 << STRING_PAGE_SHIFT;
+        }
+        long ref = stringOffset;
+        ByteBuffer page = strings.pageForWrite(ref);
+        int position = strings.position(ref);
+        page.putShort(position, (short) bytes.length);
+        page.put(position + 2, bytes);
+        stringOffset += 2 + bytes.length;
+        return ref;
+    }
+
+    private String readString(long ref) {
+        ByteBuffer page = strings.page(ref);
+        int position = strings.position(ref);
+        byte[] bytes = new byte[page.getShort(position) & 0xFFFF];
+        page.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean stringEquals(long ref, byte[] bytes) {
+        ByteBuffer page = strings.page(ref);
+        int position = strings.position(ref);
+        if ((page.getShort(position) & 0xFFFF) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (page.get(position + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 按固定大小的页分配的直接缓冲区，每页保存 2^pageShift 个等长的元素，扩容时不复制已有数据
+     */
+    private static final class Region {
+        private final int pageShift;
+        private final int elementSize;
+        private volatile ByteBuffer[] pages = new ByteBuffer[4];
+        private long allocatedBytes;
+
+        Region(int pageShift, int elementSize) {
+            this.pageShift = pageShift;
+            this.elementSize = elementSize;
+        }
+
+        ByteBuffer page(long index) {
+            return pages[(int) (index >>> pageShift)];
+        }
+
+        int position(long index) {
+            return (int) (index & ((1L << pageShift) - 1)) * elementSize;
+        }
+
+        // 只由持有锁的写线程调用
+        ByteBuffer pageForWrite(long index) {
+            int pageIndex = (int) (index >>> pageShift);
+            ByteBuffer[] current = pages;
+            if (pageIndex >= current.length) {
+                current = Arrays.copyOf(current, Math.max(current.length * 2, pageIndex + 1));
+            }
+            if (current[pageIndex] == null) {
+                int bytes = elementSize << pageShift;
+                current[pageIndex] = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+                allocatedBytes += bytes;
+            }
+            pages = current;
+            return current[pageIndex];
+        }
+    }
+
+    /**
+     * 字符串键表：每个不同的键只保存一份，键的序号按加入先后分配。
+     * 开放定址的散列表（直接缓冲区）保存键序号加1，0表示空位；装载超过一半时按两倍容量重建后整体替换，
+     * 查询总是在某一个版本的散列表上进行。
+     */
+    private final class KeyTable {
+        private final Region keys = new Region(12, KEY_SIZE);
+        private int count;
+        private volatile ByteBuffer slots = newSlots(1024);
+
+        private ByteBuffer newSlots(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder());
+        }
+
+        int find(String key) {
+            return find(key.getBytes(StandardCharsets.UTF_8), spread(key.hashCode()));
+        }
+
+        private int find(byte[] bytes, int hash) {
+            ByteBuffer table = slots;
+            int mask = table.capacity() / 4 - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int slot = (int) INT.getAcquire(table, i * 4);
+                if (slot == 0) {
+                    return NONE;
+                }
+                int k = slot - 1;
+                ByteBuffer page = keys.page(k);
+                int position = keys.position(k);
+                if (page.getInt(position + KEY_HASH) == hash && stringEquals(page.getLong(position + KEY_STRING), bytes)) {
+                    return k;
+                }
+            }
+        }
+
+        // 查找键，不存在时加入，只由持有锁的写线程调用
+        int intern(String key) {
+            byte[] bytes = encode(key);
+            int hash = spread(key.hashCode());
+            int k = find(bytes, hash);
+            if (k != NONE) {
+                return k;
+            }
+            ByteBuffer table = slots;
+            if ((count + 1) * 2L > table.capacity() / 4) {
+                table = rehash(table.capacity() / 4 * 2);
+            }
+            k = count;
+            ByteBuffer page = keys.pageForWrite(k);
+            int position = keys.position(k);
+            page.putLong(position + KEY_STRING, writeString(bytes));
+            page.putInt(position + KEY_HASH, hash);
+            page.putInt(position + KEY_HEAD, NONE);
+            page.putInt(position + KEY_LIVE, 0);
+            count++;
+            int mask = table.capacity() / 4 - 1;
+            int i = hash & mask;
+            while ((int) INT.getAcquire(table, i * 4) != 0) {
+                i = (i + 1) & mask;
+            }
+            INT.setRelease(table, i * 4, k + 1);
+            return k;
+        }
+
+        private ByteBuffer rehash(int capacity) {
+            if (capacity <= 0 || capacity > (1 << 29)) {
+                throw new IllegalStateException("键的数量已达上限");
+            }
+            ByteBuffer table = newSlots(capacity);
+            int mask = capacity - 1;
+            for (int k = 0; k < count; k++) {
+                int i = keys.page(k).getInt(keys.position(k) + KEY_HASH) & mask;
+                while (table.getInt(i * 4) != 0) {
+                    i = (i + 1) & mask;
+                }
+                table.putInt(i * 4, k + 1);
+            }
+            slots = table;
+            return table;
+        }
+
+        String name(int key) {
+            return readString(keys.page(key).getLong(keys.position(key) + KEY_STRING));
+        }
+
+        int head(int key) {
+            return (int) INT.getAcquire(keys.page(key), keys.position(key) + KEY_HEAD);
+        }
+
+        void setHead(int key, int row) {
+            INT.setRelease(keys.page(key), keys.position(key) + KEY_HEAD, row);
+        }
+
+        int live(int key) {
+            return (int) INT.getAcquire(keys.page(key), keys.position(key) + KEY_LIVE);
+        }
+
+        void addLive(int key, int delta) {
+            INT.setRelease(keys.page(key), keys.position(key) + KEY_LIVE, live(key) + delta);
+        }
+
+        long allocatedBytes() {
+            return keys.allocatedBytes + slots.capacity();
+        }
+    }
+
+    /**
+     * 堆外存储中某一行的乘客信息视图，只保存存储引用和行号
+     */
+    private static final class PassengerView extends PassengerInformation {
+        private final OffHeapPassengerStore store;
+        private final int row;
+
+        PassengerView(OffHeapPassengerStore store, int row) {
+            super(null, null, 0, null);
+            this.store = store;
+            this.row = row;
+        }
+
+        private ByteBuffer page() {
+            return store.records.page(row);
+        }
+
+        private int position() {
+            return store.records.position(row);
+        }
+
+        @Override
+        public String getName() {
+            return store.readString(page().getLong(position() + NAME));
+        }
+
+        // 行写入后不再修改，乘客信息随购票记录一起登记
+        @Override
+        public void setName(String name) {
+            throw immutable();
+        }
+
+        @Override
+        public String getGender() {
+            return store.genders.name(page().getInt(position() + GENDER));
+        }
+
+        @Override
+        public void setGender(String gender) {
+            throw immutable();
+        }
+
+        @Override
+        public int getWeightOfLuggage() {
+            return page().getInt(position() + LUGGAGE);
+        }
+
+        @Override
+        public void setWeightOfLuggage(int weightOfLuggage) {
+            throw immutable();
+        }
+
+        @Override
+        public String getTelephoneNumber() {
+            return store.phones.name(page().getInt(position() + PHONE));
+        }
+
+        @Override
+        public void setTelephoneNumber(String telephoneNumber) {
+            throw immutable();
+        }
+
+        private static IllegalStateException immutable() {
+            return new IllegalStateException("堆外存储中的乘客信息不能直接修改");
+        }
+
+        // 同一行的不同视图视为同一位乘客
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PassengerView)) {
+                return false;
+            }
+            PassengerView other = (PassengerView) o;
+            return store == other.store && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(store) * 31 + row;
+        }
+    }
+}
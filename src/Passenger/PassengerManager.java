@@ -2,26 +2,56 @@ package Passenger;
 
 import Flight.FlightManager;
 import Flight.FlightInformation;
+import Mail.MailDispatcher;
+import Mail.MailMessage;
+import Mail.MailTemplates;
+import Metrics.FlightMetrics;
+import Storage.FlightJournal;
+import Storage.FlightSnapshot;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class PassengerManager {
-    private List<PassengerInformation> passengers;
     private Scanner scanner;
     private FlightManager flightManager;
+    private FlightJournal journal; // 预写日志，为null时不记录
+    private MailDispatcher mailDispatcher; // 邮件发送管道，为null时不发送邮件
+    private final AtomicLong nextBookingId = new AtomicLong();
+    private final Map<String, Set<Booking>> manifests = new ConcurrentHashMap<>(); // 航班号 -> 该航班的购票记录
+    private final Map<String, Set<Booking>> bookingsByPhone = new ConcurrentHashMap<>(); // 联系方式 -> 该号码的购票记录
+    private final OffHeapPassengerStore store; // 堆外存储模式下保存全部购票记录及索引，为null时使用上面两个对象索引
+    private final AtomicLong nextWaitlistSequence = new AtomicLong();
+    private final Map<String, PriorityBlockingQueue<WaitlistEntry>> waitlists = new ConcurrentHashMap<>(); // 航班号 -> 候补队列，每个航班各自加锁
 
     public PassengerManager(FlightManager flightManager) {
-        this.passengers = new ArrayList<>();
+        this(flightManager, null);
+    }
+
+    /**
+     * 使用堆外存储保存购票记录，适用于千万级购票记录
+     *
+     * @param flightManager 航班管理器
+     * @param store 堆外乘客存储，为null时使用对象索引
+     */
+    public PassengerManager(FlightManager flightManager, OffHeapPassengerStore store) {
         this.scanner = new Scanner(System.in); // 确保 scanner 正确初始化
         this.flightManager = flightManager;
+        this.store = store;
     }
 
     // 录入乘客信息
     public PassengerInformation inputPassengerInfo() {
-        System.out.println("请输入乘客姓名:");
-        String name = scanner.nextLine();
+        String name = getValidName(scanner);
 
         String gender = getValidGender(scanner);
 
@@ -33,11 +63,22 @@ public class PassengerManager {
         return passenger;
     }
 
+    private String getValidName(Scanner scanner) {
+        System.out.println("请输入乘客姓名:");
+        while (true) {
+            String name = scanner.nextLine();
+            if (PassengerValidator.isValidName(name)) {
+                return name;
+            }
+            System.out.println("姓名不能为空，且不能超过" + PassengerValidator.MAX_NAME_BYTES + "字节（约21个汉字），请重新输入：");
+        }
+    }
+
     private String getValidGender(Scanner scanner) {
         while (true) {
             System.out.println("请输入乘客性别（男/女）:");
             String gender = scanner.nextLine();
-            if (gender.equals("男") || gender.equals("女")) {
+            if (PassengerValidator.isValidGender(gender)) {
                 return gender;
             } else {
                 System.out.println("性别格式不正确，请重新输入：");
@@ -51,7 +92,7 @@ public class PassengerManager {
                 System.out.println("请输入乘客行李重量（kg）:");
                 int weightOfLuggage = scanner.nextInt();
                 scanner.nextLine(); // Consume newline
-                if (weightOfLuggage >= 0 && weightOfLuggage <= 100) {
+                if (PassengerValidator.isValidLuggageWeight(weightOfLuggage)) {
                     return weightOfLuggage;
                 } else {
                     System.out.println("行李重量超出范围，请重新输入：");
@@ -67,7 +108,7 @@ public class PassengerManager {
         while (true) {
             System.out.println("请输入乘客联系方式（11位电话号码）:");
             String telephoneNumber = scanner.nextLine();
-            if (telephoneNumber.matches("\\d{11}")) {
+            if (PassengerValidator.isValidTelephoneNumber(telephoneNumber)) {
                 return telephoneNumber;
             } else {
                 System.out.println("手机号码格式不正确，请重新输入：");
@@ -90,65 +131,772 @@ public class PassengerManager {
             destination = selectOption(FlightInformation.getAllowedAirports(), "请选择目的地：");
         }
 
-        // 查询符合条件的航班
-        List<FlightInformation> matchingFlights = flightManager.searchFlights(departure, destination);
-        flightManager.printFlights(matchingFlights);
+        // 分页浏览符合条件的航班，每次只查询和输出一页
+        FlightInformation selectedFlight = flightManager.browseFlights(departure, destination);
+        if (selectedFlight != null) {
+            System.out.println("您选择了航班：" + selectedFlight.getFlightNumber());
+            if (selectedFlight.getAvailableSeats() == 0) {
+                System.out.println("该航班没有可用座位，无法购票。");
+                offerWaitlist(selectedFlight);
+            } else {
+                System.out.print("是否要购买该航班的票？(是/否): ");
+                String choice = scanner.nextLine();
+                if (choice.equalsIgnoreCase("是")) {
+                    // 录入乘客信息
+                    PassengerInformation passenger = inputPassengerInfo();
+
+                    // 占座之前报价并按报价收费：票价随余座变化，占座后再算会按少了一个座位的价格收费
+                    double basePrice = selectedFlight.calculatePrice(departure, destination);
+
+                    // 原子地占用座位，录入期间座位可能已被其他乘客买走
+                    Booking booking = bookWithSeatSelection(passenger, selectedFlight);
+                    if (booking == null) {
+                        System.out.println("该航班没有可用座位，无法购票。");
+                        offerWaitlist(selectedFlight, passenger);
+                        return;
+                    }
+
+                    // 计算行李费
+                    int luggageWeight = passenger.getWeightOfLuggage();
+                    double additionalLuggageFee = 0.0;
 
-        if (matchingFlights.isEmpty()) {
-            System.out.println("没有找到符合条件的航班，请下次再见。");
+                    if (luggageWeight > 20) {
+                        System.out.println("您的行李超过20kg，需要托运行李，收费100元，每超1kg加15元。");
+                        additionalLuggageFee = 100.0 + (luggageWeight - 20) * 15.0;
+                    }
+
+                    double totalCost = basePrice + additionalLuggageFee;
+
+                    // 输出购票成功的消息，并显示乘客的信息和航班号
+                    System.out.println("您已购买航班：" + selectedFlight.getFlightNumber());
+                    System.out.println("乘客信息如下：");
+                    System.out.println("姓名: " + passenger.getName());
+                    System.out.println("性别: " + passenger.getGender());
+                    System.out.println("行李重量: " + luggageWeight + "kg");
+                    System.out.println("联系方式: " + passenger.getTelephoneNumber());
+                    System.out.println("航班号: " + selectedFlight.getFlightNumber());
+                    System.out.println("座位: " + seatLabel(selectedFlight, booking));
+                    System.out.println("票价: " + basePrice + "元");
+                    if (additionalLuggageFee > 0) {
+                        System.out.println("额外行李费用: " + additionalLuggageFee + "元");
+                    }
+                    System.out.println("总费用: " + totalCost + "元");
+
+                    offerBookingConfirmation(selectedFlight, passenger, totalCost);
+                } else {
+                    System.out.println("购票已取消。");
+                }
+            }
         } else {
-            FlightInformation selectedFlight = flightManager.selectFlight(matchingFlights);
-            if (selectedFlight != null) {
-                System.out.println("您选择了航班：" + selectedFlight.getFlightNumber());
-                if (selectedFlight.getAvailableSeats() == 0) {
-                    System.out.println("该航班没有可用座位，无法购票。");
+            System.out.println("没有选择任何航班。");
+        }
+    }
+
+    // 询问乘客是否选座：输入座位号则预订该座位，已被占用时重新输入；直接回车由系统分配
+    private Booking bookWithSeatSelection(PassengerInformation passenger, FlightInformation flight) {
+        while (true) {
+            System.out.print("请输入座位号选座（如 12C，直接回车由系统分配）: ");
+            String label = scanner.nextLine().trim();
+            if (label.isEmpty()) {
+                return book(passenger, flight);
+            }
+            int seat = flight.getSeatLayout().seatOf(label);
+            if (seat < 0 || !flight.isSeatAvailable(seat)) {
+                if (flight.getAvailableSeats() == 0) {
+                    return null;
+                }
+                System.out.println("座位 " + label + " 不存在或已被占用，请重新选择。");
+                continue;
+            }
+            Booking booking = book(passenger, flight, seat);
+            if (booking != null) {
+                return booking;
+            }
+            System.out.println("座位 " + label + " 刚刚被其他乘客选走，请重新选择。");
+        }
+    }
+
+    // 购票记录的座位号，没有座位号的旧记录显示为“未分配”
+    private static String seatLabel(FlightInformation flight, Booking booking) {
+        return booking.getSeat() >= 0 ? flight.getSeatLabel(booking.getSeat()) : "未分配";
+    }
+
+    // 购票成功后询问是否发送确认邮件，邮件只进入队列，不等待发送
+    private void offerBookingConfirmation(FlightInformation flight, PassengerInformation passenger, double totalCost) {
+        MailDispatcher dispatcher = this.mailDispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        System.out.print("请输入接收购票确认的邮箱（直接回车跳过）: ");
+        String address = scanner.nextLine().trim();
+        if (address.isEmpty()) {
+            return;
+        }
+        try {
+            if (dispatcher.trySubmit(MailTemplates.bookingConfirmation(address, flight, passenger, totalCost))) {
+                System.out.println("确认邮件将发送到 " + address);
+            } else {
+                System.out.println("邮件队列已满，确认邮件未能发送。");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * 将所有航班信息及乘客名单发送到邮箱，每个航班一封邮件。
+     * 队列已满时等待发送线程腾出空间。
+     */
+    public void sendInformationToMailbox() {
+        MailDispatcher dispatcher = this.mailDispatcher;
+        if (dispatcher == null) {
+            System.out.println("未配置邮件服务器，无法发送邮件。");
+            return;
+        }
+        List<FlightInformation> flights = flightManager.getAllFlights();
+        if (flights.isEmpty()) {
+            System.out.println("没有航班信息可以发送。");
+            return;
+        }
+        System.out.print("请输入接收邮箱: ");
+        String address = scanner.nextLine().trim();
+        int queued = 0;
+        try {
+            for (FlightInformation flight : flights) {
+                MailMessage message = MailTemplates.flightReport(address, flight, getManifest(flight.getFlightNumber()));
+                if (!dispatcher.submit(message, 10, TimeUnit.SECONDS)) {
+                    System.out.println("邮件队列长时间已满，停止发送。");
+                    break;
+                }
+                queued++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("已将 " + queued + " 封邮件加入发送队列。");
+        System.out.println(dispatcher.getMetrics());
+    }
+
+    // 航班已满时询问是否加入候补
+    private void offerWaitlist(FlightInformation flight) {
+        System.out.print("是否加入该航班的候补名单？(是/否): ");
+        if (scanner.nextLine().equalsIgnoreCase("是")) {
+            offerWaitlist(flight, inputPassengerInfo());
+        }
+    }
+
+    private void offerWaitlist(FlightInformation flight, PassengerInformation passenger) {
+        if (joinWaitlist(passenger, flight, 0) != null) {
+            System.out.println("航班有座位空出，已为您购票：" + flight.getFlightNumber());
+        } else {
+            System.out.println("已加入航班 " + flight.getFlightNumber() + " 的候补名单，当前候补人数："
+                    + getWaitlistSize(flight.getFlightNumber()));
+        }
+    }
+
+    // 按联系方式查找购票记录并退票
+    public void cancelTicket() {
+        String telephoneNumber = getValidPhoneNumber(scanner);
+        List<Booking> bookings = findBookingsByPhone(telephoneNumber);
+        if (bookings.isEmpty()) {
+            System.out.println("没有找到该联系方式的购票记录。");
+            return;
+        }
+        Booking booking = selectBooking(bookings, "请选择要退票的记录（输入数字）：");
+
+        System.out.print("确认退票？(是/否): ");
+        if (!scanner.nextLine().equalsIgnoreCase("是")) {
+            System.out.println("退票已取消。");
+            return;
+        }
+        try {
+            Booking promoted = cancelBooking(booking);
+            System.out.println("退票成功，航班号：" + booking.getFlightNumber());
+            if (promoted != null) {
+                System.out.println("候补乘客 " + promoted.getPassenger().getName() + " 已获得该座位。");
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // 按联系方式查找购票记录，改签到同一航线的其他航班
+    public void changeFlight() {
+        String telephoneNumber = getValidPhoneNumber(scanner);
+        List<Booking> bookings = findBookingsByPhone(telephoneNumber);
+        if (bookings.isEmpty()) {
+            System.out.println("没有找到该联系方式的购票记录。");
+            return;
+        }
+        Booking booking = selectBooking(bookings, "请选择要改签的记录（输入数字）：");
+        FlightInformation oldFlight = flightManager.findFlight(booking.getFlightNumber());
+        if (oldFlight == null) {
+            System.out.println("原航班不存在，无法改签。");
+            return;
+        }
+
+        List<FlightInformation> candidates = new ArrayList<>();
+        for (FlightInformation flight : flightManager.searchFlights(oldFlight.getDeparture(), oldFlight.getDestination())) {
+            if (!flight.getFlightNumber().equals(oldFlight.getFlightNumber()) && flight.getAvailableSeats() > 0) {
+                candidates.add(flight);
+            }
+        }
+        flightManager.printFlights(candidates);
+        FlightInformation newFlight = flightManager.selectFlight(candidates);
+        if (newFlight == null) {
+            return;
+        }
+        double difference = newFlight.calculatePrice() - oldFlight.calculatePrice();
+        System.out.print("票价差额 " + difference + " 元，确认改签到航班 " + newFlight.getFlightNumber() + "？(是/否): ");
+        if (!scanner.nextLine().equalsIgnoreCase("是")) {
+            System.out.println("改签已取消。");
+            return;
+        }
+        try {
+            Booking moved = rebook(booking, newFlight);
+            if (moved == null) {
+                System.out.println("该航班没有可用座位，改签失败，原机票保持不变。");
+            } else {
+                System.out.println("改签成功，新航班号：" + newFlight.getFlightNumber() + "，座位：" + seatLabel(newFlight, moved));
+            }
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // 列出购票记录并让用户选择
+    private Booking selectBooking(List<Booking> bookings, String prompt) {
+        for (int i = 0; i < bookings.size(); i++) {
+            System.out.println((i + 1) + ". " + bookings.get(i));
+        }
+        while (true) {
+            try {
+                System.out.print(prompt);
+                int choice = Integer.parseInt(scanner.nextLine()) - 1;
+                if (choice >= 0 && choice < bookings.size()) {
+                    return bookings.get(choice);
                 } else {
-                    System.out.print("是否要购买该航班的票？(是/否): ");
-                    String choice = scanner.nextLine();
-                    if (choice.equalsIgnoreCase("是")) {
-                        // 录入乘客信息
-                        PassengerInformation passenger = inputPassengerInfo();
-                        passengers.add(passenger); // 只有在购票成功后才添加乘客信息
-                        flightManager.setFlightHasPassenger(selectedFlight.getFlightNumber(), true); // 设置航班有乘客购票
-
-                        // 减少可用座位数
-                        selectedFlight.reduceAvailableSeats();
-
-                        // 计算票价
-                        double basePrice = selectedFlight.calculatePrice(departure, destination);
-                        int luggageWeight = passenger.getWeightOfLuggage();
-                        double additionalLuggageFee = 0.0;
-
-                        if (luggageWeight > 20) {
-                            System.out.println("您的行李超过20kg，需要托运行李，收费100元，每超1kg加15元。");
-                            additionalLuggageFee = 100.0 + (luggageWeight - 20) * 15.0;
-                        }
-
-                        double totalCost = basePrice + additionalLuggageFee;
-
-                        // 输出购票成功的消息，并显示乘客的信息和航班号
-                        System.out.println("您已购买航班：" + selectedFlight.getFlightNumber());
-                        System.out.println("乘客信息如下：");
-                        System.out.println("姓名: " + passenger.getName());
-                        System.out.println("性别: " + passenger.getGender());
-                        System.out.println("行李重量: " + luggageWeight + "kg");
-                        System.out.println("联系方式: " + passenger.getTelephoneNumber());
-                        System.out.println("航班号: " + selectedFlight.getFlightNumber());
-                        System.out.println("票价: " + basePrice + "元");
-                        if (additionalLuggageFee > 0) {
-                            System.out.println("额外行李费用: " + additionalLuggageFee + "元");
-                        }
-                        System.out.println("总费用: " + totalCost + "元");
-
-                        // 这里可以继续处理购票后的逻辑，例如保存购票信息等
-                    } else {
-                        System.out.println("购票已取消。");
+                    System.out.println("选择无效，请重新输入。");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("请输入有效的选项编号。");
+            }
+        }
+    }
+
+    /**
+     * 为乘客预订航班，先原子地占用座位，成功后才登记乘客信息
+     *
+     * @param passenger 乘客信息
+     * @param flight 航班
+     * @return 购票成功返回true，航班没有可用座位返回false
+     */
+    public boolean bookFlight(PassengerInformation passenger, FlightInformation flight) {
+        return book(passenger, flight) != null;
+    }
+
+    /**
+     * 为乘客预订航班并返回购票记录，由系统分配排在最前面的空闲座位
+     *
+     * @param passenger 乘客信息
+     * @param flight 航班
+     * @return 购票记录，航班没有可用座位时返回null
+     * @throws IllegalArgumentException 姓名为空或超长时抛出，见 PassengerValidator.isValidName
+     */
+    public Booking book(PassengerInformation passenger, FlightInformation flight) {
+        requireValidName(passenger);
+        long start = FlightMetrics.BOOK.start();
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            int seat = flightManager.reserveSeat(flight);
+            if (seat < 0) {
+                return null;
+            }
+            return confirmBooking(passenger, flight, seat);
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.BOOK.stop(start);
+        }
+    }
+
+    /**
+     * 选座购票
+     *
+     * @param passenger 乘客信息
+     * @param flight 航班
+     * @param seat 座位编号，见 SeatLayout.seatOf
+     * @return 购票记录，座位已被占用时返回null
+     * @throws IllegalArgumentException 航班没有该座位或姓名为空、超长时抛出
+     */
+    public Booking book(PassengerInformation passenger, FlightInformation flight, int seat) {
+        requireValidName(passenger);
+        long start = FlightMetrics.BOOK.start();
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            if (!flight.reserveSeat(seat)) {
+                return null;
+            }
+            return confirmBooking(passenger, flight, seat);
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.BOOK.stop(start);
+        }
+    }
+
+    /**
+     * 团体购票：原子地占用同一排、过道之间的相邻座位，要么全部购票成功，要么都不购票。
+     * 各乘客的购票记录一起写入日志，只等待一次落盘。
+     *
+     * @param passengers 乘客信息，依次分配座位号递增的座位
+     * @param flight 航班
+     * @return 各乘客的购票记录，没有足够的相邻空闲座位时返回null
+     * @throws IllegalArgumentException 人数超过机型过道之间的座位数或有姓名为空、超长时抛出
+     */
+    public List<Booking> bookGroup(List<PassengerInformation> passengers, FlightInformation flight) {
+        for (PassengerInformation passenger : passengers) {
+            requireValidName(passenger);
+        }
+        long start = FlightMetrics.BOOK.start();
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            int first = flight.reserveAdjacentSeats(passengers.size());
+            if (first < 0) {
+                return null;
+            }
+            if (journal != null) {
+                try {
+                    journal.passengersBooked(flight.getFlightNumber(), passengers, first);
+                } catch (RuntimeException e) {
+                    for (int i = 0; i < passengers.size(); i++) {
+                        flight.releaseSeat(first + i); // 购票记录没有落盘，退回占用的座位
                     }
+                    throw e;
                 }
-            } else {
-                System.out.println("没有选择任何航班。");
+            }
+            List<Booking> bookings = new ArrayList<>(passengers.size());
+            for (int i = 0; i < passengers.size(); i++) {
+                bookings.add(addBooking(flight.getFlightNumber(), passengers.get(i), first + i));
+            }
+            flightManager.setFlightHasPassenger(flight.getFlightNumber(), true);
+            return bookings;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.BOOK.stop(start);
+        }
+    }
+
+    // 姓名超长的购票记录无法写入快照，会使之后的每次快照都失败，所以在占用座位之前拒绝
+    private static void requireValidName(PassengerInformation passenger) {
+        if (!PassengerValidator.isValidName(passenger.getName())) {
+            throw new IllegalArgumentException("乘客姓名不能为空，且不能超过" + PassengerValidator.MAX_NAME_BYTES + "字节");
+        }
+    }
+
+    // 座位已经占用，写日志并登记购票记录；日志写入失败时退回座位
+    private Booking confirmBooking(PassengerInformation passenger, FlightInformation flight, int seat) {
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                journal.passengerBooked(flight.getFlightNumber(), passenger, seat);
+            } catch (RuntimeException e) {
+                flight.releaseSeat(seat); // 购票记录没有落盘，退回占用的座位
+                throw e;
+            }
+        }
+        // 只有在购票成功后才登记购票记录
+        Booking booking = addBooking(flight.getFlightNumber(), passenger, seat);
+        flightManager.setFlightHasPassenger(flight.getFlightNumber(), true); // 设置航班有乘客购票
+        return booking;
+    }
+
+    /**
+     * 退票：座位优先直接转给候补队列中的下一位乘客，没有候补乘客时退回航班的可用座位。
+     * 最后一位乘客退票后，航班重新允许修改。
+     *
+     * @param booking 购票记录
+     * @return 因本次退票获得座位的候补乘客的购票记录，没有时返回null
+     * @throws IllegalStateException 购票记录不存在或已退票时抛出
+     */
+    public Booking cancelBooking(Booking booking) {
+        long start = FlightMetrics.CANCEL.start();
+        FlightInformation flight = flightManager.findFlight(booking.getFlightNumber());
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            if (!unindexBooking(booking)) {
+                throw new IllegalStateException("购票记录不存在或已退票");
+            }
+            if (journal != null) {
+                try {
+                    journal.passengerCancelled(booking.getFlightNumber(), booking.getPassenger(), booking.getSeat());
+                } catch (RuntimeException e) {
+                    indexBooking(booking); // 退票记录没有落盘，恢复购票记录
+                    throw e;
+                }
+            }
+            Booking promoted = flight != null ? freeSeat(flight, booking.getSeat()) : null;
+            updateHasPassenger(booking.getFlightNumber());
+            return promoted;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.CANCEL.stop(start);
+        }
+    }
+
+    /**
+     * 改签：把购票记录从原航班移到新航班，分两个阶段完成，全程不加锁：
+     * 先用CAS在新航班上占用座位，再从索引中取走原购票记录（同一记录只能被取走一次）；
+     * 第二阶段失败时退回第一阶段占用的座位。不会死锁，结束时乘客只占有其中一个航班的座位。
+     * 原航班空出的座位优先分配给候补乘客。
+     *
+     * @param booking 原购票记录
+     * @param newFlight 新航班
+     * @return 新的购票记录，新航班没有可用座位时返回null，此时原购票记录不变
+     * @throws IllegalStateException 原购票记录不存在或已退票、改签时抛出
+     */
+    public Booking rebook(Booking booking, FlightInformation newFlight) {
+        long start = FlightMetrics.REBOOK.start();
+        String oldFlightNumber = booking.getFlightNumber();
+        String newFlightNumber = newFlight.getFlightNumber();
+        if (oldFlightNumber.equals(newFlightNumber)) {
+            throw new IllegalArgumentException("新航班与原航班相同");
+        }
+        FlightInformation oldFlight = flightManager.findFlight(oldFlightNumber);
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            // 第一阶段：在新航班上占用座位
+            int seat = flightManager.reserveSeat(newFlight);
+            if (seat < 0) {
+                return null;
+            }
+            // 第二阶段：取走原购票记录，失败时退回新航班的座位
+            if (!unindexBooking(booking)) {
+                newFlight.releaseSeat(seat);
+                throw new IllegalStateException("购票记录不存在或已退票");
+            }
+            if (journal != null) {
+                try {
+                    journal.passengerRebooked(oldFlightNumber, newFlightNumber, booking.getPassenger(), booking.getSeat(), seat);
+                } catch (RuntimeException e) {
+                    indexBooking(booking); // 改签记录没有落盘，恢复原状
+                    newFlight.releaseSeat(seat);
+                    throw e;
+                }
+            }
+            Booking moved = addBooking(newFlightNumber, booking.getPassenger(), seat);
+            flightManager.setFlightHasPassenger(newFlightNumber, true);
+            if (oldFlight != null) {
+                freeSeat(oldFlight, booking.getSeat());
+            }
+            updateHasPassenger(oldFlightNumber);
+            return moved;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.REBOOK.stop(start);
+        }
+    }
+
+    // 先把空出的座位原样交给候补乘客，避免被新的购票抢走；候补队列为空时才释放座位
+    private Booking freeSeat(FlightInformation flight, int seat) {
+        PriorityBlockingQueue<WaitlistEntry> waitlist = waitlists.get(flight.getFlightNumber());
+        WaitlistEntry next = waitlist != null ? waitlist.poll() : null;
+        if (next != null) {
+            return confirmWaitlisted(waitlist, next, flight, seat);
+        }
+        flight.releaseSeat(seat);
+        List<Booking> late = promoteWaitlist(flight); // 处理退回座位的同时有乘客加入候补的情况
+        return late.isEmpty() ? null : late.get(0);
+    }
+
+    /**
+     * 加入航班的候补队列。加入时航班已有空座位则直接购票。
+     *
+     * @param passenger 乘客信息
+     * @param flight 航班
+     * @param priority 优先级，数值越大越先获得座位
+     * @return 直接购票成功时返回购票记录，否则返回null
+     */
+    public Booking joinWaitlist(PassengerInformation passenger, FlightInformation flight, int priority) {
+        requireValidName(passenger);
+        long start = FlightMetrics.JOIN_WAITLIST.start();
+        String flightNumber = flight.getFlightNumber();
+        waitlists.computeIfAbsent(flightNumber, k -> new PriorityBlockingQueue<>())
+                .add(new WaitlistEntry(nextWaitlistSequence.incrementAndGet(), flightNumber, passenger, priority));
+        FlightJournal journal = this.journal;
+        if (journal != null) {
+            journal.beginUpdate();
+        }
+        try {
+            // 加入队列前后可能有座位被退回，此时立即按优先级分配
+            for (Booking promoted : promoteWaitlist(flight)) {
+                if (promoted.getPassenger() == passenger) {
+                    return promoted;
+                }
+            }
+            return null;
+        } finally {
+            if (journal != null) {
+                journal.endUpdate();
+            }
+            FlightMetrics.JOIN_WAITLIST.stop(start);
+        }
+    }
+
+    /**
+     * 获取有效购票记录的总数
+     *
+     * @return 已售座位数
+     */
+    public long getBookingCount() {
+        if (store != null) {
+            return store.size();
+        }
+        long count = 0;
+        for (Set<Booking> manifest : manifests.values()) {
+            count += manifest.size();
+        }
+        return count;
+    }
+
+    /**
+     * 获取所有航班候补队列的总人数
+     *
+     * @return 候补人数
+     */
+    public long getWaitlistedCount() {
+        long count = 0;
+        for (PriorityBlockingQueue<WaitlistEntry> waitlist : waitlists.values()) {
+            count += waitlist.size();
+        }
+        return count;
+    }
+
+    /**
+     * 获取航班的候补队列长度
+     *
+     * @param flightNumber 航班号
+     * @return 候补人数
+     */
+    public int getWaitlistSize(String flightNumber) {
+        PriorityBlockingQueue<WaitlistEntry> waitlist = waitlists.get(flightNumber);
+        return waitlist != null ? waitlist.size() : 0;
+    }
+
+    // 航班有空座位时依次分配给候补乘客，返回获得座位的乘客的购票记录
+    private List<Booking> promoteWaitlist(FlightInformation flight) {
+        PriorityBlockingQueue<WaitlistEntry> waitlist = waitlists.get(flight.getFlightNumber());
+        List<Booking> promoted = new ArrayList<>();
+        while (waitlist != null && !waitlist.isEmpty()) {
+            int seat = flightManager.reserveSeat(flight);
+            if (seat < 0) {
+                break;
+            }
+            WaitlistEntry next = waitlist.poll();
+            if (next == null) {
+                flight.releaseSeat(seat); // 队列已被其他线程取空
+                break;
+            }
+            promoted.add(confirmWaitlisted(waitlist, next, flight, seat));
+        }
+        return promoted;
+    }
+
+    // 为已从候补队列取出的乘客购票；写日志失败时座位已退回，把乘客放回队列（按原优先级和顺序排队）
+    private Booking confirmWaitlisted(PriorityBlockingQueue<WaitlistEntry> waitlist, WaitlistEntry entry,
+                                      FlightInformation flight, int seat) {
+        try {
+            return confirmBooking(entry.getPassenger(), flight, seat);
+        } catch (RuntimeException e) {
+            waitlist.add(entry);
+            throw e;
+        }
+    }
+
+    // 航班没有乘客时清除有乘客标记；清除后再检查一次，避免与同时进行的购票交错时误清
+    private void updateHasPassenger(String flightNumber) {
+        if (!hasBookings(flightNumber)) {
+            flightManager.setFlightHasPassenger(flightNumber, false);
+            if (hasBookings(flightNumber)) {
+                flightManager.setFlightHasPassenger(flightNumber, true);
+            }
+        }
+    }
+
+    private boolean hasBookings(String flightNumber) {
+        if (store != null) {
+            return store.hasBookings(flightNumber);
+        }
+        Set<Booking> manifest = manifests.get(flightNumber);
+        return manifest != null && !manifest.isEmpty();
+    }
+
+    /**
+     * 从日志恢复购票记录
+     *
+     * @param flightNumber 航班号
+     * @param passenger 乘客信息
+     * @param seat 座位编号，旧日志中没有座位号时为-1，此时由系统分配
+     * @return 恢复成功返回true，航班不存在或没有座位时返回false
+     */
+    public boolean restoreBooking(String flightNumber, PassengerInformation passenger, int seat) {
+        FlightInformation flight = flightManager.findFlight(flightNumber);
+        if (flight == null || !PassengerValidator.isValidName(passenger.getName())) {
+            return false;
+        }
+        if (seat >= 0 && flight.isSeatAvailable(seat)) {
+            return book(passenger, flight, seat) != null;
+        }
+        return book(passenger, flight) != null;
+    }
+
+    /**
+     * 从日志恢复退票记录，不做候补分配（候补乘客获得座位时另有购票记录）。
+     * 同一航班上一个座位只属于一条购票记录，所以按座位找到要退的记录，
+     * 同一联系方式和姓名在航班上有多张机票时也不会退错；旧日志中没有座位号时按联系方式和姓名匹配
+     *
+     * @param flightNumber 航班号
+     * @param passenger 乘客信息
+     * @param seat 退票的购票记录的座位编号，旧日志中没有座位号时为-1
+     * @return 恢复成功返回true，找不到对应的购票记录时返回false
+     */
+    public boolean restoreCancellation(String flightNumber, PassengerInformation passenger, int seat) {
+        for (Booking booking : getManifest(flightNumber)) {
+            PassengerInformation booked = booking.getPassenger();
+            if ((seat < 0 || booking.getSeat() == seat)
+                    && booked.getTelephoneNumber().equals(passenger.getTelephoneNumber())
+                    && booked.getName().equals(passenger.getName()) && unindexBooking(booking)) {
+                FlightInformation flight = flightManager.findFlight(flightNumber);
+                if (flight != null) {
+                    flight.releaseSeat(booking.getSeat());
+                }
+                updateHasPassenger(flightNumber);
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * 从日志恢复改签记录，不做候补分配。
+     * 与改签相同，先在新航班上占用座位再取走原购票记录，任一步失败时乘客保留原来的机票
+     *
+     * @param oldFlightNumber 原航班号
+     * @param newFlightNumber 新航班号
+     * @param passenger 乘客信息
+     * @param oldSeat 原购票记录的座位编号，用于找到原购票记录（见 restoreCancellation），旧日志中为-1
+     * @param seat 新航班的座位编号，旧日志中没有座位号时为-1
+     * @return 恢复成功返回true，新航班不存在或没有座位、找不到原购票记录时返回false
+     */
+    public boolean restoreRebooking(String oldFlightNumber, String newFlightNumber, PassengerInformation passenger,
+                                    int oldSeat, int seat) {
+        FlightInformation newFlight = flightManager.findFlight(newFlightNumber);
+        if (newFlight == null || !PassengerValidator.isValidName(passenger.getName())) {
+            return false;
+        }
+        int reserved = seat >= 0 && newFlight.isSeatAvailable(seat) && newFlight.reserveSeat(seat)
+                ? seat : flightManager.reserveSeat(newFlight);
+        if (reserved < 0) {
+            return false;
+        }
+        if (!restoreCancellation(oldFlightNumber, passenger, oldSeat)) {
+            newFlight.releaseSeat(reserved);
+            return false;
+        }
+        addBooking(newFlightNumber, passenger, reserved);
+        flightManager.setFlightHasPassenger(newFlightNumber, true);
+        return true;
+    }
+
+    // 登记新的购票记录：对象模式下分配购票序号并加入索引；堆外存储模式下写入存储，序号由存储分配。
+    // 返回的记录引用调用方传入的乘客对象，加入候补时据此认出自己的购票记录
+    private Booking addBooking(String flightNumber, PassengerInformation passenger, int seat) {
+        if (store != null) {
+            return new Booking(store.add(flightNumber, passenger, seat), flightNumber, passenger, seat);
+        }
+        Booking booking = new Booking(nextBookingId.incrementAndGet(), flightNumber, passenger, seat);
+        indexBooking(booking);
+        return booking;
+    }
+
+    // 把购票记录加入航班乘客名单和联系方式索引，两个索引都是并发集合，同时购票时不会丢失记录。
+    // 乘客名单是退票、改签时取走记录的依据，所以最后加入：记录一旦出现在名单中，联系方式索引里也已经有它。
+    // 堆外存储模式下只用于日志写入失败时恢复已取走的记录
+    private void indexBooking(Booking booking) {
+        if (store != null) {
+            store.restore(booking.getId());
+            return;
+        }
+        bookingsByPhone.computeIfAbsent(booking.getPassenger().getTelephoneNumber(), k -> ConcurrentHashMap.newKeySet())
+                .add(booking);
+        manifests.computeIfAbsent(booking.getFlightNumber(), k -> ConcurrentHashMap.newKeySet()).add(booking);
+    }
+
+    // 从两个索引中移除购票记录，同一记录并发退票时只有一次返回true
+    private boolean unindexBooking(Booking booking) {
+        if (store != null) {
+            return store.remove(booking.getId());
+        }
+        Set<Booking> manifest = manifests.get(booking.getFlightNumber());
+        if (manifest == null || !manifest.remove(booking)) {
+            return false;
+        }
+        Set<Booking> byPhone = bookingsByPhone.get(booking.getPassenger().getTelephoneNumber());
+        if (byPhone != null) {
+            byPhone.remove(booking);
+        }
+        return true;
+    }
+
+    /**
+     * 关联快照，载入快照中的购票记录并建立索引。应在重放日志之前调用。
+     *
+     * @param snapshot 快照
+     */
+    public void attachSnapshot(FlightSnapshot snapshot) {
+        snapshot.loadBookings(this::addBooking);
+    }
+
+    /**
+     * 设置预写日志，之后每次购票都会先写入日志。
+     * 从日志恢复数据时应在重放完成后再设置，避免重复写入。
+     *
+     * @param journal 预写日志，为null时不记录
+     */
+    public void setJournal(FlightJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 设置邮件发送管道，为null时不发送邮件
+     *
+     * @param mailDispatcher 邮件发送管道
+     */
+    public void setMailDispatcher(MailDispatcher mailDispatcher) {
+        this.mailDispatcher = mailDispatcher;
     }
 
     private String selectOption(String[] options, String prompt) {
@@ -171,14 +919,81 @@ public class PassengerManager {
         }
     }
 
+    /**
+     * 获取航班的乘客名单
+     *
+     * @param flightNumber 航班号
+     * @return 该航班的购票记录，按购票先后排列
+     */
+    public List<Booking> getManifest(String flightNumber) {
+        if (store != null) {
+            return store.manifest(flightNumber);
+        }
+        return sorted(manifests.get(flightNumber));
+    }
+
+    /**
+     * 按联系方式查找购票记录
+     *
+     * @param telephoneNumber 联系方式
+     * @return 该号码的购票记录，按购票先后排列
+     */
+    public List<Booking> findBookingsByPhone(String telephoneNumber) {
+        if (store != null) {
+            return store.findByPhone(telephoneNumber);
+        }
+        return sorted(bookingsByPhone.get(telephoneNumber));
+    }
+
+    // 获取全部购票记录，按购票先后排列
+    public List<Booking> getBookings() {
+        List<Booking> all = new ArrayList<>();
+        if (store != null) {
+            store.forEach(all::add);
+            return all;
+        }
+        for (Set<Booking> manifest : manifests.values()) {
+            all.addAll(manifest);
+        }
+        all.sort(Comparator.comparingLong(Booking::getId));
+        return all;
+    }
+
+    /**
+     * 按购票先后依次访问全部购票记录。堆外存储模式下逐条生成视图，不需要一次性把全部记录放到堆上。
+     *
+     * @param action 访问操作
+     */
+    public void forEachBooking(Consumer<? super Booking> action) {
+        if (store != null) {
+            store.forEach(action);
+        } else {
+            getBookings().forEach(action);
+        }
+    }
+
+    private static List<Booking> sorted(Set<Booking> bookings) {
+        if (bookings == null) {
+            return new ArrayList<>();
+        }
+        List<Booking> result = new ArrayList<>(bookings);
+        result.sort(Comparator.comparingLong(Booking::getId));
+        return result;
+    }
+
     // 获取所有乘客信息
     public List<PassengerInformation> getPassengers() {
-        return passengers;
+        List<Booking> bookings = getBookings();
+        List<PassengerInformation> all = new ArrayList<>(bookings.size());
+        for (Booking booking : bookings) {
+            all.add(booking.getPassenger());
+        }
+        return all;
     }
 
     // 打印所有乘客信息
     public void printPassengers() {
-        for (PassengerInformation passenger : passengers) {
+        for (PassengerInformation passenger : getPassengers()) {
             System.out.println(passenger);
         }
     }
@@ -0,0 +1,55 @@
+package Passenger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+// 乘客字段校验类，控制台录入和网络请求共用同一套规则
+public class PassengerValidator {
+    private static final Pattern TELEPHONE_NUMBER_PATTERN = Pattern.compile("\\d{11}");
+    public static final int MAX_LUGGAGE_WEIGHT = 100;
+    public static final int MAX_NAME_BYTES = 63; // 快照中姓名字段为64字节，含1字节长度前缀
+
+    private PassengerValidator() {
+    }
+
+    /**
+     * 验证姓名不为空，且按UTF-8编码不超过63字节（约21个汉字），超长的姓名无法写入快照
+     *
+     * @param name 姓名
+     * @return 合法返回true
+     */
+    public static boolean isValidName(String name) {
+        return name != null && !name.trim().isEmpty()
+                && name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES;
+    }
+
+    /**
+     * 验证性别是否为“男”或“女”
+     *
+     * @param gender 性别
+     * @return 合法返回true
+     */
+    public static boolean isValidGender(String gender) {
+        return "男".equals(gender) || "女".equals(gender);
+    }
+
+    /**
+     * 验证行李重量是否在0到100kg之间
+     *
+     * @param weightOfLuggage 行李重量（kg）
+     * @return 合法返回true
+     */
+    public static boolean isValidLuggageWeight(int weightOfLuggage) {
+        return weightOfLuggage >= 0 && weightOfLuggage <= MAX_LUGGAGE_WEIGHT;
+    }
+
+    /**
+     * 验证联系方式是否为11位数字
+     *
+     * @param telephoneNumber 联系方式
+     * @return 合法返回true
+     */
+    public static boolean isValidTelephoneNumber(String telephoneNumber) {
+        return telephoneNumber != null && TELEPHONE_NUMBER_PATTERN.matcher(telephoneNumber).matches();
+    }
+}
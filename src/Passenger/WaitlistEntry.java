@@ -0,0 +1,36 @@
+package Passenger;
+
+// 候补记录：优先级高的先获得座位，优先级相同时先登记的先获得座位
+public class WaitlistEntry implements Comparable<WaitlistEntry> {
+    private final long sequence; // 登记序号
+    private final String flightNumber;
+    private final PassengerInformation passenger;
+    private final int priority;
+
+    WaitlistEntry(long sequence, String flightNumber, PassengerInformation passenger, int priority) {
+        this.sequence = sequence;
+        this.flightNumber = flightNumber;
+        this.passenger = passenger;
+        this.priority = priority;
+    }
+
+    public String getFlightNumber() {
+        return flightNumber;
+    }
+
+    public PassengerInformation getPassenger() {
+        return passenger;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public int compareTo(WaitlistEntry other) {
+        if (priority != other.priority) {
+            return Integer.compare(other.priority, priority);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
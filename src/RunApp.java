@@ -1,11 +1,200 @@
+import Flight.FlightInformation;
 import Flight.FlightManager;
+import Flight.FlightValidator;
+import Flight.PricingEngine;
+import Mail.MailDispatcher;
+import Mail.SmtpMailTransport;
+import Metrics.FlightMetrics;
+import Passenger.OffHeapPassengerStore;
 import Passenger.PassengerManager;
+import Server.FlightProtocol;
+import Server.FlightServer;
+import Server.ShardMap;
+import Server.ShardRouter;
+import Storage.FlightJournal;
+import Storage.FlightSnapshot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class RunApp {
-    public static void main(String[] args) {
+    /**
+     * 默认显示控制台菜单；以 --server [端口] 启动时进入服务模式，通过网络处理请求，不读取控制台。
+     * 分片部署时每个分片以 -Dflightapp.shard=序号/分片数 加 --server 启动，各用自己的快照和日志文件；
+     * 再以 --router 端口 主机:端口,主机:端口,... 启动路由器，地址按分片序号排列。
+     */
+    public static void main(String[] args) throws IOException {
+        // 指定了机场数据文件时先检查，航班类首次访问时才从文件加载机场网络（格式见 Flight.AirportNetwork）
+        String airports = System.getProperty("flightapp.airports");
+        if (airports != null && !airports.isEmpty()) {
+            try {
+                FlightValidator.checkAirportData(Paths.get(airports));
+            } catch (NoSuchFileException e) {
+                System.out.println("无法加载机场数据 " + airports + ": 文件不存在");
+                System.exit(1);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("无法加载机场数据 " + airports + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (args.length > 0 && args[0].equals("--router")) {
+            runRouter(args);
+            return;
+        }
+        boolean serverMode = args.length > 0 && args[0].equals("--server");
+        CountDownLatch finished = new CountDownLatch(1); // 服务模式下关闭钩子等待快照写完
         FlightManager flightManager = new FlightManager();
-        PassengerManager passengerManager = new PassengerManager(flightManager); // 传递相同的 FlightManager 实例
-        Menu menu = new Menu(passengerManager, flightManager);
-        menu.handleUserChoice();
+        // 设置 -Dflightapp.offHeapPassengers=true 时购票记录保存在堆外，适用于千万级购票记录
+        PassengerManager passengerManager = Boolean.getBoolean("flightapp.offHeapPassengers")
+                ? new PassengerManager(flightManager, new OffHeapPassengerStore())
+                : new PassengerManager(flightManager); // 传递相同的 FlightManager 实例
+        FlightMetrics.registerMBeans(flightManager, passengerManager); // 通过JMX查看各操作的耗时和座位库存
+
+        if (airports != null && !airports.isEmpty()) {
+            System.out.println("已加载机场数据: " + airports + "，共 " + FlightInformation.getAllowedAirports().length + " 个机场");
+        }
+
+        // 指定了定价规则文件时按规则动态定价，文件修改后自动重新加载
+        String pricingRules = System.getProperty("flightapp.pricing.rules");
+        if (pricingRules != null && !pricingRules.isEmpty()) {
+            PricingEngine.watch(Paths.get(pricingRules), Long.getLong("flightapp.pricing.reloadSeconds", 5));
+            System.out.println("已加载定价规则: " + PricingEngine.getRulesSource());
+        }
+
+        // 打开快照（只做内存映射，航班在访问时才加载），再重放快照之后的日志
+        Path snapshotPath = Paths.get(System.getProperty("flightapp.snapshot", "flightapp.snapshot"));
+        FlightSnapshot snapshot = FlightSnapshot.open(snapshotPath);
+        if (snapshot != null) {
+            flightManager.attachSnapshot(snapshot);
+            passengerManager.attachSnapshot(snapshot);
+            System.out.println("已打开快照，包含 " + snapshot.getFlightCount() + " 个航班和 " + snapshot.getPassengerCount() + " 名乘客。");
+        }
+
+        // 从预写日志恢复航班和购票记录，恢复完成后再关联日志
+        Path journalPath = Paths.get(System.getProperty("flightapp.journal", "flightapp.journal"));
+        long snapshotGeneration = snapshot != null ? snapshot.getGeneration() : 0;
+        long replayed = FlightJournal.replay(journalPath, snapshotGeneration, flightManager, passengerManager);
+        if (replayed > 0) {
+            System.out.println("已从日志恢复 " + replayed + " 条记录。");
+        }
+
+        try (FlightJournal journal = FlightJournal.open(journalPath, snapshotGeneration)) {
+            flightManager.setJournal(journal);
+            passengerManager.setJournal(journal);
+
+            // 定期写快照并截断日志
+            long snapshotIntervalMinutes = Long.getLong("flightapp.snapshotIntervalMinutes", 10);
+            ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "flight-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    FlightSnapshot.checkpoint(snapshotPath, journal, flightManager, passengerManager);
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("写入快照失败: " + e.getMessage());
+                }
+            }, snapshotIntervalMinutes, snapshotIntervalMinutes, TimeUnit.MINUTES);
+
+            // 配置了SMTP服务器时才启用邮件发送
+            MailDispatcher mailDispatcher = createMailDispatcher();
+            passengerManager.setMailDispatcher(mailDispatcher);
+
+            if (serverMode) {
+                runServer(args, flightManager, passengerManager, finished);
+            } else {
+                Menu menu = new Menu(passengerManager, flightManager);
+                menu.handleUserChoice();
+            }
+
+            if (mailDispatcher != null) {
+                mailDispatcher.close(); // 等待队列中的邮件发送完成
+            }
+
+            snapshotScheduler.shutdownNow();
+            FlightSnapshot.checkpoint(snapshotPath, journal, flightManager, passengerManager);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    // 服务模式：按 Ctrl+C 后停止接受请求，返回后照常写快照
+    private static void runServer(String[] args, FlightManager flightManager, PassengerManager passengerManager,
+                                  CountDownLatch finished) throws IOException {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : FlightServer.DEFAULT_PORT;
+        String address = System.getProperty("flightapp.server.address");
+        CountDownLatch stopRequested = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopRequested.countDown();
+            try {
+                finished.await(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "flight-server-shutdown"));
+
+        // 作为分片运行时只接受出发地属于本分片的航班
+        String shard = System.getProperty("flightapp.shard");
+        FlightProtocol protocol;
+        if (shard != null && !shard.isEmpty()) {
+            String[] parts = shard.split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("flightapp.shard 的格式应为 序号/分片数: " + shard);
+            }
+            protocol = new FlightProtocol(flightManager, passengerManager,
+                    new ShardMap(Integer.parseInt(parts[1])), Integer.parseInt(parts[0]));
+            System.out.println("作为分片 " + shard + " 运行。");
+        } else {
+            protocol = new FlightProtocol(flightManager, passengerManager);
+        }
+
+        try (FlightServer server = new FlightServer(protocol, address != null ? InetAddress.getByName(address) : null, port)) {
+            System.out.println("航班服务已启动，端口 " + server.getPort() + "，按 Ctrl+C 退出。");
+            stopRequested.await();
+            System.out.println("正在停止航班服务，已处理 " + server.getAcceptedConnections() + " 个连接。");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 路由模式：不保存数据，把请求转发给各分片
+    private static void runRouter(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("用法: java RunApp --router 端口 主机:端口,主机:端口,...");
+            return;
+        }
+        int port = Integer.parseInt(args[1]);
+        String address = System.getProperty("flightapp.server.address");
+        CountDownLatch stopRequested = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(stopRequested::countDown, "flight-router-shutdown"));
+
+        try (ShardRouter router = new ShardRouter(ShardRouter.parseAddresses(args[2]));
+             FlightServer server = new FlightServer(router, address != null ? InetAddress.getByName(address) : null, port)) {
+            System.out.println("分片路由已启动，端口 " + server.getPort() + "，共 " + router.getShardCount() + " 个分片，按 Ctrl+C 退出。");
+            stopRequested.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MailDispatcher createMailDispatcher() {
+        String host = System.getProperty("flightapp.smtp.host");
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        SmtpMailTransport transport = new SmtpMailTransport(host,
+                Integer.getInteger("flightapp.smtp.port", 25),
+                System.getProperty("flightapp.smtp.user"),
+                System.getProperty("flightapp.smtp.password"),
+                System.getProperty("flightapp.mail.from", "flightapp@localhost"));
+        return new MailDispatcher(transport, Integer.getInteger("flightapp.mail.workers", 2));
     }
 }
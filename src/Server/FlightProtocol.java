@@ -0,0 +1,339 @@
+package Server;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Flight.FlightPage;
+import Flight.FlightValidator;
+import Metrics.FlightMetrics;
+import Passenger.Booking;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+import Passenger.PassengerValidator;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Locale;
+
+/**
+ * 文本行协议：每个请求一行，字段以空格分隔，每个请求对应一行响应。
+ * 成功时响应以 OK 开头，失败时为 “ERR 原因”。时间写作 yyyy-MM-ddTHH:mm。
+ * <pre>
+ * PING                                                   -&gt; PONG
+ * SEARCH 出发地 目的地 [from=时间] [to=时间] [limit=n] [cursor=游标]
+ *                                                        -&gt; OK 航班数 下一页游标(没有时为-) 航班|航班|...
+ * QUOTE 航班号                                            -&gt; OK 航班号 票价 余座
+ * BOOK 航班号 联系方式 性别 行李重量 姓名                    -&gt; OK 购票编号 航班号 座位号
+ * BOOKINGS 联系方式                                       -&gt; OK 记录数 购票编号,航班号|...
+ * CANCEL 联系方式 购票编号                                 -&gt; OK 购票编号
+ * REBOOK 联系方式 购票编号 新航班号                          -&gt; OK 新购票编号 新航班号 座位号
+ * ADD 航班号,出发地,目的地,出发时间,机型,座位数|...            -&gt; OK 登记的航班数
+ * SHARD                                                  -&gt; OK 分片序号 分片数
+ * QUIT                                                   -&gt; BYE
+ * </pre>
+ * 航班的格式为 航班号,出发地,目的地,出发时间,机型,余座,票价。
+ * ADD 一次登记多个航班，先校验全部航班，有一个不合法时都不登记。
+ * 处理过程不读写控制台，可以被任意多个连接同时调用。
+ * <p>
+ * 作为分片运行时（见 ShardMap）只接受出发地属于本分片的查询和新航班，其余请求由 ShardRouter 转发到其他分片。
+ */
+public class FlightProtocol implements RequestHandler {
+    public static final String QUIT = "QUIT";
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 200;
+
+    private final FlightManager flightManager;
+    private final PassengerManager passengerManager;
+    private final ShardMap shardMap; // 不分片时为null
+    private final int shardIndex;
+
+    public FlightProtocol(FlightManager flightManager, PassengerManager passengerManager) {
+        this(flightManager, passengerManager, null, 0);
+    }
+
+    /**
+     * 作为分片运行
+     *
+     * @param shardMap 分片划分，为null时不分片
+     * @param shardIndex 本分片的序号
+     */
+    public FlightProtocol(FlightManager flightManager, PassengerManager passengerManager, ShardMap shardMap, int shardIndex) {
+        if (shardMap != null && (shardIndex < 0 || shardIndex >= shardMap.getShardCount())) {
+            throw new IllegalArgumentException("分片序号必须在0到" + (shardMap.getShardCount() - 1) + "之间: " + shardIndex);
+        }
+        this.flightManager = flightManager;
+        this.passengerManager = passengerManager;
+        this.shardMap = shardMap;
+        this.shardIndex = shardIndex;
+    }
+
+    /**
+     * 处理一行请求
+     *
+     * @param line 请求
+     * @return 响应，不含换行符
+     */
+    @Override
+    public String handle(String line) {
+        long start = FlightMetrics.SERVER_REQUEST.start();
+        try {
+            String[] fields = line.trim().split(" +");
+            switch (fields[0].toUpperCase(Locale.ROOT)) {
+                case "PING":
+                    return "PONG";
+                case "SEARCH":
+                    return search(fields);
+                case "QUOTE":
+                    return quote(fields);
+                case "BOOK":
+                    return book(fields);
+                case "BOOKINGS":
+                    return bookings(fields);
+                case "CANCEL":
+                    return cancel(fields);
+                case "REBOOK":
+                    return rebook(fields);
+                case "ADD":
+                    return add(fields);
+                case "SHARD":
+                    return "OK " + shardIndex + " " + (shardMap != null ? shardMap.getShardCount() : 1);
+                case QUIT:
+                    return "BYE";
+                default:
+                    return "ERR 未知命令: " + fields[0];
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return "ERR " + e.getMessage();
+        } catch (RuntimeException e) {
+            return "ERR 服务器内部错误: " + e;
+        } finally {
+            FlightMetrics.SERVER_REQUEST.stop(start);
+        }
+    }
+
+    private String search(String[] fields) {
+        requireFields(fields, 3, "SEARCH 出发地 目的地 [from=时间] [to=时间] [limit=n] [cursor=游标]");
+        String departure = fields[1];
+        String destination = fields[2];
+        requireOwnedDeparture(departure);
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        int limit = DEFAULT_PAGE_SIZE;
+        String cursor = null;
+        for (int i = 3; i < fields.length; i++) {
+            int separator = fields[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("参数格式应为 名称=值: " + fields[i]);
+            }
+            String name = fields[i].substring(0, separator);
+            String value = fields[i].substring(separator + 1);
+            switch (name) {
+                case "from":
+                    from = parseTime(value);
+                    break;
+                case "to":
+                    to = parseTime(value);
+                    break;
+                case "limit":
+                    limit = parseInt(value, "limit");
+                    if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                        throw new IllegalArgumentException("limit 必须在1到" + MAX_PAGE_SIZE + "之间");
+                    }
+                    break;
+                case "cursor":
+                    cursor = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知参数: " + name);
+            }
+        }
+        if ((from == null) != (to == null)) {
+            throw new IllegalArgumentException("from 和 to 必须同时指定");
+        }
+        FlightPage page = from != null
+                ? flightManager.searchFlightsPage(departure, destination, from, to, cursor, limit)
+                : flightManager.searchFlightsPage(departure, destination, cursor, limit);
+
+        List<FlightInformation> flights = page.getFlights();
+        StringBuilder response = new StringBuilder(32 + flights.size() * 96);
+        response.append("OK ").append(flights.size()).append(' ').append(page.hasMore() ? page.getNextCursor() : "-").append(' ');
+        for (int i = 0; i < flights.size(); i++) {
+            if (i > 0) {
+                response.append('|');
+            }
+            appendFlight(response, flights.get(i));
+        }
+        return response.toString();
+    }
+
+    private String quote(String[] fields) {
+        requireFields(fields, 2, "QUOTE 航班号");
+        FlightInformation flight = requireFlight(fields[1]);
+        return "OK " + flight.getFlightNumber() + " " + flight.calculatePrice() + " " + flight.getAvailableSeats();
+    }
+
+    private String book(String[] fields) {
+        requireFields(fields, 6, "BOOK 航班号 联系方式 性别 行李重量 姓名");
+        FlightInformation flight = requireFlight(fields[1]);
+        String telephoneNumber = fields[2];
+        String gender = fields[3];
+        int weightOfLuggage = parseInt(fields[4], "行李重量");
+        if (!PassengerValidator.isValidTelephoneNumber(telephoneNumber)) {
+            throw new IllegalArgumentException("手机号码格式不正确");
+        }
+        if (!PassengerValidator.isValidGender(gender)) {
+            throw new IllegalArgumentException("性别格式不正确");
+        }
+        if (!PassengerValidator.isValidLuggageWeight(weightOfLuggage)) {
+            throw new IllegalArgumentException("行李重量超出范围");
+        }
+        String name = String.join(" ", List.of(fields).subList(5, fields.length));
+        if (!PassengerValidator.isValidName(name)) {
+            throw new IllegalArgumentException("姓名不能超过" + PassengerValidator.MAX_NAME_BYTES + "字节");
+        }
+        Booking booking = passengerManager.book(new PassengerInformation(name, gender, weightOfLuggage, telephoneNumber), flight);
+        if (booking == null) {
+            return "ERR 该航班没有可用座位";
+        }
+        return "OK " + booking.getId() + " " + booking.getFlightNumber() + " " + flight.getSeatLabel(booking.getSeat());
+    }
+
+    private String bookings(String[] fields) {
+        requireFields(fields, 2, "BOOKINGS 联系方式");
+        List<Booking> bookings = passengerManager.findBookingsByPhone(fields[1]);
+        StringBuilder response = new StringBuilder(16 + bookings.size() * 24);
+        response.append("OK ").append(bookings.size()).append(' ');
+        for (int i = 0; i < bookings.size(); i++) {
+            if (i > 0) {
+                response.append('|');
+            }
+            response.append(bookings.get(i).getId()).append(',').append(bookings.get(i).getFlightNumber());
+        }
+        return response.toString();
+    }
+
+    private String cancel(String[] fields) {
+        requireFields(fields, 3, "CANCEL 联系方式 购票编号");
+        Booking booking = requireBooking(fields[1], fields[2]);
+        passengerManager.cancelBooking(booking);
+        return "OK " + booking.getId();
+    }
+
+    private String rebook(String[] fields) {
+        requireFields(fields, 4, "REBOOK 联系方式 购票编号 新航班号");
+        Booking booking = requireBooking(fields[1], fields[2]);
+        FlightInformation newFlight = requireFlight(fields[3]);
+        Booking moved = passengerManager.rebook(booking, newFlight);
+        if (moved == null) {
+            return "ERR 新航班没有可用座位";
+        }
+        return "OK " + moved.getId() + " " + moved.getFlightNumber() + " " + newFlight.getSeatLabel(moved.getSeat());
+    }
+
+    private String add(String[] fields) {
+        requireFields(fields, 2, "ADD 航班号,出发地,目的地,出发时间,机型,座位数|...");
+        String[] records = fields[1].split("\\|");
+        List<FlightInformation> batch = new ArrayList<>(records.length);
+        Set<String> flightNumbers = new HashSet<>();
+        for (String record : records) {
+            String[] values = record.split(",");
+            if (values.length != 6) {
+                throw new IllegalArgumentException("航班格式应为 航班号,出发地,目的地,出发时间,机型,座位数: " + record);
+            }
+            String flightNumber = values[0];
+            if (!FlightValidator.isValidFlightNumber(flightNumber)) {
+                throw new IllegalArgumentException("航班号必须是6位数字: " + flightNumber);
+            }
+            if (!flightNumbers.add(flightNumber) || flightManager.findFlight(flightNumber) != null) {
+                throw new IllegalArgumentException("航班号已存在: " + flightNumber);
+            }
+            requireOwnedDeparture(values[1]);
+            if (values[1].equals(values[2])) {
+                throw new IllegalArgumentException("起飞地和目的地不能相同: " + record);
+            }
+            String departureTime = parseTime(values[3]).format(FlightValidator.DEPARTURE_TIME_FORMAT);
+            if (!FlightValidator.isValidAircraftType(values[4])) {
+                throw new IllegalArgumentException("飞机型号无效: " + values[4]);
+            }
+            int seats = parseInt(values[5], "座位数");
+            if (seats <= 0) {
+                throw new IllegalArgumentException("座位数必须为正整数: " + values[5]);
+            }
+            batch.add(new FlightInformation(flightNumber, values[1], values[2], departureTime, values[4], seats));
+        }
+        flightManager.registerFlights(batch);
+        return "OK " + batch.size();
+    }
+
+    // 作为分片运行时，出发地必须属于本分片
+    private void requireOwnedDeparture(String departure) {
+        if (shardMap != null && shardMap.shardOf(departure) != shardIndex) {
+            throw new IllegalArgumentException("出发地不属于分片" + shardIndex + ": " + departure);
+        }
+    }
+
+    private static void requireFields(String[] fields, int count, String usage) {
+        if (fields.length < count) {
+            throw new IllegalArgumentException("用法: " + usage);
+        }
+    }
+
+    private FlightInformation requireFlight(String flightNumber) {
+        if (!FlightValidator.isValidFlightNumber(flightNumber)) {
+            throw new IllegalArgumentException("航班号必须是6位数字");
+        }
+        FlightInformation flight = flightManager.findFlight(flightNumber);
+        if (flight == null) {
+            throw new IllegalArgumentException("航班不存在: " + flightNumber);
+        }
+        return flight;
+    }
+
+    // 按联系方式和购票编号查找购票记录，联系方式不匹配时视为不存在
+    private Booking requireBooking(String telephoneNumber, String bookingId) {
+        long id = parseLong(bookingId, "购票编号");
+        for (Booking booking : passengerManager.findBookingsByPhone(telephoneNumber)) {
+            if (booking.getId() == id) {
+                return booking;
+            }
+        }
+        throw new IllegalArgumentException("购票记录不存在: " + bookingId);
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        try {
+            return FlightValidator.parseDepartureTime(value.replace('T', ' '));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("时间格式应为 yyyy-MM-ddTHH:mm: " + value);
+        }
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "必须是整数: " + value);
+        }
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "必须是整数: " + value);
+        }
+    }
+
+    private static void appendFlight(StringBuilder response, FlightInformation flight) {
+        response.append(flight.getFlightNumber()).append(',')
+                .append(flight.getDeparture()).append(',')
+                .append(flight.getDestination()).append(',')
+                .append(flight.getDepartureTime()).append(',')
+                .append(flight.getAircraftType()).append(',')
+                .append(flight.getAvailableSeats()).append(',')
+                .append(flight.calculatePrice());
+    }
+}
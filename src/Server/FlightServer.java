@@ -0,0 +1,177 @@
+package Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 航班服务：监听TCP端口，按 FlightProtocol 逐行处理请求；分片部署时也用于运行 ShardRouter。
+ * <p>
+ * 每个连接由一个虚拟线程处理，阻塞读写只挂起虚拟线程而不占用平台线程，
+ * 几万个同时在线的连接只需要几个平台线程和每个连接几KB的内存。
+ * 客户端可以连续发送多个请求而不等待响应，响应按请求顺序返回。
+ */
+public class FlightServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int BACKLOG = 4096;
+    private static final int MAX_LINE_BYTES = 8192;
+    private static final int IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000; // 空闲超过5分钟的连接自动关闭
+
+    private final RequestHandler handler;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final Thread acceptThread;
+
+    /**
+     * @param handler 请求处理，通常为 FlightProtocol
+     * @param address 监听地址，为null时只监听本机回环地址
+     * @param port 端口，为0时由系统分配
+     */
+    public FlightServer(RequestHandler handler, InetAddress address, int port) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(address != null ? address : InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.acceptThread = new Thread(this::acceptLoop, "flight-server-accept");
+        acceptThread.start();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return; // 服务已关闭
+            }
+            acceptedConnections.increment();
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RuntimeException e) {
+                closeQuietly(socket); // 服务正在关闭，不再接受连接
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        openSockets.add(socket);
+        activeConnections.incrementAndGet();
+        try (socket) {
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 1024);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 4096);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            while (true) {
+                String request = readLine(in, line, MAX_LINE_BYTES);
+                if (request == null) {
+                    return;
+                }
+                if (request.isBlank()) {
+                    continue;
+                }
+                String response = handler.handle(request);
+                out.write(response.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+                // 客户端已发来的后续请求处理完再一起发送
+                if (in.available() == 0) {
+                    out.flush();
+                }
+                if (response.equals("BYE")) {
+                    out.flush();
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException | SocketException e) {
+            // 连接空闲超时或被客户端断开
+        } catch (IOException e) {
+            // 读写失败，关闭连接
+        } finally {
+            openSockets.remove(socket);
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * 读取一行（UTF-8，以\n结尾，忽略\r），超过 maxBytes 时视为非法请求
+     *
+     * @return 一行，连接已关闭时返回null
+     */
+    static String readLine(InputStream in, ByteArrayOutputStream buffer, int maxBytes) throws IOException {
+        buffer.reset();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                return buffer.toString(StandardCharsets.UTF_8);
+            }
+            if (b != '\r') {
+                if (buffer.size() >= maxBytes) {
+                    throw new IOException("一行超过 " + maxBytes + " 字节");
+                }
+                buffer.write(b);
+            }
+        }
+        return buffer.size() > 0 ? buffer.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // 当前连接数
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    // 累计接受的连接数
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    /**
+     * 停止接受新连接，关闭现有连接并等待处理中的请求结束
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        try {
+            acceptThread.join();
+            for (Socket socket : openSockets) {
+                closeQuietly(socket);
+            }
+            connections.shutdown();
+            connections.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 连接已断开
+        }
+    }
+}
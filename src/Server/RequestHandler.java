@@ -0,0 +1,14 @@
+package Server;
+
+/**
+ * 处理一行文本请求，由 FlightServer 在各连接的线程中调用，实现必须是线程安全的
+ */
+public interface RequestHandler {
+    /**
+     * 处理一行请求
+     *
+     * @param request 请求，不含换行符
+     * @return 响应，不含换行符；返回 BYE 时服务器在发送后关闭连接
+     */
+    String handle(String request);
+}
@@ -0,0 +1,66 @@
+package Server;
+
+import Flight.FlightInformation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 分片部署时航班到分片的划分：按出发地机场的序号对分片数取模，同一出发地的全部航班在同一个分片上，
+ * 所以按航线查询、按航班号购票和同航线改签都只涉及一个分片。
+ * <p>
+ * 各分片的购票编号各自递增，路由器对外使用的全局编号为 本地编号 * 分片数 + 分片序号，
+ * 由全局编号即可确定购票记录所在的分片。
+ */
+public final class ShardMap {
+    private final int shardCount;
+    private final Map<String, Integer> shardOfAirport = new HashMap<>();
+
+    /**
+     * @param shardCount 分片数
+     */
+    public ShardMap(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("分片数必须为正整数: " + shardCount);
+        }
+        this.shardCount = shardCount;
+        String[] airports = FlightInformation.getAllowedAirports();
+        for (int i = 0; i < airports.length; i++) {
+            shardOfAirport.put(airports[i], i % shardCount);
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 出发地所在的分片
+     *
+     * @param departure 出发地
+     * @return 分片序号
+     * @throws IllegalArgumentException 不是允许的机场时抛出
+     */
+    public int shardOf(String departure) {
+        Integer shard = shardOfAirport.get(departure);
+        if (shard == null) {
+            throw new IllegalArgumentException("Invalid departure airport: " + departure);
+        }
+        return shard;
+    }
+
+    // 分片上的购票编号转换为全局编号
+    public long globalBookingId(int shard, long localId) {
+        return localId * shardCount + shard;
+    }
+
+    // 全局购票编号所在的分片
+    public int shardOfBooking(long globalId) {
+        return (int) (globalId % shardCount);
+    }
+
+    // 全局购票编号在分片上的编号
+    public long localBookingId(long globalId) {
+        return globalId / shardCount;
+    }
+}
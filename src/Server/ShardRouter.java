@@ -0,0 +1,431 @@
+package Server;
+
+import Flight.FlightValidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 分片部署的路由器：对客户端提供与 FlightProtocol 相同的文本协议，把请求转发给拥有数据的分片。
+ * <p>
+ * 每个分片是一个独立的JVM进程（以 -Dflightapp.shard=序号/分片数 启动的服务模式），
+ * 航班按出发地划分到分片上（见 ShardMap）：
+ * <ul>
+ * <li>SEARCH 按出发地直接转发到一个分片</li>
+ * <li>QUOTE、BOOK 按航班号转发。航班号看不出出发地，第一次访问时同时询问所有分片，记住所在的分片</li>
+ * <li>BOOKINGS 同时询问所有分片后合并结果，CANCEL 由全局购票编号确定分片</li>
+ * <li>REBOOK 只支持同一分片内的改签（同一出发地的航班总在同一分片上）</li>
+ * <li>ADD 按出发地拆分后同时发给各分片，每个分片上的部分各自整体成功或失败</li>
+ * </ul>
+ * 到每个分片保持一组长连接，同时询问多个分片时先向各分片发出请求再依次读取响应，不需要额外的线程。
+ */
+public class ShardRouter implements RequestHandler, Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final int MAX_RESPONSE_BYTES = 1 << 20;
+    private static final int MAX_IDLE_CONNECTIONS = 64; // 每个分片最多保留的空闲连接
+    private static final String FLIGHT_NOT_FOUND = "ERR 航班不存在";
+
+    private final ShardMap shardMap;
+    private final Shard[] shards;
+    private final Map<String, Integer> ownerOfFlight = new ConcurrentHashMap<>(); // 航班号 -> 所在分片
+
+    // 到一个分片的长连接
+    private static final class ShardConnection implements Closeable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+        ShardConnection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                in = new BufferedInputStream(socket.getInputStream(), 8192);
+                out = new BufferedOutputStream(socket.getOutputStream(), 1024);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        void send(String request) throws IOException {
+            out.write(request.getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+            out.flush();
+        }
+
+        String receive() throws IOException {
+            String response = FlightServer.readLine(in, line, MAX_RESPONSE_BYTES);
+            if (response == null) {
+                throw new IOException("连接已被分片关闭");
+            }
+            return response;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // 连接已断开
+            }
+        }
+    }
+
+    // 一个分片及其空闲连接，连接出错时直接关闭，下次使用时重新建立
+    private static final class Shard {
+        final InetSocketAddress address;
+        final BlockingQueue<ShardConnection> idle = new LinkedBlockingQueue<>();
+
+        Shard(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        ShardConnection borrow() throws IOException {
+            ShardConnection connection = idle.poll();
+            return connection != null ? connection : new ShardConnection(address);
+        }
+
+        void release(ShardConnection connection) {
+            if (idle.size() >= MAX_IDLE_CONNECTIONS || !idle.offer(connection)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * 连接各分片并检查每个分片的序号和分片数与地址列表一致
+     *
+     * @param addresses 各分片的地址，下标即分片序号
+     * @throws IOException 无法连接分片时抛出
+     * @throws IllegalStateException 分片的配置与地址列表不一致时抛出
+     */
+    public ShardRouter(List<InetSocketAddress> addresses) throws IOException {
+        this.shardMap = new ShardMap(addresses.size());
+        this.shards = new Shard[addresses.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(addresses.get(i));
+        }
+        for (int i = 0; i < shards.length; i++) {
+            String expected = "OK " + i + " " + shards.length;
+            String response;
+            try {
+                response = call(i, "SHARD");
+            } catch (IllegalStateException e) {
+                closeIdleConnections();
+                throw new IOException(e.getMessage());
+            }
+            if (!response.equals(expected)) {
+                closeIdleConnections();
+                throw new IllegalStateException(addresses.get(i) + " 应为分片 " + i + "/" + shards.length + "，实际响应: " + response);
+            }
+        }
+    }
+
+    /**
+     * 解析分片地址列表
+     *
+     * @param addresses 以逗号分隔的 主机:端口，按分片序号排列
+     * @return 地址列表
+     */
+    public static List<InetSocketAddress> parseAddresses(String addresses) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String address : addresses.split(",")) {
+            int separator = address.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("分片地址格式应为 主机:端口: " + address);
+            }
+            int port;
+            try {
+                port = Integer.parseInt(address.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("端口必须是整数: " + address);
+            }
+            result.add(new InetSocketAddress(address.substring(0, separator), port));
+        }
+        return result;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public String handle(String line) {
+        try {
+            String[] fields = line.trim().split(" +");
+            switch (fields[0].toUpperCase(Locale.ROOT)) {
+                case "PING":
+                    return "PONG";
+                case "SEARCH":
+                    requireFields(fields, 3, "SEARCH 出发地 目的地 [from=时间] [to=时间] [limit=n] [cursor=游标]");
+                    return call(shardMap.shardOf(fields[1]), line);
+                case "QUOTE":
+                    requireFields(fields, 2, "QUOTE 航班号");
+                    return callFlightOwner(fields[1], line, false);
+                case "BOOK":
+                    requireFields(fields, 6, "BOOK 航班号 联系方式 性别 行李重量 姓名");
+                    return callFlightOwner(fields[1], line, true);
+                case "BOOKINGS":
+                    return bookings(fields);
+                case "CANCEL":
+                    return cancel(fields);
+                case "REBOOK":
+                    return rebook(fields);
+                case "ADD":
+                    return add(fields);
+                case FlightProtocol.QUIT:
+                    return "BYE";
+                default:
+                    return "ERR 未知命令: " + fields[0];
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return "ERR " + e.getMessage();
+        } catch (RuntimeException e) {
+            return "ERR 路由器内部错误: " + e;
+        }
+    }
+
+    // 转发到航班所在的分片；记住的分片上找不到航班时（航班被修改或删除）重新定位一次
+    private String callFlightOwner(String flightNumber, String request, boolean bookingResponse) {
+        int owner = ownerOf(flightNumber);
+        String response = call(owner, request);
+        if (response.startsWith(FLIGHT_NOT_FOUND)) {
+            ownerOfFlight.remove(flightNumber, owner);
+            owner = ownerOf(flightNumber);
+            response = call(owner, request);
+        }
+        return bookingResponse ? toGlobalBookingId(owner, response) : response;
+    }
+
+    // 航班所在的分片，不知道时同时询问所有分片
+    private int ownerOf(String flightNumber) {
+        if (!FlightValidator.isValidFlightNumber(flightNumber)) {
+            throw new IllegalArgumentException("航班号必须是6位数字");
+        }
+        Integer owner = ownerOfFlight.get(flightNumber);
+        if (owner != null) {
+            return owner;
+        }
+        String[] requests = new String[shards.length];
+        Arrays.fill(requests, "QUOTE " + flightNumber);
+        String[] responses = callAll(requests);
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i].startsWith("OK ")) {
+                ownerOfFlight.put(flightNumber, i);
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("航班不存在: " + flightNumber);
+    }
+
+    // 分片返回的 “OK 本地购票编号 ...” 改写为全局购票编号
+    private String toGlobalBookingId(int shard, String response) {
+        if (!response.startsWith("OK ")) {
+            return response;
+        }
+        int end = response.indexOf(' ', 3);
+        String localId = end < 0 ? response.substring(3) : response.substring(3, end);
+        return "OK " + shardMap.globalBookingId(shard, parseLong(localId, "购票编号"))
+                + (end < 0 ? "" : response.substring(end));
+    }
+
+    private String bookings(String[] fields) {
+        requireFields(fields, 2, "BOOKINGS 联系方式");
+        String[] requests = new String[shards.length];
+        Arrays.fill(requests, "BOOKINGS " + fields[1]);
+        String[] responses = callAll(requests);
+        int count = 0;
+        StringBuilder items = new StringBuilder();
+        for (int shard = 0; shard < responses.length; shard++) {
+            String[] parts = responses[shard].split(" ", 3);
+            if (!parts[0].equals("OK")) {
+                return responses[shard];
+            }
+            count += (int) parseLong(parts[1], "记录数");
+            if (parts.length < 3 || parts[2].isEmpty()) {
+                continue;
+            }
+            for (String item : parts[2].split("\\|")) {
+                int separator = item.indexOf(',');
+                if (items.length() > 0) {
+                    items.append('|');
+                }
+                items.append(shardMap.globalBookingId(shard, parseLong(item.substring(0, separator), "购票编号")))
+                        .append(item, separator, item.length());
+            }
+        }
+        return "OK " + count + " " + items;
+    }
+
+    private String cancel(String[] fields) {
+        requireFields(fields, 3, "CANCEL 联系方式 购票编号");
+        long globalId = parseBookingId(fields[2]);
+        int shard = shardMap.shardOfBooking(globalId);
+        return toGlobalBookingId(shard, call(shard, "CANCEL " + fields[1] + " " + shardMap.localBookingId(globalId)));
+    }
+
+    private String rebook(String[] fields) {
+        requireFields(fields, 4, "REBOOK 联系方式 购票编号 新航班号");
+        long globalId = parseBookingId(fields[2]);
+        int shard = shardMap.shardOfBooking(globalId);
+        if (ownerOf(fields[3]) != shard) {
+            throw new IllegalArgumentException("新航班与原航班的出发地不在同一分片，不能改签，请退票后重新购票");
+        }
+        return toGlobalBookingId(shard, call(shard,
+                "REBOOK " + fields[1] + " " + shardMap.localBookingId(globalId) + " " + fields[3]));
+    }
+
+    // 按出发地拆分后发给各分片，返回各分片登记的航班数之和
+    private String add(String[] fields) {
+        requireFields(fields, 2, "ADD 航班号,出发地,目的地,出发时间,机型,座位数|...");
+        StringBuilder[] parts = new StringBuilder[shards.length];
+        List<List<String>> flightNumbers = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            flightNumbers.add(new ArrayList<>());
+        }
+        for (String record : fields[1].split("\\|")) {
+            String[] values = record.split(",", 3);
+            if (values.length < 3) {
+                throw new IllegalArgumentException("航班格式应为 航班号,出发地,目的地,出发时间,机型,座位数: " + record);
+            }
+            int shard = shardMap.shardOf(values[1]);
+            if (parts[shard] == null) {
+                parts[shard] = new StringBuilder("ADD ");
+            } else {
+                parts[shard].append('|');
+            }
+            parts[shard].append(record);
+            flightNumbers.get(shard).add(values[0]);
+        }
+        String[] requests = new String[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            requests[i] = parts[i] != null ? parts[i].toString() : null;
+        }
+        String[] responses = callAll(requests);
+        long added = 0;
+        String firstError = null;
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i] == null) {
+                continue;
+            }
+            if (responses[i].startsWith("OK ")) {
+                added += parseLong(responses[i].substring(3), "航班数");
+                for (String flightNumber : flightNumbers.get(i)) {
+                    ownerOfFlight.put(flightNumber, i);
+                }
+            } else if (firstError == null) {
+                firstError = responses[i] + "（分片" + i + "）";
+            }
+        }
+        // 其他分片上的部分可能已经登记，错误信息中给出已登记的数量
+        return firstError != null ? firstError + "，其他分片已登记 " + added + " 个航班" : "OK " + added;
+    }
+
+    private String call(int shard, String request) {
+        String[] requests = new String[shards.length];
+        requests[shard] = request;
+        return callAll(requests)[shard];
+    }
+
+    /**
+     * 同时向多个分片发送请求：先在各分片的连接上写出请求，再依次读取响应，
+     * 总耗时接近最慢的一个分片而不是各分片之和
+     *
+     * @param requests 下标为分片序号，为null的分片不发送
+     * @return 各分片的响应，没有发送请求的分片为null
+     * @throws IllegalStateException 有分片无法连接或读写失败时抛出
+     */
+    private String[] callAll(String[] requests) {
+        ShardConnection[] borrowed = new ShardConnection[shards.length];
+        String[] responses = new String[shards.length];
+        int current = 0;
+        boolean completed = false;
+        try {
+            for (current = 0; current < shards.length; current++) {
+                if (requests[current] != null) {
+                    borrowed[current] = shards[current].borrow();
+                    borrowed[current].send(requests[current]);
+                }
+            }
+            for (current = 0; current < shards.length; current++) {
+                if (borrowed[current] != null) {
+                    responses[current] = borrowed[current].receive();
+                }
+            }
+            completed = true;
+            return responses;
+        } catch (IOException e) {
+            throw new IllegalStateException("分片" + current + "（" + shards[current].address + "）不可用: " + e.getMessage());
+        } finally {
+            for (int i = 0; i < shards.length; i++) {
+                if (borrowed[i] != null) {
+                    if (completed) {
+                        shards[i].release(borrowed[i]);
+                    } else {
+                        borrowed[i].close(); // 连接上可能还有未读的响应，不能再用
+                    }
+                }
+            }
+        }
+    }
+
+    private static void requireFields(String[] fields, int count, String usage) {
+        if (fields.length < count) {
+            throw new IllegalArgumentException("用法: " + usage);
+        }
+    }
+
+    private static long parseBookingId(String value) {
+        long id = parseLong(value, "购票编号");
+        if (id < 0) {
+            throw new IllegalArgumentException("购票记录不存在: " + value);
+        }
+        return id;
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "必须是整数: " + value);
+        }
+    }
+
+    /**
+     * 关闭到各分片的空闲连接
+     */
+    @Override
+    public void close() {
+        closeIdleConnections();
+    }
+
+    // 构造方法检查分片失败时也要调用，所以不能调用可被子类覆盖的 close()
+    private void closeIdleConnections() {
+        for (Shard shard : shards) {
+            ShardConnection connection;
+            while ((connection = shard.idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package Storage;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 航班和购票的预写日志（只追加的二进制文件）。
+ * <p>
+ * 每条记录的格式为：[int 长度][byte 类型][内容][int CRC32]，长度包括类型字节，
+ * 校验和覆盖类型和内容。购票和退票记录的末尾是座位编号，改签记录的末尾是新航班和原航班的座位编号，
+ * 重放退票和改签时按座位找到原购票记录；旧版本写的记录没有这些项。写入由后台线程按批次完成，同一批记录只调用一次 force，
+ * 调用方在自己的记录落盘后才返回（组提交）。
+ * 一批记录写入或落盘失败时，把文件截回上一批结束的位置，调用方据此撤销的修改不会在重放时出现，
+ * 之后的记录也不会接在残缺的记录后面；截断也失败时日志停止接受新记录，直到下一次写快照清空日志。
+ * 启动时通过内存映射读取日志并重放，遇到不完整或校验失败的记录即停止，
+ * 重新打开日志时会截掉这部分尾巴。
+ * <p>
+ * 日志的第一条记录是它的代数。每次写快照时代数加1，快照记下新的代数，然后日志清空并以新的代数开始；
+ * 重放时跳过代数早于快照的日志，其中的记录都已包含在快照里。这样快照已替换而日志尚未清空时进程退出，
+ * 重启后也不会把旧日志重放到新快照上。旧版本写的日志没有代数记录，视为第0代。
+ */
+public class FlightJournal implements Closeable {
+    static final byte FLIGHT_CREATED = 1;
+    static final byte FLIGHT_UPDATED = 2;
+    static final byte PASSENGER_BOOKED = 3;
+    static final byte PASSENGER_CANCELLED = 4;
+    static final byte PASSENGER_REBOOKED = 5;
+    static final byte JOURNAL_GENERATION = 6;
+
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final long MAP_WINDOW = 1L << 30; // 每次映射的最大字节数
+    private static final int MAX_BATCH = 4096; // 一次落盘的最多记录数
+    private static final int REPLAY_BATCH = 10_000; // 重放时一次登记的最多航班数
+
+    // 等待落盘的记录
+    private static final class PendingRecord {
+        final ByteBuffer bytes;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        PendingRecord(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final FileChannel channel;
+    private final BlockingQueue<PendingRecord> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile long committedEnd; // 最后一批落盘的记录之后的文件位置
+    private volatile IOException failure; // 写入失败且无法截回时的原因，此后拒绝新记录
+    private long generation; // 日志代数，只在写快照时修改
+
+    // 修改内存数据并写日志期间持有读锁，写快照并截断日志期间持有写锁
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    // 写快照的操作，generation 为写入快照的日志代数
+    public interface CheckpointAction {
+        void run(long generation) throws IOException;
+    }
+
+    private FlightJournal(FileChannel channel, long committedEnd, long generation) {
+        this.channel = channel;
+        this.committedEnd = committedEnd;
+        this.generation = generation;
+        this.writer = new Thread(this::writeLoop, "flight-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 打开日志用于追加，截掉末尾不完整或损坏的记录。
+     * 日志为空或代数早于快照（重放时已跳过）时清空日志，以快照的代数重新开始
+     *
+     * @param path 日志文件路径
+     * @param snapshotGeneration 快照的日志代数，没有快照时为0
+     * @return 日志
+     */
+    public static FlightJournal open(Path path, long snapshotGeneration) throws IOException {
+        long[] journalGeneration = {-1};
+        long validEnd = Files.exists(path) ? scan(path, (type, body) -> readGeneration(journalGeneration, type, body)) : 0;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            long generation = journalGeneration[0];
+            if (generation < snapshotGeneration) {
+                generation = snapshotGeneration;
+                validEnd = startGeneration(channel, generation);
+            } else {
+                channel.truncate(validEnd);
+                channel.position(validEnd);
+            }
+            return new FlightJournal(channel, validEnd, generation);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // 由第一条记录得出日志的代数，旧版本的日志没有代数记录时为0；返回true表示这条记录是代数记录
+    private static boolean readGeneration(long[] generation, byte type, ByteBuffer body) {
+        if (generation[0] >= 0) {
+            return false;
+        }
+        generation[0] = type == JOURNAL_GENERATION ? body.getLong() : 0;
+        return type == JOURNAL_GENERATION;
+    }
+
+    // 清空日志，写入代数记录并落盘，返回之后追加记录的位置
+    private static long startGeneration(FileChannel channel, long generation) throws IOException {
+        RecordWriter record = new RecordWriter(JOURNAL_GENERATION);
+        record.putLong(generation);
+        ByteBuffer bytes = record.finish();
+        channel.truncate(0);
+        channel.position(0);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        channel.force(true);
+        return channel.position();
+    }
+
+    /**
+     * 记录新建的航班
+     *
+     * @param flight 航班
+     */
+    public void flightCreated(FlightInformation flight) {
+        RecordWriter record = new RecordWriter(FLIGHT_CREATED);
+        writeFlight(record, flight);
+        append(record);
+    }
+
+    /**
+     * 批量记录新建的航班，所有记录一起提交，只等待一次落盘
+     *
+     * @param flights 航班列表
+     */
+    public void flightsCreated(List<FlightInformation> flights) {
+        List<RecordWriter> records = new ArrayList<>(flights.size());
+        for (FlightInformation flight : flights) {
+            RecordWriter record = new RecordWriter(FLIGHT_CREATED);
+            writeFlight(record, flight);
+            records.add(record);
+        }
+        append(records);
+    }
+
+    /**
+     * 记录修改后的航班
+     *
+     * @param oldFlightNumber 修改前的航班号
+     * @param flight 修改后的航班
+     */
+    public void flightUpdated(String oldFlightNumber, FlightInformation flight) {
+        RecordWriter record = new RecordWriter(FLIGHT_UPDATED);
+        record.putString(oldFlightNumber);
+        writeFlight(record, flight);
+        append(record);
+    }
+
+    /**
+     * 记录乘客购票
+     *
+     * @param flightNumber 航班号
+     * @param passenger 乘客信息
+     * @param seat 座位编号
+     */
+    public void passengerBooked(String flightNumber, PassengerInformation passenger, int seat) {
+        RecordWriter record = new RecordWriter(PASSENGER_BOOKED);
+        writePassenger(record, flightNumber, passenger);
+        record.putInt(seat);
+        append(record);
+    }
+
+    /**
+     * 记录团体购票，各乘客的记录一起提交，只等待一次落盘
+     *
+     * @param flightNumber 航班号
+     * @param passengers 乘客信息
+     * @param firstSeat 第一位乘客的座位编号，其余乘客的座位编号依次加1
+     */
+    public void passengersBooked(String flightNumber, List<PassengerInformation> passengers, int firstSeat) {
+        List<RecordWriter> records = new ArrayList<>(passengers.size());
+        for (int i = 0; i < passengers.size(); i++) {
+            RecordWriter record = new RecordWriter(PASSENGER_BOOKED);
+            writePassenger(record, flightNumber, passengers.get(i));
+            record.putInt(firstSeat + i);
+            records.add(record);
+        }
+        append(records);
+    }
+
+    /**
+     * 记录乘客退票
+     *
+     * @param flightNumber 航班号
+     * @param passenger 乘客信息
+     * @param seat 退票的购票记录的座位编号
+     */
+    public void passengerCancelled(String flightNumber, PassengerInformation passenger, int seat) {
+        RecordWriter record = new RecordWriter(PASSENGER_CANCELLED);
+        writePassenger(record, flightNumber, passenger);
+        record.putInt(seat);
+        append(record);
+    }
+
+    /**
+     * 记录乘客改签，原航班和新航班写在同一条记录中，重放时不会只恢复一半
+     *
+     * @param oldFlightNumber 原航班号
+     * @param newFlightNumber 新航班号
+     * @param passenger 乘客信息
+     * @param oldSeat 原购票记录的座位编号
+     * @param seat 新航班的座位编号
+     */
+    public void passengerRebooked(String oldFlightNumber, String newFlightNumber, PassengerInformation passenger,
+                                  int oldSeat, int seat) {
+        RecordWriter record = new RecordWriter(PASSENGER_REBOOKED);
+        record.putString(newFlightNumber);
+        writePassenger(record, oldFlightNumber, passenger);
+        record.putInt(seat);
+        record.putInt(oldSeat); // 写在新座位之后，旧版本的记录读不到这一项时为-1
+        append(record);
+    }
+
+    /**
+     * 开始一次需要写日志的修改，必须与 endUpdate 成对调用。
+     * 修改内存数据和写日志都应在两者之间完成，这样快照不会只包含其中一半。
+     */
+    public void beginUpdate() {
+        checkpointLock.readLock().lock();
+    }
+
+    public void endUpdate() {
+        checkpointLock.readLock().unlock();
+    }
+
+    /**
+     * 在没有进行中的修改时执行快照写入，成功后清空日志并进入下一代。
+     * 进行中的修改在写日志时已等待落盘，所以此时日志中的记录都已包含在快照里。
+     *
+     * @param action 写快照的操作，快照中应记下传入的代数
+     */
+    public void checkpoint(CheckpointAction action) throws IOException {
+        checkpointLock.writeLock().lock();
+        try {
+            long next = generation + 1;
+            action.run(next);
+            // 快照已替换：从这里起进程退出时，重启会按代数跳过当前日志
+            try {
+                committedEnd = startGeneration(channel, next);
+            } catch (IOException e) {
+                failure = e; // 日志仍是上一代，之后追加的记录重启时会被跳过，所以暂停接受新记录
+                throw e;
+            }
+            generation = next;
+            failure = null; // 日志已清空，残缺的记录也随之清除
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private static void writePassenger(RecordWriter record, String flightNumber, PassengerInformation passenger) {
+        record.putString(flightNumber);
+        record.putString(passenger.getName());
+        record.putString(passenger.getGender());
+        record.putInt(passenger.getWeightOfLuggage());
+        record.putString(passenger.getTelephoneNumber());
+    }
+
+    private static void writeFlight(RecordWriter record, FlightInformation flight) {
+        record.putString(flight.getFlightNumber());
+        record.putString(flight.getDeparture());
+        record.putString(flight.getDestination());
+        record.putString(flight.getDepartureTime());
+        record.putString(flight.getAircraftType());
+        record.putInt(flight.getAvailableSeats());
+    }
+
+    // 提交记录并等待其所在批次落盘
+    private void append(RecordWriter record) {
+        append(List.of(record));
+    }
+
+    // 依次提交多条记录，写入线程会把它们合并到尽量少的批次中
+    private void append(List<RecordWriter> records) {
+        if (closed) {
+            throw new IllegalStateException("日志已关闭");
+        }
+        IOException failed = failure;
+        if (failed != null) {
+            throw new IllegalStateException("日志写入失败，暂停接受新记录: " + failed.getMessage(), failed);
+        }
+        List<PendingRecord> entries = new ArrayList<>(records.size());
+        for (RecordWriter record : records) {
+            PendingRecord entry = new PendingRecord(record.finish());
+            entries.add(entry);
+            pending.add(entry);
+        }
+        try {
+            for (PendingRecord entry : entries) {
+                entry.durable.join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>();
+        while (!closed || !pending.isEmpty()) {
+            try {
+                PendingRecord first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+
+                ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = batch.get(i).bytes;
+                }
+                try {
+                    IOException failed = failure;
+                    if (failed != null) {
+                        throw failed;
+                    }
+                    while (buffers[buffers.length - 1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    channel.force(false);
+                    committedEnd = channel.position();
+                    for (PendingRecord entry : batch) {
+                        entry.durable.complete(null);
+                    }
+                } catch (IOException e) {
+                    if (failure == null) {
+                        discardFailedBatch(e);
+                    }
+                    for (PendingRecord entry : batch) {
+                        entry.durable.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // 这一批可能已部分写入甚至已经落盘，调用方却会按失败撤销，所以截回这一批之前的位置
+    private void discardFailedBatch(IOException cause) {
+        try {
+            channel.truncate(committedEnd);
+            channel.position(committedEnd);
+            channel.force(false);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+
+    /**
+     * 等待已提交的记录全部落盘后关闭日志
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭过程中才提交的记录不会再被写入
+        PendingRecord entry;
+        while ((entry = pending.poll()) != null) {
+            entry.durable.completeExceptionally(new IOException("日志已关闭"));
+        }
+        channel.close();
+    }
+
+    /**
+     * 重放日志，把航班和购票记录恢复到航班管理器和乘客管理器中。
+     * 重放时管理器不应已关联日志，否则恢复的记录会被再次写入。
+     * 日志的代数早于快照时其中的记录都已包含在快照里，整个跳过。
+     *
+     * @param path 日志文件路径
+     * @param snapshotGeneration 快照的日志代数，没有快照时为0
+     * @param flightManager 航班管理器
+     * @param passengerManager 乘客管理器
+     * @return 重放的记录数
+     */
+    public static long replay(Path path, long snapshotGeneration, FlightManager flightManager,
+                              PassengerManager passengerManager) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long[] count = {0};
+        long[] journalGeneration = {-1};
+        // 连续的新建航班记录合并成一批登记，每批只发布一个新版本的航班计划
+        List<FlightInformation> created = new ArrayList<>();
+        scan(path, (type, body) -> {
+            if (readGeneration(journalGeneration, type, body) || journalGeneration[0] < snapshotGeneration) {
+                return;
+            }
+            if (type == FLIGHT_CREATED) {
+                created.add(readFlight(body));
+                if (created.size() == REPLAY_BATCH) {
+                    flushCreated(created, flightManager);
+                }
+            } else {
+                flushCreated(created, flightManager);
+                applyRecord(type, body, flightManager, passengerManager);
+            }
+            count[0]++;
+        });
+        flushCreated(created, flightManager);
+        return count[0];
+    }
+
+    private static void flushCreated(List<FlightInformation> created, FlightManager flightManager) {
+        if (!created.isEmpty()) {
+            flightManager.registerFlights(new ArrayList<>(created));
+            created.clear();
+        }
+    }
+
+    private static void applyRecord(byte type, ByteBuffer body, FlightManager flightManager, PassengerManager passengerManager) {
+        switch (type) {
+            case FLIGHT_UPDATED: {
+                String oldFlightNumber = readString(body);
+                FlightInformation updated = readFlight(body);
+                FlightInformation flight = flightManager.findFlight(oldFlightNumber);
+                if (flight != null) {
+                    flightManager.applyFlightUpdate(flight, updated.getFlightNumber(), updated.getDeparture(),
+                            updated.getDestination(), updated.getDepartureTime(), updated.getAircraftType(),
+                            updated.getAvailableSeats());
+                }
+                break;
+            }
+            case PASSENGER_BOOKED: {
+                String flightNumber = readString(body);
+                PassengerInformation passenger = readPassenger(body);
+                passengerManager.restoreBooking(flightNumber, passenger, readSeat(body));
+                break;
+            }
+            case PASSENGER_CANCELLED: {
+                String flightNumber = readString(body);
+                PassengerInformation passenger = readPassenger(body);
+                passengerManager.restoreCancellation(flightNumber, passenger, readSeat(body));
+                break;
+            }
+            case PASSENGER_REBOOKED: {
+                String newFlightNumber = readString(body);
+                String oldFlightNumber = readString(body);
+                PassengerInformation passenger = readPassenger(body);
+                int seat = readSeat(body);
+                passengerManager.restoreRebooking(oldFlightNumber, newFlightNumber, passenger, readSeat(body), seat);
+                break;
+            }
+            default:
+                throw new IllegalStateException("未知的日志记录类型: " + type);
+        }
+    }
+
+    private static PassengerInformation readPassenger(ByteBuffer body) {
+        String name = readString(body);
+        String gender = readString(body);
+        int weightOfLuggage = body.getInt();
+        String telephoneNumber = readString(body);
+        return new PassengerInformation(name, gender, weightOfLuggage, telephoneNumber);
+    }
+
+    // 旧版本的记录没有座位编号，返回-1
+    private static int readSeat(ByteBuffer body) {
+        return body.remaining() >= Integer.BYTES ? body.getInt() : -1;
+    }
+
+    private static FlightInformation readFlight(ByteBuffer body) {
+        String flightNumber = readString(body);
+        String departure = readString(body);
+        String destination = readString(body);
+        String departureTime = readString(body);
+        String aircraftType = readString(body);
+        int availableSeats = body.getInt();
+        return new FlightInformation(flightNumber, departure, destination, departureTime, aircraftType, availableSeats);
+    }
+
+    static String readString(ByteBuffer body) {
+        int length = body.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 处理一条校验通过的记录，body 的位置在类型字节之后
+    interface RecordHandler {
+        void handle(byte type, ByteBuffer body);
+    }
+
+    /**
+     * 通过内存映射逐条读取日志
+     *
+     * @param path 日志文件路径
+     * @param handler 记录处理器，为null时只做校验
+     * @return 最后一条完整记录之后的文件位置
+     */
+    static long scan(Path path, RecordHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            CRC32 crc = new CRC32();
+            while (position < fileSize) {
+                long windowSize = Math.min(MAP_WINDOW, fileSize - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int consumed = 0;
+                while (window.limit() - consumed >= Integer.BYTES) {
+                    int length = window.getInt(consumed);
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        return position + consumed; // 长度损坏
+                    }
+                    if (window.limit() - consumed < Integer.BYTES + length + Integer.BYTES) {
+                        break; // 记录跨越映射窗口或不完整
+                    }
+                    ByteBuffer record = window.slice(consumed + Integer.BYTES, length);
+                    crc.reset();
+                    crc.update(record.duplicate());
+                    if ((int) crc.getValue() != window.getInt(consumed + Integer.BYTES + length)) {
+                        return position + consumed; // 校验失败
+                    }
+                    if (handler != null) {
+                        byte type = record.get();
+                        handler.handle(type, record);
+                    }
+                    consumed += Integer.BYTES + length + Integer.BYTES;
+                }
+                if (consumed == 0) {
+                    return position; // 末尾记录不完整
+                }
+                position += consumed;
+            }
+            return position;
+        }
+    }
+
+    // 记录编码器
+    static final class RecordWriter {
+        private byte[] buffer = new byte[128];
+        private int size = Integer.BYTES; // 预留长度字段
+
+        RecordWriter(byte type) {
+            buffer[size++] = type;
+        }
+
+        void putInt(int value) {
+            ensureCapacity(Integer.BYTES);
+            ByteBuffer.wrap(buffer, size, Integer.BYTES).putInt(value);
+            size += Integer.BYTES;
+        }
+
+        void putLong(long value) {
+            ensureCapacity(Long.BYTES);
+            ByteBuffer.wrap(buffer, size, Long.BYTES).putLong(value);
+            size += Long.BYTES;
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("字符串过长，无法写入日志");
+            }
+            ensureCapacity(Short.BYTES + bytes.length);
+            ByteBuffer.wrap(buffer, size, Short.BYTES).putShort((short) bytes.length);
+            size += Short.BYTES;
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        // 填写长度并追加校验和
+        ByteBuffer finish() {
+            int length = size - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer, Integer.BYTES, length);
+            putInt((int) crc.getValue());
+            ByteBuffer.wrap(buffer, 0, Integer.BYTES).putInt(length);
+            return ByteBuffer.wrap(buffer, 0, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+}
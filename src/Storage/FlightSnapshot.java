@@ -0,0 +1,653 @@
+package Storage;
+
+import Flight.FlightInformation;
+import Flight.FlightManager;
+import Passenger.PassengerInformation;
+import Passenger.PassengerManager;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 航班和乘客的二进制快照文件。
+ * <p>
+ * 文件由以下几部分组成，所有整数均为大端序：
+ * <ul>
+ *     <li>文件头（72字节）：魔数、版本号、各部分的记录数和偏移量，以及快照对应的日志代数（版本4及以前为64字节，没有日志代数）</li>
+ *     <li>字符串表：快照写入时的机场和机型名称，记录中只保存它们的序号</li>
+ *     <li>航线偏移表：每条有航班的航线一项 [short 出发地序号][short 目的地序号][int 起始记录号][int 记录数]，
+ *     按出发地、目的地排序（版本3及以前为每对机场一项 [int 起始记录号][int 记录数]）</li>
+ *     <li>航班记录：每条24字节，按航线和起飞时间排序</li>
+ *     <li>航班号索引：每项 [int 航班号][int 记录号]，按航班号排序</li>
+ *     <li>购票记录：每条100字节，包括乘客信息、航班号和座位编号，字符串字段定长</li>
+ * </ul>
+ * 打开快照只做内存映射和文件头校验，航班记录在按航线或航班号访问时才被转换为对象；
+ * 购票记录则在关联到乘客管理器时全部载入（见 PassengerManager.attachSnapshot）。
+ * 航班记录只保存可用座位数，加载航线时再按购票记录中的座位编号恢复座位图。
+ * <p>
+ * 写快照时，尚未加载的航线的记录直接从原快照复制，不把这些航班加载到内存中。
+ * 快照记录写入时的日志代数（见 FlightJournal），重放时跳过代数更早的日志，
+ * 所以快照已替换而日志尚未清空时进程退出，重启后也不会把旧日志重放到新快照上。
+ */
+public class FlightSnapshot {
+    private static final int MAGIC = 0x464C534E; // "FLSN"
+    // 版本2在乘客记录中加入了航班号，版本3加入了座位编号，版本4的航线偏移表只保存有航班的航线，
+    // 版本5在文件头中加入了日志代数，仍可读取旧版本
+    private static final int VERSION = 5;
+    private static final int HEADER_SIZE = 72;
+    private static final int LEGACY_HEADER_SIZE = 64; // 版本1到4
+    private static final int ROUTE_ENTRY_SIZE = 12;
+    private static final int LEGACY_ROUTE_ENTRY_SIZE = 8; // 版本1到3
+    private static final int FLIGHT_RECORD_SIZE = 24;
+    private static final int NUMBER_ENTRY_SIZE = 8;
+    private static final int PASSENGER_RECORD_SIZE = 100;
+    private static final int LEGACY_PASSENGER_RECORD_SIZE = 96; // 版本1和2
+
+    // 乘客记录中各定长字符串字段的位置和长度（包括1字节的长度前缀）
+    private static final int NAME_OFFSET = 4;
+    private static final int NAME_FIELD_SIZE = 64;
+    private static final int GENDER_OFFSET = NAME_OFFSET + NAME_FIELD_SIZE;
+    private static final int GENDER_FIELD_SIZE = 8;
+    private static final int PHONE_OFFSET = GENDER_OFFSET + GENDER_FIELD_SIZE;
+    private static final int PHONE_FIELD_SIZE = 16;
+    private static final int FLIGHT_NUMBER_OFFSET = PHONE_OFFSET + PHONE_FIELD_SIZE;
+    private static final int SEAT_OFFSET = FLIGHT_NUMBER_OFFSET + 4;
+
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final String[] airports; // 快照中的机场名称，下标为记录中的机场序号
+    private final String[] aircraftTypes; // 快照中的机型名称
+    private final Map<String, Integer> airportOrdinals = new HashMap<>();
+    private final int version;
+    private final long generation;
+    private final int flightCount;
+    private final int passengerCount;
+    private final ByteBuffer routeTable;
+    private final int routeCount; // 航线偏移表的项数
+    private final ByteBuffer flightRecords;
+    private final ByteBuffer numberIndex;
+    private final ByteBuffer passengerRecords;
+    private final int passengerRecordSize;
+    // 已占用的座位，每项为 (航班号 << 32) | 座位编号，按航班号排序；首次加载航线时才建立
+    private long[] occupiedSeats;
+
+    // 接收快照中的一条航班记录
+    public interface FlightRecordConsumer {
+        void accept(FlightInformation flight, boolean hasPassenger);
+    }
+
+    // 接收快照中的一条航线
+    public interface RouteConsumer {
+        void accept(String departure, String destination);
+    }
+
+    // 接收快照中的一条购票记录，航班号未知（来自版本1的快照）时为空字符串，座位编号未知（版本3之前）时为-1
+    public interface BookingRecordConsumer {
+        void accept(String flightNumber, PassengerInformation passenger, int seat);
+    }
+
+    private FlightSnapshot(FileChannel channel) throws IOException {
+        ByteBuffer header = map(channel, 0, LEGACY_HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("不是航班快照文件");
+        }
+        version = header.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("不支持的快照版本: " + version);
+        }
+        generation = version >= 5 ? map(channel, LEGACY_HEADER_SIZE, Long.BYTES).getLong(0) : 0;
+        int airportCount = header.getInt(8);
+        int aircraftCount = header.getInt(12);
+        flightCount = header.getInt(16);
+        passengerCount = header.getInt(20);
+        long stringTableOffset = header.getLong(24);
+        long routeTableOffset = header.getLong(32);
+        long flightOffset = header.getLong(40);
+        long numberIndexOffset = header.getLong(48);
+        long passengerOffset = header.getLong(56);
+
+        ByteBuffer strings = map(channel, stringTableOffset, routeTableOffset - stringTableOffset);
+        airports = new String[airportCount];
+        for (int i = 0; i < airportCount; i++) {
+            airports[i] = FlightJournal.readString(strings);
+            airportOrdinals.put(airports[i], i);
+        }
+        aircraftTypes = new String[aircraftCount];
+        for (int i = 0; i < aircraftCount; i++) {
+            aircraftTypes[i] = FlightJournal.readString(strings);
+        }
+
+        if (version >= 4) {
+            routeCount = (int) ((flightOffset - routeTableOffset) / ROUTE_ENTRY_SIZE);
+            routeTable = map(channel, routeTableOffset, (long) routeCount * ROUTE_ENTRY_SIZE);
+        } else {
+            routeCount = airportCount * airportCount;
+            routeTable = map(channel, routeTableOffset, (long) routeCount * LEGACY_ROUTE_ENTRY_SIZE);
+        }
+        flightRecords = map(channel, flightOffset, (long) flightCount * FLIGHT_RECORD_SIZE);
+        numberIndex = map(channel, numberIndexOffset, (long) flightCount * NUMBER_ENTRY_SIZE);
+        passengerRecordSize = version >= 3 ? PASSENGER_RECORD_SIZE : LEGACY_PASSENGER_RECORD_SIZE;
+        passengerRecords = map(channel, passengerOffset, (long) passengerCount * passengerRecordSize);
+    }
+
+    /**
+     * 打开快照文件，只映射文件而不解析记录
+     *
+     * @param path 快照文件路径
+     * @return 快照，文件不存在时返回null
+     */
+    public static FlightSnapshot open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        // 映射在通道关闭后依然有效
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new FlightSnapshot(channel);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("快照分段过大: " + size + " 字节");
+        }
+        if (offset + size > channel.size()) {
+            throw new IOException("快照文件不完整");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    public int getFlightCount() {
+        return flightCount;
+    }
+
+    public int getPassengerCount() {
+        return passengerCount;
+    }
+
+    /**
+     * 获取快照对应的日志代数，代数更早的日志中的记录都已包含在快照里
+     *
+     * @return 日志代数，版本4及以前的快照为0
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 读取指定航线的全部航班记录，按起飞时间升序
+     *
+     * @param departure 出发地
+     * @param destination 目的地
+     * @param consumer 记录接收者
+     */
+    public void loadRoute(String departure, String destination, FlightRecordConsumer consumer) {
+        long range = routeRange(departure, destination);
+        int start = (int) (range >>> 32);
+        int count = (int) range;
+        for (int record = start; record < start + count; record++) {
+            FlightInformation flight = readFlight(record);
+            if (hasPassenger(record)) {
+                restoreSeats(flight, flightRecords.getInt(record * FLIGHT_RECORD_SIZE));
+            }
+            consumer.accept(flight, hasPassenger(record));
+        }
+    }
+
+    // 航线的记录范围：高32位为起始记录号，低32位为记录数，没有该航线时为0
+    private long routeRange(String departure, String destination) {
+        Integer from = airportOrdinals.get(departure);
+        Integer to = airportOrdinals.get(destination);
+        if (from == null || to == null) {
+            return 0;
+        }
+        int start;
+        int count;
+        if (version >= 4) {
+            int entry = findRoute(from, to);
+            if (entry < 0) {
+                return 0;
+            }
+            start = routeTable.getInt(entry * ROUTE_ENTRY_SIZE + 4);
+            count = routeTable.getInt(entry * ROUTE_ENTRY_SIZE + 8);
+        } else {
+            int entry = (from * airports.length + to) * LEGACY_ROUTE_ENTRY_SIZE;
+            start = routeTable.getInt(entry);
+            count = routeTable.getInt(entry + 4);
+        }
+        return ((long) start << 32) | count;
+    }
+
+    // 在航线偏移表中二分查找航线，找不到时返回-1
+    private int findRoute(int from, int to) {
+        int key = (from << 16) | to;
+        int low = 0;
+        int high = routeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = mid * ROUTE_ENTRY_SIZE;
+            int midKey = (routeTable.getShort(base) << 16) | routeTable.getShort(base + 2);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 依次访问快照中有航班的航线
+     *
+     * @param consumer 航线接收者
+     */
+    public void forEachRoute(RouteConsumer consumer) {
+        for (int entry = 0; entry < routeCount; entry++) {
+            if (version >= 4) {
+                int base = entry * ROUTE_ENTRY_SIZE;
+                consumer.accept(airports[routeTable.getShort(base)], airports[routeTable.getShort(base + 2)]);
+            } else if (routeTable.getInt(entry * LEGACY_ROUTE_ENTRY_SIZE + 4) > 0) {
+                consumer.accept(airports[entry / airports.length], airports[entry % airports.length]);
+            }
+        }
+    }
+
+    // 按购票记录恢复航班的座位图
+    private void restoreSeats(FlightInformation flight, int flightNumber) {
+        long[] seats = occupiedSeats();
+        int first = lowerBound(seats, (long) flightNumber << 32);
+        int end = lowerBound(seats, (long) (flightNumber + 1) << 32);
+        if (first == end) {
+            return;
+        }
+        int[] occupied = new int[end - first];
+        for (int i = first; i < end; i++) {
+            occupied[i - first] = (int) seats[i];
+        }
+        flight.restoreOccupiedSeats(occupied);
+    }
+
+    private synchronized long[] occupiedSeats() {
+        if (occupiedSeats == null) {
+            long[] seats = new long[passengerCount];
+            int count = 0;
+            for (int index = 0; index < passengerCount && version >= 2; index++) {
+                int base = index * passengerRecordSize;
+                int number = passengerRecords.getInt(base + FLIGHT_NUMBER_OFFSET);
+                if (number >= 0) {
+                    int seat = version >= 3 ? passengerRecords.getInt(base + SEAT_OFFSET) : -1;
+                    seats[count++] = ((long) number << 32) | (seat & 0xFFFFFFFFL);
+                }
+            }
+            occupiedSeats = Arrays.copyOf(seats, count);
+            Arrays.sort(occupiedSeats);
+        }
+        return occupiedSeats;
+    }
+
+    // 第一个不小于 key 的元素的下标
+    private static int lowerBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 按航班号在索引中二分查找航班记录
+     *
+     * @param flightNumber 航班号
+     * @return 航班对象（未登记到任何管理器），找不到时返回null
+     */
+    public FlightInformation findFlight(String flightNumber) {
+        int number;
+        try {
+            number = Integer.parseInt(flightNumber);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int low = 0;
+        int high = flightCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midNumber = numberIndex.getInt(mid * NUMBER_ENTRY_SIZE);
+            if (midNumber < number) {
+                low = mid + 1;
+            } else if (midNumber > number) {
+                high = mid - 1;
+            } else {
+                return readFlight(numberIndex.getInt(mid * NUMBER_ENTRY_SIZE + 4));
+            }
+        }
+        return null;
+    }
+
+    private FlightInformation readFlight(int record) {
+        int base = record * FLIGHT_RECORD_SIZE;
+        String flightNumber = String.format("%06d", flightRecords.getInt(base));
+        String departure = airports[flightRecords.getShort(base + 4)];
+        String destination = airports[flightRecords.getShort(base + 6)];
+        String aircraftType = aircraftTypes[flightRecords.getShort(base + 8)];
+        String departureTime = LocalDateTime.ofEpochSecond(flightRecords.getLong(base + 12) * 60, 0, ZoneOffset.UTC)
+                .format(DATE_TIME_FORMAT);
+        int availableSeats = flightRecords.getInt(base + 20);
+        return new FlightInformation(flightNumber, departure, destination, departureTime, aircraftType, availableSeats);
+    }
+
+    private boolean hasPassenger(int record) {
+        return flightRecords.get(record * FLIGHT_RECORD_SIZE + 10) != 0;
+    }
+
+    /**
+     * 按写入顺序读取全部购票记录
+     *
+     * @param consumer 记录接收者
+     */
+    public void loadBookings(BookingRecordConsumer consumer) {
+        for (int index = 0; index < passengerCount; index++) {
+            int base = index * passengerRecordSize;
+            PassengerInformation passenger = new PassengerInformation(
+                    readFixedString(passengerRecords, base + NAME_OFFSET),
+                    readFixedString(passengerRecords, base + GENDER_OFFSET),
+                    passengerRecords.getInt(base),
+                    readFixedString(passengerRecords, base + PHONE_OFFSET));
+            int number = version >= 2 ? passengerRecords.getInt(base + FLIGHT_NUMBER_OFFSET) : -1;
+            String flightNumber = number >= 0 ? String.format("%06d", number) : "";
+            int seat = version >= 3 ? passengerRecords.getInt(base + SEAT_OFFSET) : -1;
+            consumer.accept(flightNumber, passenger, seat);
+        }
+    }
+
+    private static String readFixedString(ByteBuffer buffer, int offset) {
+        int length = buffer.get(offset) & 0xFF;
+        byte[] bytes = new byte[length];
+        buffer.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入快照并截断日志。写入期间阻止新的修改，保证快照和剩余日志之间没有遗漏或重复的记录。
+     *
+     * @param path 快照文件路径
+     * @param journal 预写日志
+     * @param flightManager 航班管理器
+     * @param passengerManager 乘客管理器
+     */
+    public static void checkpoint(Path path, FlightJournal journal, FlightManager flightManager,
+                                  PassengerManager passengerManager) throws IOException {
+        journal.checkpoint(generation -> write(path, generation, flightManager, passengerManager));
+    }
+
+    /**
+     * 把航班管理器和乘客管理器的全部数据写入快照文件。
+     * 先写入临时文件再原子替换，写入失败时原快照保持不变。
+     * 已加载的航班逐个编码；航班管理器关联的快照中尚未加载的航线自关联以来没有变化，
+     * 其记录直接从原快照复制，不会因写快照而加载到内存中。
+     *
+     * @param path 快照文件路径
+     * @param generation 日志代数，代数更早的日志在重放时跳过
+     * @param flightManager 航班管理器
+     * @param passengerManager 乘客管理器
+     */
+    public static void write(Path path, long generation, FlightManager flightManager,
+                             PassengerManager passengerManager) throws IOException {
+        String[] airports = FlightInformation.getAllowedAirports();
+        String[] aircraftTypes = FlightInformation.getAllowedAircraftTypes();
+        Map<String, Integer> airportOrdinals = ordinals(airports);
+        Map<String, Integer> aircraftOrdinals = ordinals(aircraftTypes);
+
+        List<FlightInformation> flights = new ArrayList<>();
+        List<String[]> unloadedRoutes = new ArrayList<>();
+        FlightSnapshot previous = flightManager.collectForSnapshot(flights,
+                (departure, destination) -> unloadedRoutes.add(new String[]{departure, destination}));
+        // 原快照中尚未加载的记录号，以及原快照的机场和机型序号到当前序号的映射
+        int[] copiedRecords = previous != null ? previous.recordsIn(unloadedRoutes) : new int[0];
+        int[] airportMap = previous != null ? remap(previous.airports, airportOrdinals) : null;
+        int[] aircraftMap = previous != null ? remap(previous.aircraftTypes, aircraftOrdinals) : null;
+        ByteBuffer copiedFlights = previous != null ? previous.flightRecords : null;
+
+        // 按航线和起飞时间排序，同一航线的记录连续存放；序号小于 flights.size() 的是已加载的航班，其余是复制的记录
+        int airportCount = airports.length;
+        int total = flights.size() + copiedRecords.length;
+        int[] routeOfFlight = new int[total];
+        long[] minutesOfFlight = new long[total];
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < flights.size(); i++) {
+            FlightInformation flight = flights.get(i);
+            routeOfFlight[i] = airportOrdinals.get(flight.getDeparture()) * airportCount + airportOrdinals.get(flight.getDestination());
+            minutesOfFlight[i] = flight.getDepartureMinutes();
+            order[i] = i;
+        }
+        for (int k = 0; k < copiedRecords.length; k++) {
+            int base = copiedRecords[k] * FLIGHT_RECORD_SIZE;
+            int i = flights.size() + k;
+            routeOfFlight[i] = airportMap[copiedFlights.getShort(base + 4)] * airportCount
+                    + airportMap[copiedFlights.getShort(base + 6)];
+            minutesOfFlight[i] = copiedFlights.getLong(base + 12);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> routeOfFlight[i])
+                .thenComparingLong(i -> minutesOfFlight[i]));
+
+        // 有航班的航线，按航线编号排序
+        List<int[]> routes = new ArrayList<>();
+        for (int position = 0; position < order.length; position++) {
+            int route = routeOfFlight[order[position]];
+            if (position == 0 || route != routeOfFlight[order[position - 1]]) {
+                routes.add(new int[]{route, position, 0});
+            }
+            routes.get(routes.size() - 1)[2]++;
+        }
+
+        // 写快照期间不允许修改，购票记录数与随后逐条写出的记录数一致
+        long bookingCount = passengerManager.getBookingCount();
+        if (bookingCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("购票记录过多，无法写入快照: " + bookingCount);
+        }
+
+        byte[] stringTable = encodeStrings(airports, aircraftTypes);
+        long stringTableOffset = HEADER_SIZE;
+        long routeTableOffset = stringTableOffset + stringTable.length;
+        long flightOffset = routeTableOffset + (long) routes.size() * ROUTE_ENTRY_SIZE;
+        long numberIndexOffset = flightOffset + (long) total * FLIGHT_RECORD_SIZE;
+        long passengerOffset = numberIndexOffset + (long) total * NUMBER_ENTRY_SIZE;
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(airports.length);
+            out.writeInt(aircraftTypes.length);
+            out.writeInt(total);
+            out.writeInt((int) bookingCount);
+            out.writeLong(stringTableOffset);
+            out.writeLong(routeTableOffset);
+            out.writeLong(flightOffset);
+            out.writeLong(numberIndexOffset);
+            out.writeLong(passengerOffset);
+            out.writeLong(generation);
+            out.write(stringTable);
+
+            for (int[] route : routes) {
+                out.writeShort(route[0] / airportCount);
+                out.writeShort(route[0] % airportCount);
+                out.writeInt(route[1]);
+                out.writeInt(route[2]);
+            }
+
+            long[] numberEntries = new long[total];
+            for (int position = 0; position < order.length; position++) {
+                int i = order[position];
+                int flightNumber;
+                if (i < flights.size()) {
+                    FlightInformation flight = flights.get(i);
+                    flightNumber = Integer.parseInt(flight.getFlightNumber());
+                    out.writeInt(flightNumber);
+                    out.writeShort(airportOrdinals.get(flight.getDeparture()));
+                    out.writeShort(airportOrdinals.get(flight.getDestination()));
+                    out.writeShort(aircraftOrdinals.get(flight.getAircraftType()));
+                    out.writeByte(flightManager.hasPassenger(flight.getFlightNumber()) ? 1 : 0);
+                    out.writeByte(0);
+                    out.writeLong(minutesOfFlight[i]);
+                    out.writeInt(flight.getAvailableSeats());
+                } else {
+                    int base = copiedRecords[i - flights.size()] * FLIGHT_RECORD_SIZE;
+                    flightNumber = copiedFlights.getInt(base);
+                    out.writeInt(flightNumber);
+                    out.writeShort(airportMap[copiedFlights.getShort(base + 4)]);
+                    out.writeShort(airportMap[copiedFlights.getShort(base + 6)]);
+                    out.writeShort(requireAircraft(aircraftMap[copiedFlights.getShort(base + 8)], flightNumber));
+                    out.writeByte(copiedFlights.get(base + 10));
+                    out.writeByte(0);
+                    out.writeLong(minutesOfFlight[i]);
+                    out.writeInt(copiedFlights.getInt(base + 20));
+                }
+                numberEntries[position] = ((long) flightNumber << 32) | position;
+            }
+
+            // 航班号索引，航班号重复时后出现的记录排在后面
+            Arrays.sort(numberEntries);
+            for (long entry : numberEntries) {
+                out.writeInt((int) (entry >>> 32));
+                out.writeInt((int) entry);
+            }
+
+            // 逐条写出购票记录，堆外存储模式下不需要一次性把全部记录放到堆上
+            byte[] record = new byte[PASSENGER_RECORD_SIZE];
+            long[] written = new long[1];
+            try {
+                passengerManager.forEachBooking(booking -> {
+                    PassengerInformation passenger = booking.getPassenger();
+                    Arrays.fill(record, (byte) 0);
+                    ByteBuffer.wrap(record).putInt(0, passenger.getWeightOfLuggage());
+                    String flightNumber = booking.getFlightNumber();
+                    ByteBuffer.wrap(record).putInt(FLIGHT_NUMBER_OFFSET, flightNumber.isEmpty() ? -1 : Integer.parseInt(flightNumber));
+                    ByteBuffer.wrap(record).putInt(SEAT_OFFSET, booking.getSeat());
+                    writeFixedString(record, NAME_OFFSET, NAME_FIELD_SIZE, passenger.getName());
+                    writeFixedString(record, GENDER_OFFSET, GENDER_FIELD_SIZE, passenger.getGender());
+                    writeFixedString(record, PHONE_OFFSET, PHONE_FIELD_SIZE, passenger.getTelephoneNumber());
+                    try {
+                        out.write(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (written[0] != bookingCount) {
+                throw new IllegalStateException("写快照期间购票记录发生变化");
+            }
+
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // 替换后目录项也要落盘，否则掉电后可能仍是旧快照，而日志随后就会被清空
+        Path directory = path.toAbsolutePath().getParent();
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    // 各航线的全部记录号
+    private int[] recordsIn(List<String[]> routes) {
+        long[] ranges = new long[routes.size()];
+        int count = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = routeRange(routes.get(i)[0], routes.get(i)[1]);
+            count += (int) ranges[i];
+        }
+        int[] records = new int[count];
+        int next = 0;
+        for (long range : ranges) {
+            int start = (int) (range >>> 32);
+            for (int record = start; record < start + (int) range; record++) {
+                records[next++] = record;
+            }
+        }
+        return records;
+    }
+
+    // 旧快照中的名称序号到当前序号的映射，当前已不允许的名称映射为-1
+    private static int[] remap(String[] names, Map<String, Integer> ordinals) {
+        int[] map = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            map[i] = ordinals.getOrDefault(names[i], -1);
+        }
+        return map;
+    }
+
+    private static int requireAircraft(int ordinal, int flightNumber) {
+        if (ordinal < 0) {
+            throw new IllegalStateException(String.format("快照中航班 %06d 的机型已不在允许列表中", flightNumber));
+        }
+        return ordinal;
+    }
+
+    private static Map<String, Integer> ordinals(String[] names) {
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            ordinals.put(names[i], i);
+        }
+        return ordinals;
+    }
+
+    // 字符串表编码为 [short 长度][UTF-8 字节]，与日志中的字符串格式相同
+    private static byte[] encodeStrings(String[] airports, String[] aircraftTypes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (String name : airports) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(encoded.length);
+            out.write(encoded);
+        }
+        for (String name : aircraftTypes) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(encoded.length);
+            out.write(encoded);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFixedString(byte[] record, int offset, int fieldSize, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > fieldSize - 1) {
+            throw new IllegalArgumentException("字段过长，无法写入快照: " + value);
+        }
+        record[offset] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, record, offset + 1, bytes.length);
+    }
+}